@@ -0,0 +1,62 @@
+package com.oneops.gslb;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * compares two jmh json result files, e.g. results of two commits, and prints the score change per
+ * benchmark and parameter set. Scores are compared as is, so both runs should use the same mode.
+ */
+public class BenchmarkCompare {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("usage: BenchmarkCompare <baseline.json> <current.json>");
+      System.exit(1);
+    }
+    Map<String, double[]> baseline = scores(args[0]);
+    Map<String, double[]> current = scores(args[1]);
+    System.out.println(String.format("%-90s %14s %14s %9s", "benchmark", "baseline", "current", "change"));
+    for (Map.Entry<String, double[]> entry : current.entrySet()) {
+      double[] base = baseline.get(entry.getKey());
+      double score = entry.getValue()[0];
+      if (base == null) {
+        System.out.println(String.format("%-90s %14s %14.3f %9s", entry.getKey(), "-", score, "new"));
+      }
+      else {
+        System.out.println(String.format("%-90s %14.3f %14.3f %+8.1f%%", entry.getKey(), base[0], score,
+            (score - base[0]) * 100 / base[0]));
+      }
+    }
+  }
+
+  private static Map<String, double[]> scores(String file) throws IOException {
+    Map<String, double[]> scores = new LinkedHashMap<>();
+    try (Reader reader = new FileReader(file)) {
+      JsonArray results = new JsonParser().parse(reader).getAsJsonArray();
+      for (JsonElement element : results) {
+        JsonObject result = element.getAsJsonObject();
+        StringBuilder key = new StringBuilder(result.get("benchmark").getAsString());
+        if (result.has("params")) {
+          Map<String, String> params = new TreeMap<>();
+          result.getAsJsonObject("params").entrySet()
+              .forEach(p -> params.put(p.getKey(), p.getValue().getAsString()));
+          key.append(params);
+        }
+        JsonObject metric = result.getAsJsonObject("primaryMetric");
+        scores.put(key.toString(), new double[]{metric.get("score").getAsDouble(),
+            metric.get("scoreError").getAsDouble()});
+      }
+    }
+    return scores;
+  }
+
+}
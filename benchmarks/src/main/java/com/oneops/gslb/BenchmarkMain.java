@@ -0,0 +1,30 @@
+package com.oneops.gslb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * runs jmh with json results written to results/<label>.json unless a result file is given.
+ * The label defaults to the -Dlabel system property, set it to the commit being measured.
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+    if (!jmhArgs.contains("-rf") && !jmhArgs.contains("-rff") && !isInfoOnly(jmhArgs)) {
+      File results = new File("results");
+      results.mkdirs();
+      String label = System.getProperty("label", Long.toString(System.currentTimeMillis()));
+      jmhArgs.addAll(Arrays.asList("-rf", "json", "-rff", new File(results, label + ".json").getPath()));
+    }
+    org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+  }
+
+  private static boolean isInfoOnly(List<String> args) {
+    return args.contains("-h") || args.contains("-l") || args.contains("-lp") || args.contains("-lprof")
+        || args.contains("-lrf");
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.oneops.gslb;
+
+import com.oneops.infoblox.InfobloxClient;
+import com.oneops.infoblox.model.a.ARec;
+import com.oneops.infoblox.model.cname.CNAME;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * in-memory infoblox client, keeps the records it is asked to create.
+ */
+class FakeInfoblox extends InfobloxClient {
+
+  private final Map<String, String> cnames = new ConcurrentHashMap<>();
+  private final Map<String, String> aRecords = new ConcurrentHashMap<>();
+
+  @Override
+  public List<CNAME> getCNameRec(String aliasName) throws IOException {
+    String canonical = cnames.get(aliasName);
+    return canonical != null ? Collections.singletonList(CNAME.create("", canonical, aliasName, null))
+        : Collections.emptyList();
+  }
+
+  @Override
+  public CNAME createCNameRec(String aliasName, String canonicalName) throws IOException {
+    cnames.put(aliasName, canonicalName);
+    return CNAME.create("", canonicalName, aliasName, null);
+  }
+
+  @Override
+  public List<String> deleteCNameRec(String aliasName) throws IOException {
+    cnames.remove(aliasName);
+    return Collections.singletonList(aliasName);
+  }
+
+  @Override
+  public List<ARec> getARec(String domainName) throws IOException {
+    String address = aRecords.get(domainName);
+    return address != null ? Collections.singletonList(ARec.create("", address, domainName, null))
+        : Collections.emptyList();
+  }
+
+  @Override
+  public ARec createARec(String domainName, String ipv4Address) throws IOException {
+    aRecords.put(domainName, ipv4Address);
+    return ARec.create("", ipv4Address, domainName, null);
+  }
+
+  @Override
+  public List<String> deleteARec(String domainName) throws IOException {
+    aRecords.remove(domainName);
+    return Collections.singletonList(domainName);
+  }
+
+  @Override
+  public String endPoint() {
+    return "fake-infoblox";
+  }
+
+  @Override
+  public String wapiVersion() {
+    return null;
+  }
+
+  @Override
+  public String userName() {
+    return null;
+  }
+
+  @Override
+  public String password() {
+    return null;
+  }
+
+  @Override
+  public String dnsView() {
+    return null;
+  }
+
+  @Override
+  public boolean tlsVerify() {
+    return false;
+  }
+
+  @Override
+  public boolean debug() {
+    return false;
+  }
+
+  @Override
+  public int timeout() {
+    return 0;
+  }
+
+}
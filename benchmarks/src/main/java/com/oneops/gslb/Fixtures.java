@@ -0,0 +1,83 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.HealthCheck;
+import com.oneops.gslb.domain.InfobloxConfig;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.Protocol;
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class Fixtures {
+
+  static final String SUBDOMAIN = "e1.a1.org1";
+
+  static final String MTD_BASE = "{\"mtd_base\":{\"mtd_base_id\":11,\"mtd_base_name\":\".e1.a1.org1.glb.xyz.com\"}}";
+
+  static final String HOST_CREATED = "{\"version\":{\"version_id\":21},\"deployment\":{\"deployment_id\":31}}";
+
+  private Fixtures() {
+  }
+
+  static List<DcCloud> clouds(int count) {
+    List<DcCloud> clouds = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      clouds.add(DcCloud.create(100 + i, "cl" + i, i / 4, null));
+    }
+    return clouds;
+  }
+
+  static String dataCentersJson(int cloudCount) {
+    StringBuilder json = new StringBuilder("{\"data_centers\":[");
+    for (int dc = 0; dc * 4 < cloudCount; dc++) {
+      json.append(dc > 0 ? "," : "").append("{\"id\":").append(dc).append(",\"name\":\"dc").append(dc)
+          .append("\",\"clouds\":[");
+      for (int i = dc * 4; i < Math.min(cloudCount, dc * 4 + 4); i++) {
+        json.append(i > dc * 4 ? "," : "").append("{\"id\":").append(100 + i).append(",\"name\":\"cl").append(i)
+            .append("\",\"data_center_id\":").append(dc)
+            .append(",\"cidrs\":[\"10.").append(i % 256).append(".0.0/16\",\"172.16.").append(i % 256).append(".0/24\"]}");
+      }
+      json.append("]}");
+    }
+    return json.append("]}").toString();
+  }
+
+  static String mtdHostJson(String app, int lbCount) {
+    StringBuilder json = new StringBuilder("{\"mtd_host\":{\"mtd_host_name\":\"").append(app)
+        .append("\",\"mtd_health_checks\":[{\"name\":\"gslb-http-80\",\"protocol\":\"http\",\"port\":80,"
+            + "\"test_object_path\":\"/health\",\"expected_status\":200,\"interval\":\"10s\",\"retry_delay\":\"5s\","
+            + "\"timeout\":\"5s\"}],\"mtd_targets\":[");
+    for (int i = 0; i < lbCount; i++) {
+      json.append(i > 0 ? "," : "").append("{\"mtd_target_host\":\"10.1.1.").append(i)
+          .append("\",\"data_center_id\":").append(i / 4).append(",\"cloud_id\":").append(100 + i)
+          .append(",\"enabled\":true,\"weight_percent\":0}");
+    }
+    return json.append("]}}").toString();
+  }
+
+  static Gslb gslb(String app, String torbitUrl, int lbCount, int healthCheckCount, InfobloxConfig infobloxConfig) {
+    List<Lb> lbs = new ArrayList<>();
+    for (int i = 0; i < lbCount; i++) {
+      lbs.add(Lb.create("cl" + i, "10.1.1." + i, true));
+    }
+    List<HealthCheck> healthChecks = new ArrayList<>();
+    for (int i = 0; i < healthCheckCount; i++) {
+      healthChecks.add(HealthCheck.builder().protocol(Protocol.HTTP).port(80 + i).path("/health").build());
+    }
+    return Gslb.builder()
+        .app(app)
+        .subdomain(SUBDOMAIN)
+        .lbs(lbs)
+        .healthChecks(healthChecks)
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(TorbitConfig.create(torbitUrl, "bench-oo", "bench_auth", 101, "glb.xyz.com"))
+        .infobloxConfig(infobloxConfig)
+        .cnames(infobloxConfig != null ? Collections.singletonList(app + ".xyz.com") : null)
+        .build();
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.oneops.gslb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseHostRequest;
+import com.oneops.gslb.mtd.v2.domain.MtdHostResponse;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * torbit payloads through the same gson setup as TorbitClient.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonBenchmark {
+
+  private static final String TORBIT_URL = "https://torbit.bench:8443/";
+
+  @Param({"8"})
+  int lbCount;
+
+  @Param({"40", "1000"})
+  int cloudCount;
+
+  Gson gson = new GsonBuilder().registerTypeAdapterFactory(AutoValueGsonFactory.create()).create();
+  MtdBaseHostRequest hostRequest;
+  String hostResponseJson;
+  String dataCentersJson;
+
+  @Setup
+  public void setup() throws Exception {
+    MtdHandler handler = new MtdHandler();
+    DataCenterCatalog catalog = new DataCenterCatalog();
+    catalog.put(TORBIT_URL, Fixtures.clouds(lbCount));
+    handler.setDataCenterCatalog(catalog);
+    ProvisionContext context = new ProvisionContext();
+    context.logKey("");
+    hostRequest = handler.mtdBaseHostRequest(Fixtures.gslb("p1", TORBIT_URL, lbCount, 1, null), context);
+    hostResponseJson = Fixtures.mtdHostJson("p1", lbCount);
+    dataCentersJson = Fixtures.dataCentersJson(cloudCount);
+  }
+
+  @Benchmark
+  public String serializeMtdBaseHostRequest() {
+    return gson.toJson(hostRequest);
+  }
+
+  @Benchmark
+  public MtdHostResponse deserializeMtdHostResponse() {
+    return gson.fromJson(hostResponseJson, MtdHostResponse.class);
+  }
+
+  @Benchmark
+  public DataCentersResponse deserializeDataCentersResponse() {
+    return gson.fromJson(dataCentersJson, DataCentersResponse.class);
+  }
+
+  @Benchmark
+  public Map<String, DcCloud> readDataCenters() throws IOException {
+    return DataCenterReader.read(new StringReader(dataCentersJson));
+  }
+
+}
@@ -0,0 +1,320 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.CloudARecord;
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.HealthCheck;
+import com.oneops.gslb.domain.InfobloxConfig;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.PhaseTiming;
+import com.oneops.gslb.domain.Protocol;
+import com.oneops.gslb.domain.ProvisionedGslb;
+import com.oneops.gslb.domain.TorbitConfig;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import okhttp3.mockwebserver.MockWebServer;
+
+/*
+ * drives GslbProvider create, checkStatus and delete against FakeTorbitServer and
+ * FakeInfobloxServer, and reports throughput, latency percentiles, errors and remote calls per
+ * operation. Each generated gslb cycles through the configured operations, so a gslb is never
+ * used by two operations at once.
+ *
+ * With -rate 0 the load is closed, every one of the -concurrency threads starts its next operation
+ * as soon as the previous one completes. Otherwise operations arrive at -rate per second and queue
+ * for the -concurrency threads, latencies are then measured from the scheduled arrival so queueing
+ * behind a saturated provider is included.
+ *
+ * java -cp target/benchmarks.jar com.oneops.gslb.LoadTest -concurrency 32 -duration 60 -lbs 4
+ */
+public class LoadTest {
+
+  //held so the level is not lost when the jul logger is collected
+  private static final java.util.logging.Logger mockWebServerLogger =
+      java.util.logging.Logger.getLogger(MockWebServer.class.getName());
+  private static final java.util.logging.Logger infobloxLogger =
+      java.util.logging.Logger.getLogger("com.oneops.infoblox");
+
+  private static final Map<String, String> defaults = new LinkedHashMap<>();
+
+  static {
+    defaults.put("ops", "create,status,delete");
+    defaults.put("concurrency", "16");
+    defaults.put("rate", "0");
+    defaults.put("warmup", "5");
+    defaults.put("duration", "30");
+    defaults.put("apps", "256");
+    defaults.put("subdomains", "8");
+    defaults.put("lbs", "2");
+    defaults.put("cnames", "2");
+    defaults.put("torbitLatency", "0");
+    defaults.put("infobloxLatency", "0");
+    defaults.put("torbitFailures", "0");
+    defaults.put("infobloxFailures", "0");
+  }
+
+  private final List<String> ops;
+  private final int concurrency;
+  private final double rate;
+  private final int apps;
+  private final int subdomains;
+  private final int lbs;
+  private final int cnames;
+
+  private final FakeTorbitServer torbit = new FakeTorbitServer();
+  private final FakeInfobloxServer infoblox = new FakeInfobloxServer();
+  private final GslbProvider provider = new GslbProvider();
+  private final Queue<App> idleApps = new ConcurrentLinkedQueue<>();
+
+  private volatile Map<String, OpStats> stats;
+
+  LoadTest(Map<String, String> options) {
+    this.ops = Arrays.asList(options.get("ops").split(","));
+    for (String op : ops) {
+      if (!op.equals("create") && !op.equals("status") && !op.equals("delete")) {
+        throw new IllegalArgumentException("unknown operation " + op);
+      }
+    }
+    this.concurrency = Integer.parseInt(options.get("concurrency"));
+    this.rate = Double.parseDouble(options.get("rate"));
+    this.apps = Integer.parseInt(options.get("apps"));
+    this.subdomains = Integer.parseInt(options.get("subdomains"));
+    this.lbs = Integer.parseInt(options.get("lbs"));
+    this.cnames = Integer.parseInt(options.get("cnames"));
+    if (apps < concurrency) {
+      throw new IllegalArgumentException("-apps must be at least -concurrency");
+    }
+    torbit.latencyMillis(Long.parseLong(options.get("torbitLatency")))
+        .failureRate(Double.parseDouble(options.get("torbitFailures")), 503);
+    infoblox.latencyMillis(Long.parseLong(options.get("infobloxLatency")))
+        .failureRate(Double.parseDouble(options.get("infobloxFailures")), 503);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>(defaults);
+    for (int i = 0; i < args.length; i += 2) {
+      String name = args[i].replaceFirst("^-+", "");
+      if (!defaults.containsKey(name) || i + 1 >= args.length) {
+        System.err.println("usage: LoadTest " + defaults.keySet().stream().map(k -> "[-" + k + " " + defaults.get(k) + "]")
+            .reduce((a, b) -> a + " " + b).orElse(""));
+        System.exit(1);
+      }
+      options.put(name, args[i + 1]);
+    }
+    mockWebServerLogger.setLevel(java.util.logging.Level.WARNING);
+    infobloxLogger.setLevel(java.util.logging.Level.WARNING);
+    //failures are summarized in the report, not logged with a stack trace each
+    org.apache.log4j.Logger.getLogger("com.oneops.gslb").setLevel(org.apache.log4j.Level.OFF);
+    LoadTest loadTest = new LoadTest(options);
+    System.out.println("load test " + options);
+    loadTest.start();
+    try {
+      loadTest.run(Integer.parseInt(options.get("warmup")));
+      Map<String, OpStats> result = loadTest.run(Integer.parseInt(options.get("duration")));
+      loadTest.report(result, Integer.parseInt(options.get("duration")));
+    } finally {
+      loadTest.stop();
+    }
+  }
+
+  void start() throws Exception {
+    List<String> clouds = new ArrayList<>();
+    for (int i = 0; i < lbs; i++) {
+      clouds.add("cl" + i);
+    }
+    for (int dc = 0; dc * 4 < lbs; dc++) {
+      torbit.addDataCenter("dc" + dc, clouds.subList(dc * 4, Math.min(lbs, dc * 4 + 4)).toArray(new String[0]));
+    }
+    torbit.start();
+    infoblox.start();
+
+    TorbitClientProvider torbitClientProvider = new TorbitClientProvider();
+    torbitClientProvider.setWireLog(WireLog.builder().level(WireLog.Level.NONE).build());
+    provider.getMtdHandler().setTorbitClientProvider(torbitClientProvider);
+    provider.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    provider.getDnsHandler().setInfobloxClientProvider(new InfobloxClientProvider());
+    for (int i = 0; i < apps; i++) {
+      idleApps.add(new App(gslb("app" + i, "e" + (i % subdomains) + ".a1.org1")));
+    }
+  }
+
+  void stop() throws Exception {
+    torbit.shutdown();
+    infoblox.shutdown();
+    //idle okhttp dispatcher threads would otherwise keep the vm alive
+    TorbitClient.sharedHttpClient().dispatcher().executorService().shutdown();
+  }
+
+  Map<String, OpStats> run(int seconds) throws InterruptedException {
+    Map<String, OpStats> runStats = new LinkedHashMap<>();
+    ops.forEach(op -> runStats.putIfAbsent(op, new OpStats()));
+    stats = runStats;
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+    if (rate <= 0) {
+      for (int i = 0; i < concurrency; i++) {
+        workers.execute(() -> {
+          while (System.nanoTime() < end) {
+            next(System.nanoTime());
+          }
+        });
+      }
+    }
+    else {
+      long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+      for (long arrival = System.nanoTime(); arrival < end; arrival += interval) {
+        LockSupport.parkNanos(arrival - System.nanoTime());
+        long scheduled = arrival;
+        workers.execute(() -> next(scheduled));
+      }
+    }
+    workers.shutdown();
+    workers.awaitTermination(1, TimeUnit.HOURS);
+    return runStats;
+  }
+
+  private void next(long scheduled) {
+    App app = idleApps.poll();
+    String op = ops.get(app.next++ % ops.size());
+    GslbResponse response;
+    try {
+      switch (op) {
+        case "create":
+          response = provider.create(app.gslb);
+          break;
+        case "status":
+          response = provider.checkStatus(app.gslb);
+          break;
+        default:
+          response = provider.delete(app.provisioned);
+      }
+    } catch (RuntimeException e) {
+      response = new GslbResponse();
+      response.setStatus(Status.FAILED);
+      response.setFailureMessage(e.toString());
+    }
+    stats.get(op).record(System.nanoTime() - scheduled, response);
+    idleApps.add(app);
+  }
+
+  void report(Map<String, OpStats> result, int seconds) {
+    System.out.printf("%-8s %8s %10s %9s %9s %9s %9s %9s %7s %8s %8s%n", "op", "count", "ops/s", "p50 ms",
+        "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors", "calls/op", "retry/op");
+    for (Map.Entry<String, OpStats> entry : result.entrySet()) {
+      OpStats s = entry.getValue();
+      synchronized (s) {
+        long[] latencies = Arrays.copyOf(s.latencies, s.count);
+        Arrays.sort(latencies);
+        System.out.printf("%-8s %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %7d %8.2f %8.2f%n", entry.getKey(),
+            s.count, s.count / (double) seconds, millis(latencies, 0.5), millis(latencies, 0.9),
+            millis(latencies, 0.99), millis(latencies, 0.999), millis(latencies, 1.0), s.errorCount,
+            s.count > 0 ? s.remoteCalls / (double) s.count : 0, s.count > 0 ? s.retries / (double) s.count : 0);
+      }
+    }
+    result.forEach((op, s) -> s.errors.forEach((message, count) ->
+        System.out.printf("error %-8s %7d  %s%n", op, count, message)));
+  }
+
+  private static double millis(long[] sorted, double quantile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(quantile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1_000_000.0;
+  }
+
+  private Gslb gslb(String app, String subdomain) {
+    List<Lb> lbList = new ArrayList<>();
+    List<CloudARecord> aRecords = new ArrayList<>();
+    for (int i = 0; i < lbs; i++) {
+      lbList.add(Lb.create("cl" + i, "10.1." + (i / 256) + "." + (i % 256), true));
+      aRecords.add(CloudARecord.create("cl" + i, app + "." + subdomain + ".cl" + i + ".xyz.com"));
+    }
+    List<String> aliases = new ArrayList<>();
+    for (int i = 0; i < cnames; i++) {
+      aliases.add(app + "-" + i + "." + subdomain + ".xyz.com");
+    }
+    return Gslb.builder()
+        .app(app)
+        .subdomain(subdomain)
+        .lbs(lbList)
+        .healthChecks(Collections.singletonList(HealthCheck.builder().protocol(Protocol.HTTP).port(80)
+            .path("/health").build()))
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbit.torbitConfig("glb.xyz.com"))
+        .infobloxConfig(infoblox.infobloxConfig("xyz.com"))
+        .cnames(aliases)
+        .cloudARecords(aRecords)
+        .logContextId(app)
+        .build();
+  }
+
+  private static class App {
+    private final Gslb gslb;
+    private final ProvisionedGslb provisioned;
+    //only touched by the thread holding the app
+    private int next;
+
+    App(Gslb gslb) {
+      this.gslb = gslb;
+      TorbitConfig torbitConfig = gslb.torbitConfig();
+      InfobloxConfig infobloxConfig = gslb.infobloxConfig();
+      this.provisioned = ProvisionedGslb.builder()
+          .app(gslb.app())
+          .subdomain(gslb.subdomain())
+          .torbitConfig(torbitConfig)
+          .infobloxConfig(infobloxConfig)
+          .cnames(gslb.cnames())
+          .cloudARecords(gslb.cloudARecords())
+          .logContextId(gslb.logContextId())
+          .build();
+    }
+  }
+
+  static class OpStats {
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errorCount;
+    private long remoteCalls;
+    private long retries;
+    private final Map<String, Integer> errors = new TreeMap<>();
+
+    synchronized void record(long nanos, GslbResponse response) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = nanos;
+      if (response.getStatus() == Status.FAILED) {
+        errorCount++;
+        //app names, record refs and counters vary per request, keep one line per kind of failure
+        String message = String.valueOf(response.getFailureMessage())
+            .replaceAll("record:[a-z]+/\\S+", "<ref>").replaceAll("\\d+", "N");
+        errors.merge(message.length() > 160 ? message.substring(0, 160) : message, 1, Integer::sum);
+      }
+      if (response.getPhaseTimings() != null) {
+        Map<String, PhaseTiming> phases = new HashMap<>();
+        response.getPhaseTimings().forEach(p -> phases.putIfAbsent(p.getPhase(), p));
+        PhaseTiming total = phases.get("total");
+        if (total != null) {
+          remoteCalls += total.getRemoteCalls();
+          retries += total.getRetries();
+        }
+      }
+    }
+  }
+
+}
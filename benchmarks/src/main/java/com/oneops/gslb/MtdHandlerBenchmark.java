@@ -0,0 +1,69 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseHostRequest;
+import com.oneops.gslb.mtd.v2.domain.MtdHostHealthCheck;
+import com.oneops.gslb.mtd.v2.domain.MtdTarget;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * building the mtd host request from a gslb, with the data center catalog already loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MtdHandlerBenchmark {
+
+  private static final String TORBIT_URL = "https://torbit.bench:8443/";
+
+  @Param({"2", "8"})
+  int lbCount;
+
+  @Param({"1", "4"})
+  int healthCheckCount;
+
+  MtdHandler handler = new MtdHandler();
+  Gslb gslb;
+  ProvisionContext context;
+
+  @Setup
+  public void setup() {
+    DataCenterCatalog catalog = new DataCenterCatalog();
+    catalog.put(TORBIT_URL, Fixtures.clouds(lbCount));
+    handler.setDataCenterCatalog(catalog);
+    gslb = Fixtures.gslb("p1", TORBIT_URL, lbCount, healthCheckCount, null);
+    context = new ProvisionContext();
+    context.logKey("");
+  }
+
+  @Benchmark
+  public List<MtdTarget> getMtdTargets() throws Exception {
+    return handler.getMtdTargets(gslb, context);
+  }
+
+  @Benchmark
+  public List<MtdHostHealthCheck> getHealthChecks() {
+    return handler.getHealthChecks(gslb);
+  }
+
+  @Benchmark
+  public MtdBaseHostRequest mtdBaseHostRequest() throws Exception {
+    return handler.mtdBaseHostRequest(gslb, context);
+  }
+
+}
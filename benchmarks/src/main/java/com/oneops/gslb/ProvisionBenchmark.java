@@ -0,0 +1,139 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbProvisionResponse;
+import com.oneops.gslb.domain.InfobloxConfig;
+import com.oneops.infoblox.InfobloxClient;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import javax.net.ServerSocketFactory;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * full GslbProvider.create against an in-process torbit and an in-memory infoblox. The mtd base
+ * and data centers are cached after the first call, so this measures the steady state of one host
+ * POST plus the dns reconcile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProvisionBenchmark {
+
+  @Param({"2", "8"})
+  int lbCount;
+
+  //held so the level is not lost when the jul logger is collected
+  private static final java.util.logging.Logger mockWebServerLogger =
+      java.util.logging.Logger.getLogger(MockWebServer.class.getName());
+
+  MockWebServer torbit = new MockWebServer();
+  GslbProvider provider = new GslbProvider();
+  Gslb gslb;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    mockWebServerLogger.setLevel(java.util.logging.Level.WARNING);
+    String dataCenters = Fixtures.dataCentersJson(lbCount);
+    torbit.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+        if (path.startsWith("/api/v2/mtds/bases?") || path.startsWith("/api/v2/mtds/bases/by-name/")) {
+          return json(Fixtures.MTD_BASE);
+        }
+        if (path.startsWith("/api/v2/data-centers")) {
+          return json(dataCenters);
+        }
+        return json(Fixtures.HOST_CREATED);
+      }
+    });
+    //without TCP_NODELAY every response waits for the delayed ack of its headers on loopback
+    torbit.setServerSocketFactory(new ServerSocketFactory() {
+      @Override
+      public ServerSocket createServerSocket() throws IOException {
+        return new ServerSocket() {
+          @Override
+          public Socket accept() throws IOException {
+            Socket socket = super.accept();
+            socket.setTcpNoDelay(true);
+            return socket;
+          }
+        };
+      }
+
+      @Override
+      public ServerSocket createServerSocket(int port) throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+        throw new UnsupportedOperationException();
+      }
+    });
+    torbit.start();
+
+    TorbitClientProvider torbitClientProvider = new TorbitClientProvider();
+    torbitClientProvider.setWireLog(WireLog.builder().level(WireLog.Level.NONE).build());
+    provider.getMtdHandler().setTorbitClientProvider(torbitClientProvider);
+    provider.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    FakeInfoblox infoblox = new FakeInfoblox();
+    provider.getDnsHandler().setInfobloxClientProvider(new InfobloxClientProvider() {
+      @Override
+      public InfobloxClient getInfobloxClient(String host, String user, String pwd) {
+        return infoblox;
+      }
+    });
+    gslb = Fixtures.gslb("p1", torbit.url("/").toString(), lbCount, 1,
+        InfobloxConfig.create("https://infoblox.bench", "bench-oo", "bench_pwd", "xyz.com"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    torbit.shutdown();
+    //idle okhttp dispatcher threads would otherwise keep the forked vm alive
+    TorbitClient.sharedHttpClient().dispatcher().executorService().shutdown();
+  }
+
+  @Benchmark
+  public GslbProvisionResponse create() {
+    GslbProvisionResponse response = provider.create(gslb);
+    if (response.getStatus() != Status.SUCCESS) {
+      throw new IllegalStateException("create failed : " + response.getFailureMessage());
+    }
+    return response;
+  }
+
+  private static MockResponse json(String body) {
+    return new MockResponse().setResponseCode(200).setBody(body);
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.oneops.gslb;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * cost of signing one torbit request. legacy is the per request signing SignInterceptor did before
+ * TorbitSigner, signer hashes a new second on every call and signerSameSecond hits the signature
+ * reuse of requests to the same path within a second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignBenchmark {
+
+  @Param({"/api/v2/mtds/bases/11/hosts/p1"})
+  String path;
+
+  @Param({"", "name=.e1.a1.org1.glb.xyz.com"})
+  String query;
+
+  String authKey = "0123456789abcdef0123456789abcdef";
+  TorbitSigner signer;
+  long second = 1500000000L;
+
+  @Setup
+  public void setup() {
+    signer = new TorbitSigner(authKey);
+  }
+
+  @Benchmark
+  public String legacy() throws Exception {
+    StringBuilder builder = new StringBuilder(path);
+    if (!query.isEmpty()) {
+      builder.append("?").append(query).append("&");
+    }
+    else {
+      builder.append("?");
+    }
+    builder.append("time=").append(Long.toString(++second));
+    return sha1hex(authKey + sha1hex(authKey + builder.toString()));
+  }
+
+  @Benchmark
+  public String signer() {
+    return signer.sign(path, query, ++second);
+  }
+
+  @Benchmark
+  public String signerSameSecond() {
+    return signer.sign(path, query, second);
+  }
+
+  private static String sha1hex(String str) throws UnsupportedEncodingException, NoSuchAlgorithmException {
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    md.update(str.getBytes("UTF-8"));
+    StringBuilder hexStr = new StringBuilder();
+    for (byte byt : md.digest()) {
+      hexStr.append(Integer.toString((byt & 0xff) + 0x100, 16).substring(1));
+    }
+    return hexStr.toString();
+  }
+
+}
@@ -0,0 +1,17 @@
+package com.oneops.gslb;
+
+/*
+ * outcome of a status check. DRIFT means the mtd host or dns entries were read and are missing or
+ * different, CHECK_ERROR that torbit or infoblox could not be read and nothing is known about them.
+ */
+public enum CheckOutcome {
+  IN_SYNC, DRIFT, CHECK_ERROR;
+
+  //the outcome of two checks of one gslb, a check error outweighs drift
+  public static CheckOutcome worst(CheckOutcome outcome, CheckOutcome other) {
+    if (outcome == null) {
+      return other;
+    }
+    return other == null || outcome.compareTo(other) >= 0 ? outcome : other;
+  }
+}
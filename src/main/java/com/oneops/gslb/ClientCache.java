@@ -0,0 +1,116 @@
+package com.oneops.gslb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+class ClientCache<K, V> {
+
+  private final int maxSize;
+  private final long idleTimeoutMillis;
+  private final LongSupplier clock;
+  private final LinkedHashMap<K, CachedClient<V>> clients = new LinkedHashMap<>(16, 0.75f, true);
+
+  ClientCache(int maxSize, long idleTimeoutMillis) {
+    this(maxSize, idleTimeoutMillis, System::currentTimeMillis);
+  }
+
+  ClientCache(int maxSize, long idleTimeoutMillis, LongSupplier clock) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize should be greater than zero");
+    }
+    this.maxSize = maxSize;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.clock = clock;
+  }
+
+  <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+    return get(key, loader, c -> true);
+  }
+
+  synchronized <E extends Exception> V get(K key, Loader<K, V, E> loader, Predicate<V> isValid) throws E {
+    long now = clock.getAsLong();
+    evictIdle(now);
+    CachedClient<V> cached = clients.get(key);
+    if (cached == null || !isValid.test(cached.client)) {
+      cached = new CachedClient<>(loader.load(key));
+      clients.put(key, cached);
+      evictEldest();
+    }
+    cached.lastAccess = now;
+    return cached.client;
+  }
+
+  synchronized V getIfPresent(K key) {
+    long now = clock.getAsLong();
+    evictIdle(now);
+    CachedClient<V> cached = clients.get(key);
+    if (cached == null) {
+      return null;
+    }
+    cached.lastAccess = now;
+    return cached.client;
+  }
+
+  synchronized void put(K key, V value) {
+    CachedClient<V> cached = new CachedClient<>(value);
+    cached.lastAccess = clock.getAsLong();
+    clients.put(key, cached);
+    evictEldest();
+  }
+
+  synchronized void invalidate(K key) {
+    clients.remove(key);
+  }
+
+  synchronized void invalidateIf(Predicate<K> predicate) {
+    clients.keySet().removeIf(predicate);
+  }
+
+  synchronized void clear() {
+    clients.clear();
+  }
+
+  synchronized int size() {
+    evictIdle(clock.getAsLong());
+    return clients.size();
+  }
+
+  private void evictIdle(long now) {
+    Iterator<Entry<K, CachedClient<V>>> iterator = clients.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Entry<K, CachedClient<V>> entry = iterator.next();
+      //entries are in access order, so the first recently used one ends the scan
+      if (now - entry.getValue().lastAccess < idleTimeoutMillis) {
+        break;
+      }
+      iterator.remove();
+    }
+  }
+
+  private void evictEldest() {
+    Iterator<Entry<K, CachedClient<V>>> iterator = clients.entrySet().iterator();
+    while (clients.size() > maxSize && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  interface Loader<K, V, E extends Exception> {
+
+    V load(K key) throws E;
+
+  }
+
+  private static class CachedClient<V> {
+    final V client;
+    long lastAccess;
+
+    CachedClient(V client) {
+      this.client = client;
+    }
+  }
+
+}
@@ -1,20 +1,70 @@
 package com.oneops.gslb;
 
 import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.PhaseTiming;
+import com.oneops.gslb.domain.TorbitConfig;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Context {
 
   protected String mtdBaseName;
   protected String app;
+  protected TorbitConfig torbitConfig;
   protected TorbitClient torbitClient;
   protected TorbitApi torbitApi;
   private String logKey;
   private GslbResponse response;
+  //kept on the context as failures replace the response
+  private final List<PhaseTiming> phaseTimings = new ArrayList<>();
+  private final AtomicInteger remoteCalls = new AtomicInteger();
+  private final AtomicInteger retries = new AtomicInteger();
 
   public void failedResponseWithMessage(String message) {
     response = GslbResponse.failedResponse(message);
   }
 
+  Phase startPhase(String name) {
+    PhaseTiming timing = new PhaseTiming(name, System.currentTimeMillis());
+    synchronized (phaseTimings) {
+      phaseTimings.add(timing);
+    }
+    return new Phase(this, timing);
+  }
+
+  //a call made with the given number of attempts
+  void recordCall(int attempts) {
+    remoteCalls.addAndGet(attempts);
+    retries.addAndGet(attempts - 1);
+  }
+
+  //adds the phases and calls of a context that ran part of this operation
+  void merge(Context other) {
+    synchronized (phaseTimings) {
+      phaseTimings.addAll(other.getPhaseTimings());
+      //stable, so phases starting in the same milli keep their nesting order
+      phaseTimings.sort(Comparator.comparingLong(PhaseTiming::getStart));
+    }
+    remoteCalls.addAndGet(other.getRemoteCalls());
+    retries.addAndGet(other.getRetries());
+  }
+
+  public List<PhaseTiming> getPhaseTimings() {
+    synchronized (phaseTimings) {
+      return new ArrayList<>(phaseTimings);
+    }
+  }
+
+  public int getRemoteCalls() {
+    return remoteCalls.get();
+  }
+
+  public int getRetries() {
+    return retries.get();
+  }
+
   public String getApp() {
     return app;
   }
@@ -23,6 +73,14 @@ public class Context {
     this.app = app;
   }
 
+  public TorbitConfig getTorbitConfig() {
+    return torbitConfig;
+  }
+
+  public void setTorbitConfig(TorbitConfig torbitConfig) {
+    this.torbitConfig = torbitConfig;
+  }
+
   public TorbitClient getTorbitClient() {
     return torbitClient;
   }
@@ -0,0 +1,110 @@
+package com.oneops.gslb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/*
+ * named checks of a verification, polled until all of them passed or the deadline is reached. A
+ * round runs the pending checks concurrently and drops the ones that passed, so converged
+ * conditions are not checked again. Rounds are spaced by the backoff of the policy, which starts
+ * over after a round in which some checks converged. The last round runs at the deadline.
+ */
+class Convergence {
+
+  private static final Logger logger = Logger.getLogger(Convergence.class);
+
+  private final String logKey;
+  private final Map<String, Check> pending = new LinkedHashMap<>();
+  private int rounds;
+
+  Convergence(String logKey) {
+    this.logKey = logKey != null ? logKey : "";
+  }
+
+  Convergence check(String name, Check check) {
+    pending.put(name, check);
+    return this;
+  }
+
+  /*
+   * returns once all checks passed, otherwise throws the failure of the first check still pending.
+   * Only one round is run when deadlineMillis is 0.
+   */
+  void await(long deadlineMillis, RetryPolicy backoff, Executor executor, int maxConcurrency) throws Exception {
+    long deadline = System.currentTimeMillis() + deadlineMillis;
+    int retry = 0;
+    while (!pending.isEmpty()) {
+      int round = ++rounds;
+      Map<String, Exception> failures = runRound(round, executor, maxConcurrency);
+      int converged = pending.size() - failures.size();
+      pending.keySet().retainAll(failures.keySet());
+      if (pending.isEmpty()) {
+        break;
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      Exception first = failures.get(pending.keySet().iterator().next());
+      if (deadlineMillis <= 0) {
+        throw first;
+      }
+      if (remaining <= 0) {
+        throw new ExecutionException(first.getMessage() + ", not converged after " + round + " rounds", first);
+      }
+      retry = converged > 0 ? 1 : retry + 1;
+      long delay = Math.min(backoff.backoffMillis(retry), remaining);
+      logger.info(logKey + pending.size() + " checks not converged after round " + round + ", checking again in "
+          + delay + "ms : " + pending.keySet());
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw first;
+      }
+    }
+    if (rounds > 1) {
+      logger.info(logKey + "all checks converged after " + rounds + " rounds");
+    }
+  }
+
+  int rounds() {
+    return rounds;
+  }
+
+  //failures of the round in the order the checks were added
+  private Map<String, Exception> runRound(int round, Executor executor, int maxConcurrency) {
+    List<Map.Entry<String, Check>> checks = new ArrayList<>(pending.entrySet());
+    Map<String, Exception> failed = new ConcurrentHashMap<>();
+    AtomicInteger next = new AtomicInteger();
+    Runnable worker = () -> {
+      for (int i = next.getAndIncrement(); i < checks.size(); i = next.getAndIncrement()) {
+        Map.Entry<String, Check> check = checks.get(i);
+        try {
+          check.getValue().run(round);
+        } catch (Exception e) {
+          failed.put(check.getKey(), e);
+        }
+      }
+    };
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int w = 1; w < Math.min(maxConcurrency, checks.size()); w++) {
+      futures.add(CompletableFuture.runAsync(worker, executor));
+    }
+    worker.run();
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    Map<String, Exception> failures = new LinkedHashMap<>();
+    checks.stream().filter(c -> failed.containsKey(c.getKey())).forEach(c -> failures.put(c.getKey(), failed.get(c.getKey())));
+    return failures;
+  }
+
+  interface Check {
+    //throws when the condition does not hold (yet)
+    void run(int round) throws Exception;
+  }
+
+}
@@ -0,0 +1,161 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import org.apache.log4j.Logger;
+
+/*
+ * data centers and clouds per torbit endpoint. A stale catalog is served while it is refreshed in
+ * the background, concurrent loads of the same endpoint share one request and clouds that are
+ * still unknown after a load are not looked up again until the negative ttl expires.
+ */
+public class DataCenterCatalog {
+
+  private static final Logger logger = Logger.getLogger(DataCenterCatalog.class);
+
+  private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final DataCenterCatalog sharedCatalog = new DataCenterCatalog();
+
+  private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+  private final long ttlMillis;
+  private final long negativeTtlMillis;
+  private final LongSupplier clock;
+
+  public DataCenterCatalog() {
+    this(DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+  }
+
+  public DataCenterCatalog(long ttlMillis, long negativeTtlMillis) {
+    this(ttlMillis, negativeTtlMillis, System::currentTimeMillis);
+  }
+
+  DataCenterCatalog(long ttlMillis, long negativeTtlMillis, LongSupplier clock) {
+    this.ttlMillis = ttlMillis;
+    this.negativeTtlMillis = negativeTtlMillis;
+    this.clock = clock;
+  }
+
+  public static DataCenterCatalog shared() {
+    return sharedCatalog;
+  }
+
+  public Map<String, DcCloud> getClouds(String endpoint, TorbitClient client, Collection<String> cloudNames)
+      throws Exception {
+    try {
+      return getCloudsAsync(endpoint, client, cloudNames).join();
+    } catch (CompletionException e) {
+      throw Futures.unwrap(e);
+    }
+  }
+
+  public CompletableFuture<Map<String, DcCloud>> getCloudsAsync(String endpoint, TorbitClient client,
+      Collection<String> cloudNames) {
+    return endpoints.computeIfAbsent(endpoint, k -> new Endpoint()).getClouds(endpoint, client, cloudNames);
+  }
+
+  public void invalidate(String endpoint) {
+    endpoints.remove(endpoint);
+  }
+
+  void put(String endpoint, Collection<DcCloud> clouds) {
+    Map<String, DcCloud> cloudMap = clouds.stream().collect(Collectors.toMap(DcCloud::name, c -> c));
+    endpoints.computeIfAbsent(endpoint, k -> new Endpoint()).snapshot = new Snapshot(cloudMap, clock.getAsLong());
+  }
+
+  private CompletableFuture<Snapshot> load(TorbitClient client) {
+    return client.readAsync(client.getTorbit().streamDataCenters(), DataCenterReader::read, DataCentersResponse.class)
+        .thenApply(response -> {
+          if (!response.isSuccessful()) {
+            throw new CompletionException(new ExecutionException("Failed while loading data centers "
+                + MtdHandler.getErrorMessages(response.getError())));
+          }
+          return new Snapshot(Collections.unmodifiableMap(response.getBody()), clock.getAsLong());
+        });
+  }
+
+  private static class Snapshot {
+    private final Map<String, DcCloud> clouds;
+    private final long loadedAt;
+
+    Snapshot(Map<String, DcCloud> clouds, long loadedAt) {
+      this.clouds = clouds;
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  private class Endpoint {
+    private volatile Snapshot snapshot;
+    private CompletableFuture<Snapshot> inFlight;
+    private final ConcurrentMap<String, Long> unknownClouds = new ConcurrentHashMap<>();
+
+    CompletableFuture<Map<String, DcCloud>> getClouds(String endpoint, TorbitClient client,
+        Collection<String> cloudNames) {
+      Snapshot current = snapshot;
+      long now = clock.getAsLong();
+      List<String> missing = cloudNames.stream()
+          .filter(c -> current == null || !current.clouds.containsKey(c))
+          .filter(c -> current == null || unknownClouds.getOrDefault(c, 0L) <= now)
+          .collect(Collectors.toList());
+      if (missing.isEmpty()) {
+        if (current == null) {
+          return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        if (now - current.loadedAt > ttlMillis) {
+          refresh(client).exceptionally(e -> {
+            logger.warn("background refresh of data centers failed for " + endpoint, e);
+            return null;
+          });
+        }
+        return CompletableFuture.completedFuture(current.clouds);
+      }
+      return refresh(client).thenApply(s -> {
+        missing.stream().filter(c -> !s.clouds.containsKey(c))
+            .forEach(c -> {
+              logger.warn("cloud " + c + " not found in data centers of " + endpoint);
+              unknownClouds.put(c, clock.getAsLong() + negativeTtlMillis);
+            });
+        return s.clouds;
+      });
+    }
+
+    private CompletableFuture<Snapshot> refresh(TorbitClient client) {
+      CompletableFuture<Snapshot> future;
+      synchronized (this) {
+        if (inFlight != null) {
+          return inFlight;
+        }
+        future = inFlight = new CompletableFuture<>();
+      }
+      load(client).whenComplete((s, e) -> {
+        if (s != null) {
+          snapshot = s;
+          unknownClouds.keySet().removeIf(s.clouds::containsKey);
+        }
+        synchronized (this) {
+          inFlight = null;
+        }
+        if (e != null) {
+          future.completeExceptionally(e);
+        }
+        else {
+          future.complete(s);
+        }
+      });
+      return future;
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.oneops.gslb;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * reads the data centers response as a stream into a cloud name index. Only cloud ids, names and
+ * data center ids are kept, everything else (cidrs, links, metadata) is skipped without being
+ * materialized.
+ */
+final class DataCenterReader {
+
+  private DataCenterReader() {
+  }
+
+  static Map<String, DcCloud> read(Reader reader) throws IOException {
+    Map<String, DcCloud> clouds = new HashMap<>();
+    try (JsonReader json = new JsonReader(reader)) {
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("data_centers".equals(json.nextName()) && json.peek() == JsonToken.BEGIN_ARRAY) {
+          json.beginArray();
+          while (json.hasNext()) {
+            readDataCenter(json, clouds);
+          }
+          json.endArray();
+        }
+        else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+    return clouds;
+  }
+
+  private static void readDataCenter(JsonReader json, Map<String, DcCloud> clouds) throws IOException {
+    if (json.peek() != JsonToken.BEGIN_OBJECT) {
+      json.skipValue();
+      return;
+    }
+    Integer dataCenterId = null;
+    //clouds listed before the data center id get it once the object is read
+    List<Cloud> withoutDataCenter = null;
+    json.beginObject();
+    while (json.hasNext()) {
+      String name = json.nextName();
+      if ("id".equals(name) && json.peek() == JsonToken.NUMBER) {
+        dataCenterId = json.nextInt();
+      }
+      else if ("clouds".equals(name) && json.peek() == JsonToken.BEGIN_ARRAY) {
+        json.beginArray();
+        while (json.hasNext()) {
+          Cloud cloud = readCloud(json);
+          if (cloud == null) {
+            continue;
+          }
+          Integer cloudDataCenterId = cloud.dataCenterId != null ? cloud.dataCenterId : dataCenterId;
+          if (cloudDataCenterId != null) {
+            clouds.put(cloud.name, DcCloud.create(cloud.id, cloud.name, cloudDataCenterId, null));
+          }
+          else {
+            withoutDataCenter = withoutDataCenter != null ? withoutDataCenter : new ArrayList<>();
+            withoutDataCenter.add(cloud);
+          }
+        }
+        json.endArray();
+      }
+      else {
+        json.skipValue();
+      }
+    }
+    json.endObject();
+    if (withoutDataCenter != null && dataCenterId != null) {
+      for (Cloud cloud : withoutDataCenter) {
+        clouds.put(cloud.name, DcCloud.create(cloud.id, cloud.name, dataCenterId, null));
+      }
+    }
+  }
+
+  private static Cloud readCloud(JsonReader json) throws IOException {
+    if (json.peek() != JsonToken.BEGIN_OBJECT) {
+      json.skipValue();
+      return null;
+    }
+    Cloud cloud = new Cloud();
+    json.beginObject();
+    while (json.hasNext()) {
+      String field = json.nextName();
+      JsonToken token = json.peek();
+      if ("id".equals(field) && token == JsonToken.NUMBER) {
+        cloud.id = json.nextInt();
+      }
+      else if ("name".equals(field) && token == JsonToken.STRING) {
+        cloud.name = json.nextString();
+      }
+      else if ("data_center_id".equals(field) && token == JsonToken.NUMBER) {
+        cloud.dataCenterId = json.nextInt();
+      }
+      else {
+        json.skipValue();
+      }
+    }
+    json.endObject();
+    return cloud.id != null && cloud.name != null ? cloud : null;
+  }
+
+  private static class Cloud {
+    private Integer id;
+    private String name;
+    private Integer dataCenterId;
+  }
+
+}
@@ -2,6 +2,7 @@ package com.oneops.gslb;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+import com.google.gson.JsonElement;
 import com.oneops.gslb.domain.CloudARecord;
 import com.oneops.gslb.domain.Gslb;
 import com.oneops.gslb.domain.GslbProvisionResponse;
@@ -9,13 +10,23 @@ import com.oneops.gslb.domain.InfobloxConfig;
 import com.oneops.gslb.domain.Lb;
 import com.oneops.gslb.domain.ProvisionedGslb;
 import com.oneops.infoblox.InfobloxClient;
+import com.oneops.infoblox.InfobloxException;
 import com.oneops.infoblox.model.a.ARec;
 import com.oneops.infoblox.model.cname.CNAME;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
@@ -23,10 +34,26 @@ import org.apache.log4j.Logger;
 
 public class DnsHandler {
 
-  private InfobloxClientProvider infobloxClientProvider = new InfobloxClientProvider();
+  private static final int DEFAULT_MAX_CONCURRENCY_PER_GRID = 4;
+
+  private InfobloxClientProvider infobloxClientProvider = InfobloxClientProvider.shared();
 
   private static final Logger logger = Logger.getLogger(DnsHandler.class);
 
+  private int maxConcurrencyPerGrid = DEFAULT_MAX_CONCURRENCY_PER_GRID;
+
+  private Executor executor;
+
+  private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+
+  private Metrics metrics = Metrics.NOOP;
+
+  private ZoneSnapshotCache zoneSnapshotCache;
+
+  private int writeBatchSize;
+
+  private final ConcurrentMap<String, Semaphore> gridPermits = new ConcurrentHashMap<>();
+
   private InfobloxClient getInfoBloxClient(InfobloxConfig infobloxConfig) throws ExecutionException {
     InfobloxClient client;
     if (infobloxConfig != null &&
@@ -43,8 +70,12 @@ public class DnsHandler {
     logger.info(context.logKey() + "setting up cnames");
     try {
       InfobloxClient infoBloxClient = getInfoBloxClient(gslb.infobloxConfig());
-      setupCnames(gslb, context, infoBloxClient);
-      deleteObsoleteEntries(gslb, context, infoBloxClient);
+      RecordWrites writes = newRecordWrites();
+      setupCnames(gslb, context, infoBloxClient, writes);
+      Phase.run(context, "obsolete-entries", () -> deleteObsoleteEntries(gslb, context, infoBloxClient, writes));
+      if (writes != null) {
+        Phase.run(context, "record-writes", () -> submit(context, gslb.infobloxConfig(), infoBloxClient, writes));
+      }
     } catch (Exception e) {
       handleException(context, e, "Failed while setting up dns entries");
     }
@@ -53,8 +84,12 @@ public class DnsHandler {
   public void removeDnsEntries(ProvisionedGslb gslb, Context context) {
     try {
       InfobloxClient infoBloxClient = getInfoBloxClient(gslb.infobloxConfig());
-      deleteCNames(context, gslb.cnames(), infoBloxClient);
-      deleteCloudEntries(context, gslb.cloudARecords(), infoBloxClient);
+      RecordWrites writes = newRecordWrites();
+      Phase.run(context, "cnames", () -> deleteCNames(context, gslb.cnames(), infoBloxClient, writes));
+      Phase.run(context, "cloud-entries", () -> deleteCloudEntries(context, gslb.cloudARecords(), infoBloxClient, writes));
+      if (writes != null) {
+        Phase.run(context, "record-writes", () -> submit(context, gslb.infobloxConfig(), infoBloxClient, writes));
+      }
     } catch(Exception e) {
       handleException(context, e, "Failed while removing dns entries");
     }
@@ -63,9 +98,17 @@ public class DnsHandler {
   public void checkStatus(Gslb gslb, ProvisionContext context) {
     try {
       InfobloxClient infoBloxClient = getInfoBloxClient(gslb.infobloxConfig());
-      checkStatus(gslb, context, infoBloxClient);
+      Phase.run(context, "cnames", () -> checkStatus(gslb, context, infoBloxClient));
+      if (context.getResponse().getStatus() != Status.FAILED && context.getProvisioningResponse().getCheckOutcome() == null) {
+        context.getProvisioningResponse().setCheckOutcome(CheckOutcome.IN_SYNC);
+      }
     } catch(Exception e) {
       handleException(context, e, "Failed while checking status for dns entries");
+      //failures not classified by the cname checks are check errors
+      CheckOutcome outcome = context.getProvisioningResponse().getCheckOutcome();
+      if (outcome == null || outcome == CheckOutcome.IN_SYNC) {
+        context.getProvisioningResponse().setCheckOutcome(CheckOutcome.CHECK_ERROR);
+      }
     }
   }
 
@@ -75,38 +118,63 @@ public class DnsHandler {
     }
   }
 
-  private void deleteObsoleteEntries(Gslb gslb, ProvisionContext context, InfobloxClient infobloxClient) throws Exception {
-    deleteCNames(context, gslb.obsoleteCnames(), infobloxClient);
-    deleteCloudEntries(context, gslb.obsoleteCloudARecords(), infobloxClient);
+  private void deleteObsoleteEntries(Gslb gslb, ProvisionContext context, InfobloxClient infobloxClient,
+      RecordWrites writes) throws Exception {
+    deleteCNames(context, gslb.obsoleteCnames(), infobloxClient, writes);
+    deleteCloudEntries(context, gslb.obsoleteCloudARecords(), infobloxClient, writes);
   }
 
-  private void checkStatus(Gslb gslb, ProvisionContext context, InfobloxClient infoBloxClient) {
+  private void checkStatus(Gslb gslb, ProvisionContext context, InfobloxClient infoBloxClient) throws Exception {
     String cname = context.getApp() + context.getMtdBaseName();
     logger.info(context.logKey() + "checking if cnames exist : ");
-    List<String> aliasList = gslb.cnames().stream().map(String::toLowerCase).collect(Collectors.toList());
+    List<String> aliasList = gslb.cnames() == null ? Collections.emptyList() :
+        gslb.cnames().stream().map(String::toLowerCase).collect(Collectors.toList());
     logger.info(context.logKey() + "expected aliases " + aliasList + ", cname : " + cname);
-    for (String alias : aliasList) {
+    ZoneSnapshot snapshot = zoneSnapshot(context, gslb.infobloxConfig(), infoBloxClient);
+    reconcile(context, infoBloxClient, aliasList, alias -> {
+      List<CNAME> existingCnames = cnamesFromSnapshot(snapshot, alias, cname);
       try {
-        List<CNAME> existingCnames = infoBloxClient.getCNameRec(alias);
-        if (existingCnames == null || existingCnames.isEmpty() || !cname.equals(existingCnames.get(0).canonical())) {
-          fail(context, "cname not created properly " + alias, null);
-          break;
+        if (existingCnames == null) {
+          existingCnames = infoblox(context, infoBloxClient, "GET", "record:cname", () -> infoBloxClient.getCNameRec(alias));
         }
       } catch(Exception e) {
-        failSimple(context, "Exception while checking cnames ", e);
+        checkFailed(context, CheckOutcome.CHECK_ERROR, "Exception while checking cnames ", e);
+        return;
+      }
+      if (existingCnames == null || existingCnames.isEmpty() || !cname.equals(existingCnames.get(0).canonical())) {
+        checkFailed(context, CheckOutcome.DRIFT, "cname not created properly " + alias, null);
+      }
+    });
+  }
+
+  //a cname that could not be read keeps the check from reporting drift found on other cnames
+  private void checkFailed(ProvisionContext context, CheckOutcome outcome, String message, Exception e) throws Exception {
+    try {
+      fail(context, message, e);
+    } finally {
+      synchronized (context) {
+        GslbProvisionResponse response = context.getProvisioningResponse();
+        response.setCheckOutcome(CheckOutcome.worst(response.getCheckOutcome(), outcome));
       }
     }
   }
 
-  private void setupCnames(Gslb gslb, ProvisionContext context, InfobloxClient infoBloxClient) throws Exception {
+  private void setupCnames(Gslb gslb, ProvisionContext context, InfobloxClient infoBloxClient, RecordWrites writes)
+      throws Exception {
     Map<String, String> entriesMap = new HashMap<>();
-    addCnames(gslb, context, infoBloxClient, entriesMap);
-    addCloudEntry(gslb, context, infoBloxClient, entriesMap);
+    ZoneSnapshot snapshot = zoneSnapshot(context, gslb.infobloxConfig(), infoBloxClient);
+    Phase.run(context, "cnames", () -> addCnames(gslb, context, infoBloxClient, entriesMap, snapshot, writes));
+    Phase.run(context, "cloud-entries", () -> addCloudEntry(gslb, context, infoBloxClient, entriesMap, snapshot, writes));
     updateWoResult(entriesMap, context);
   }
 
   private void fail(Context context, String message, Exception e) throws Exception {
-    failSimple(context, message, e);
+    //records are reconciled concurrently, only the first failure is reported in the response
+    synchronized (context) {
+      if (context.getResponse().getStatus() != Status.FAILED) {
+        failSimple(context, message, e);
+      }
+    }
     if (e == null) {
       e = new ExecutionException(message);
     }
@@ -120,7 +188,7 @@ public class DnsHandler {
   }
 
   private void addCloudEntry(Gslb gslb, ProvisionContext context, InfobloxClient infobloxClient,
-      Map<String, String> entriesMap) throws Exception {
+      Map<String, String> entriesMap, ZoneSnapshot snapshot, RecordWrites writes) throws Exception {
     if (gslb.cloudARecords() != null) {
       Map<String, Lb> cloudToLbMap = gslb.lbs().stream().collect(Collectors.toMap(c -> c.cloud(), Function.identity()));
       Map<String, String> cloudEntries = new HashMap<>();
@@ -133,45 +201,94 @@ public class DnsHandler {
           }
         }
       }
-      for (Entry<String, String> entry : cloudEntries.entrySet()) {
-        addCloudARecord(context, entry.getKey(), entry.getValue(), infobloxClient);
-      }
+      reconcile(context, infobloxClient, new ArrayList<>(cloudEntries.entrySet()),
+          entry -> addCloudARecord(context, gslb.infobloxConfig(), entry.getKey(), entry.getValue(), infobloxClient,
+              snapshot, writes));
       entriesMap.putAll(cloudEntries);
     }
   }
 
-  private void addCloudARecord(ProvisionContext context, String cloudEntry, String lbVip, InfobloxClient infobloxClient) throws Exception {
+  private void addCloudARecord(ProvisionContext context, InfobloxConfig infobloxConfig, String cloudEntry, String lbVip,
+      InfobloxClient infobloxClient, ZoneSnapshot snapshot, RecordWrites writes) throws Exception {
     if (isNotBlank(lbVip)) {
       logger.info(context.logKey() + "cloud dns entry " + cloudEntry + " lbVip " + lbVip);
       try {
-        boolean alreadyExists = false;
-        List<ARec> records = infobloxClient.getARec(cloudEntry);
+        ARec existing = null;
+        List<ARec> records = aRecsFromSnapshot(snapshot, cloudEntry, lbVip);
+        if (records == null) {
+          records = infoblox(context, infobloxClient, "GET", "record:a", () -> infobloxClient.getARec(cloudEntry));
+        }
         if (records != null && records.size() == 1) {
           if (lbVip.equals(records.get(0).ipv4Addr())) {
             logger.info(context.logKey() + "cloud dns entry is already set, not doing anything");
+            addARecordReceipt(context, cloudEntry, records.get(0).ipv4Addr());
             return;
           }
           else {
-            alreadyExists = true;
+            existing = records.get(0);
             logger.info(context.logKey() + "cloud dns entry already exists, but not matching");
           }
         }
 
-        if (alreadyExists) {
-          logger.info(context.logKey() + "cloud dns entry: " + cloudEntry + ", deleting the current entry and recreating it");
-          List<String> list = infobloxClient.deleteARec(cloudEntry);
-          logger.info(context.logKey() + "infoblox deleted cloud entries count " + list.size());
+        zoneChanged(infobloxClient, cloudEntry);
+        ARec current = existing;
+        if (writes != null) {
+          WapiRequestClient.Item item = current != null ? WapiRequestClient.Item.modifyARec(current.ref(), lbVip) :
+              WapiRequestClient.Item.createARec(cloudEntry, lbVip);
+          writes.add(() -> setCloudARecord(context, infobloxConfig, cloudEntry, lbVip, infobloxClient, current),
+              results -> addARecordReceipt(context, cloudEntry, WapiRequestClient.resultField(results.get(0), "ipv4addr")),
+              item);
+          return;
         }
-        logger.info(context.logKey() + "creating cloud dns entry " + cloudEntry);
-        ARec aRecord = infobloxClient.createARec(cloudEntry, lbVip);
-        logger.info(context.logKey() + "arecord created " + aRecord);
-
+        setCloudARecord(context, infobloxConfig, cloudEntry, lbVip, infobloxClient, current);
       } catch (IOException e) {
         fail(context,"Exception while setting up cloud dns entry ", e);
       }
     }
   }
 
+  /*
+   * points the cloud entry at the vip. A not matching existing record is updated in place, so the
+   * entry keeps resolving while the vip moves. Only when the grid rejects the update, e.g. because
+   * the record was removed meanwhile, it is deleted and created again.
+   */
+  private void setCloudARecord(ProvisionContext context, InfobloxConfig infobloxConfig, String cloudEntry, String lbVip,
+      InfobloxClient infobloxClient, ARec existing) throws Exception {
+    try {
+      if (existing != null) {
+        try {
+          logger.info(context.logKey() + "cloud dns entry: " + cloudEntry + ", updating " + existing.ipv4Addr() + " to " + lbVip);
+          WapiRequestClient requestClient = infobloxClientProvider.getWapiRequestClient(infobloxConfig.host(),
+              infobloxConfig.user(), infobloxConfig.pwd());
+          String ipv4Addr = infoblox(context, infobloxClient, "PUT", "record:a",
+              () -> requestClient.modifyARec(existing.ref(), lbVip));
+          addARecordReceipt(context, cloudEntry, ipv4Addr);
+          return;
+        } catch (InfobloxException e) {
+          logger.warn(context.logKey() + "updating cloud dns entry " + cloudEntry + " was rejected : " + e.getMessage());
+        }
+        logger.info(context.logKey() + "cloud dns entry: " + cloudEntry + ", deleting the current entry and recreating it");
+        List<String> list = infoblox(context, infobloxClient, "DELETE", "record:a", () -> infobloxClient.deleteARec(cloudEntry));
+        logger.info(context.logKey() + "infoblox deleted cloud entries count " + list.size());
+      }
+      logger.info(context.logKey() + "creating cloud dns entry " + cloudEntry);
+      ARec aRecord = infoblox(context, infobloxClient, "POST", "record:a", () -> infobloxClient.createARec(cloudEntry, lbVip));
+      logger.info(context.logKey() + "arecord created " + aRecord);
+      if (aRecord != null) {
+        addARecordReceipt(context, cloudEntry, aRecord.ipv4Addr());
+      }
+    } catch (IOException e) {
+      fail(context,"Exception while setting up cloud dns entry ", e);
+    }
+  }
+
+  //only addresses the grid returned go into the receipt, the verifier reads back the others
+  private void addARecordReceipt(ProvisionContext context, String cloudEntry, String ipv4Addr) {
+    if (ipv4Addr != null) {
+      context.writeReceipt().addARecord(cloudEntry, ipv4Addr);
+    }
+  }
+
   private void updateWoResult(Map<String, String> entriesMap, ProvisionContext context) {
     GslbProvisionResponse response = context.getProvisioningResponse();
     response.setDnsEntries(entriesMap);
@@ -179,50 +296,78 @@ public class DnsHandler {
     entriesMap.put(domainName, context.getPrimaryTargets() != null ? context.getPrimaryTargets().toString() : "");
   }
 
-  private void addCnames(Gslb gslb, ProvisionContext context, InfobloxClient infoBloxClient, Map<String, String> entriesMap) throws Exception {
+  private void addCnames(Gslb gslb, ProvisionContext context, InfobloxClient infoBloxClient, Map<String, String> entriesMap,
+      ZoneSnapshot snapshot, RecordWrites writes) throws Exception {
     List<String> aliases = gslb.cnames();
     if (aliases != null) {
       String cname = context.getApp() + context.getMtdBaseName();
       List<String> aliasList = aliases.stream().map(String::toLowerCase).collect(Collectors.toList());
       logger.info(context.logKey() + "aliases to be added/updated " + aliasList + ", cname : " + cname);
-      for (String alias : aliasList) {
-        try {
-          entriesMap.put(alias, cname);
-          List<CNAME> existingCnames = infoBloxClient.getCNameRec(alias);
-          if (existingCnames != null && !existingCnames.isEmpty()) {
-            if (cname.equals(existingCnames.get(0).canonical())) {
-              //cname matches, no need to do anything
-              logger.info(context.logKey() + "cname already exists, no change needed " + alias);
-            }
-            else {
-              fail(context, "alias " + alias + " exists already with a different cname", null);
-            }
-          }
-          else {
-            logger.info(context.logKey() + "cname not found, trying to add " + alias);
-            try {
-              CNAME newCname = infoBloxClient.createCNameRec(alias, cname);
-              if (newCname == null || !cname.equals(newCname.canonical())) {
-                fail(context, "Failed to create cname ", null);
-              }
-              else {
-                logger.info(context.logKey() + "cname added successfully " + alias);
-              }
-            } catch (IOException e) {
-              logger.error(context.logKey() + "cname [" + alias + "] creation failed with " + e.getMessage());
-              if (isAlreadyExistsError(alias, e)) {
-                logger.info(context.logKey() + "ignoring add cname error - record already exists");
-              }
-              else {
-                logger.error(e);
-                fail(context, "Failed while adding cname " +  cname, e);
-              }
-            }
-          }
-        } catch (IOException e) {
-          fail(context, "Failed while adding/updating cnames ", e);
+      aliasList.forEach(alias -> entriesMap.put(alias, cname));
+      reconcile(context, infoBloxClient, aliasList, alias -> addCname(context, alias, cname, infoBloxClient, snapshot, writes));
+    }
+  }
+
+  private void addCname(ProvisionContext context, String alias, String cname, InfobloxClient infoBloxClient,
+      ZoneSnapshot snapshot, RecordWrites writes) throws Exception {
+    try {
+      List<CNAME> existingCnames = cnamesFromSnapshot(snapshot, alias, cname);
+      if (existingCnames == null) {
+        existingCnames = infoblox(context, infoBloxClient, "GET", "record:cname", () -> infoBloxClient.getCNameRec(alias));
+      }
+      if (existingCnames != null && !existingCnames.isEmpty()) {
+        if (cname.equals(existingCnames.get(0).canonical())) {
+          //cname matches, no need to do anything
+          logger.info(context.logKey() + "cname already exists, no change needed " + alias);
+          addCnameReceipt(context, alias, existingCnames.get(0).canonical());
+        }
+        else {
+          fail(context, "alias " + alias + " exists already with a different cname", null);
+        }
+      }
+      else {
+        logger.info(context.logKey() + "cname not found, trying to add " + alias);
+        zoneChanged(infoBloxClient, alias);
+        if (writes != null) {
+          writes.add(() -> createCname(context, alias, cname, infoBloxClient),
+              results -> addCnameReceipt(context, alias, WapiRequestClient.resultField(results.get(0), "canonical")),
+              WapiRequestClient.Item.createCname(alias, cname));
+        }
+        else {
+          createCname(context, alias, cname, infoBloxClient);
         }
       }
+    } catch (IOException e) {
+      fail(context, "Failed while adding/updating cnames ", e);
+    }
+  }
+
+  private void createCname(ProvisionContext context, String alias, String cname, InfobloxClient infoBloxClient)
+      throws Exception {
+    try {
+      CNAME newCname = infoblox(context, infoBloxClient, "POST", "record:cname", () -> infoBloxClient.createCNameRec(alias, cname));
+      if (newCname == null || !cname.equals(newCname.canonical())) {
+        fail(context, "Failed to create cname ", null);
+      }
+      else {
+        logger.info(context.logKey() + "cname added successfully " + alias);
+        addCnameReceipt(context, alias, newCname.canonical());
+      }
+    } catch (IOException e) {
+      logger.error(context.logKey() + "cname [" + alias + "] creation failed with " + e.getMessage());
+      if (isAlreadyExistsError(alias, e)) {
+        logger.info(context.logKey() + "ignoring add cname error - record already exists");
+      }
+      else {
+        logger.error(e);
+        fail(context, "Failed while adding cname " +  cname, e);
+      }
+    }
+  }
+
+  private void addCnameReceipt(ProvisionContext context, String alias, String canonical) {
+    if (canonical != null) {
+      context.writeReceipt().addCname(alias, canonical);
     }
   }
 
@@ -231,40 +376,341 @@ public class DnsHandler {
         e.getMessage().contains(String.format("IBDataConflictError: IB.Data.Conflict:The record '%s' already exists.", alias));
   }
 
-  private void deleteCNames(Context context, List<String> aliases, InfobloxClient infoBloxClient) throws Exception {
+  private void deleteCNames(Context context, List<String> aliases, InfobloxClient infoBloxClient, RecordWrites writes)
+      throws Exception {
     if (aliases != null) {
       List<String> aliasList = aliases.stream().map(String::toLowerCase).collect(Collectors.toList());
       logger.info(context.logKey() + "delete cnames " + aliasList);
-      for (String alias : aliasList) {
-        try {
-          infoBloxClient.deleteCNameRec(alias);
-        } catch(Exception e) {
-          if (e.getCause() != null && e.getCause().getMessage() != null
-              && e.getCause().getMessage().contains("AdmConDataNotFoundError")) {
-            logger.info(context.logKey() + "delete failed with no data found for " + alias + ", ignore and continue");
-          }
-          else {
+      reconcile(context, infoBloxClient, aliasList, alias -> {
+        zoneChanged(infoBloxClient, alias);
+        if (writes != null) {
+          List<CNAME> existing;
+          try {
+            existing = infoblox(context, infoBloxClient, "GET", "record:cname", () -> infoBloxClient.getCNameRec(alias));
+          } catch(Exception e) {
             fail(context, "Failed while deleting cname " + alias, e);
+            return;
+          }
+          if (existing != null && !existing.isEmpty()) {
+            writes.add(() -> deleteCname(context, alias, infoBloxClient),
+                existing.stream().map(c -> WapiRequestClient.Item.delete(c.ref())).toArray(WapiRequestClient.Item[]::new));
           }
+          return;
         }
+        deleteCname(context, alias, infoBloxClient);
+      });
+    }
+  }
+
+  private void deleteCname(Context context, String alias, InfobloxClient infoBloxClient) throws Exception {
+    try {
+      infoblox(context, infoBloxClient, "DELETE", "record:cname", () -> infoBloxClient.deleteCNameRec(alias));
+    } catch(Exception e) {
+      if (e.getCause() != null && e.getCause().getMessage() != null
+          && e.getCause().getMessage().contains("AdmConDataNotFoundError")) {
+        logger.info(context.logKey() + "delete failed with no data found for " + alias + ", ignore and continue");
+      }
+      else {
+        fail(context, "Failed while deleting cname " + alias, e);
       }
     }
   }
 
-  private void deleteCloudEntries(Context context, List<CloudARecord> aRecords, InfobloxClient infobloxClient)
-      throws Exception {
+  private void deleteCloudEntries(Context context, List<CloudARecord> aRecords, InfobloxClient infobloxClient,
+      RecordWrites writes) throws Exception {
     if (aRecords != null) {
-      for (CloudARecord aRecord : aRecords) {
+      reconcile(context, infobloxClient, aRecords, aRecord -> {
         logger.info(context.logKey() + "deleting cloud dns entry " + aRecord.aRecord());
+        zoneChanged(infobloxClient, aRecord.aRecord());
+        if (writes != null) {
+          List<ARec> existing;
+          try {
+            existing = infoblox(context, infobloxClient, "GET", "record:a", () -> infobloxClient.getARec(aRecord.aRecord()));
+          } catch(Exception e) {
+            fail(context,"Exception while deleting cloud dns entry ", e);
+            return;
+          }
+          if (existing != null && !existing.isEmpty()) {
+            writes.add(() -> deleteCloudEntry(context, aRecord.aRecord(), infobloxClient),
+                existing.stream().map(a -> WapiRequestClient.Item.delete(a.ref())).toArray(WapiRequestClient.Item[]::new));
+          }
+          return;
+        }
+        deleteCloudEntry(context, aRecord.aRecord(), infobloxClient);
+      });
+    }
+  }
+
+  private void deleteCloudEntry(Context context, String aRecord, InfobloxClient infobloxClient) throws Exception {
+    try {
+      infoblox(context, infobloxClient, "DELETE", "record:a", () -> infobloxClient.deleteARec(aRecord));
+    } catch(Exception e) {
+      fail(context,"Exception while deleting cloud dns entry ", e);
+    }
+  }
+
+  private RecordWrites newRecordWrites() {
+    return writeBatchSize > 0 ? new RecordWrites() : null;
+  }
+
+  /*
+   * submits the collected writes in wapi requests of at most writeBatchSize items. A request is
+   * one transaction on the grid, when it fails nothing of it was applied and its writes are made
+   * again one call each, so conflicts and missing records are handled per record as without
+   * batching.
+   */
+  private void submit(Context context, InfobloxConfig infobloxConfig, InfobloxClient infobloxClient,
+      RecordWrites writes) throws Exception {
+    if (writes.isEmpty()) {
+      return;
+    }
+    WapiRequestClient requestClient = infobloxClientProvider.getWapiRequestClient(infobloxConfig.host(),
+        infobloxConfig.user(), infobloxConfig.pwd());
+    for (List<RecordWrites.Write> chunk : writes.chunks(writeBatchSize)) {
+      List<WapiRequestClient.Item> items = chunk.stream().flatMap(w -> w.items.stream()).collect(Collectors.toList());
+      try {
+        List<JsonElement> results = infoblox(context, infobloxClient, "POST", "request", () -> requestClient.submit(items));
+        logger.info(context.logKey() + "infoblox applied " + items.size() + " record changes in one request");
+        //results are in item order, each write gets the ones of its own items
+        int first = 0;
+        for (RecordWrites.Write write : chunk) {
+          int last = first + write.items.size();
+          if (write.applied != null && results.size() >= last) {
+            write.applied.accept(results.subList(first, last));
+          }
+          first = last;
+        }
+      } catch (IOException e) {
+        logger.warn(context.logKey() + "infoblox request with " + items.size()
+            + " record changes failed, applying them one by one : " + e.getMessage());
+        reconcile(context, infobloxClient, chunk, write -> write.fallback.apply());
+      }
+    }
+  }
+
+  /*
+   * snapshot of the gslb's zone when a zone snapshot cache is set, null otherwise or when the
+   * zone could not be loaded. The load goes through the retry policy and is counted in the phase.
+   */
+  private ZoneSnapshot zoneSnapshot(Context context, InfobloxConfig infobloxConfig, InfobloxClient infobloxClient) {
+    if (zoneSnapshotCache == null || infobloxConfig == null) {
+      return null;
+    }
+    String zone = infobloxConfig.zone();
+    return zoneSnapshotCache.get(String.valueOf(infobloxClient.endPoint()), zone, () -> {
+      WapiRequestClient requestClient = infobloxClientProvider.getWapiRequestClient(infobloxConfig.host(),
+          infobloxConfig.user(), infobloxConfig.pwd());
+      return infoblox(context, infobloxClient, "GET", "zone",
+          () -> ZoneSnapshot.load(requestClient, zone, zoneSnapshotCache.getPageSize()));
+    });
+  }
+
+  //the snapshot only answers when it has the expected record, anything else is confirmed with a point query
+  private static List<CNAME> cnamesFromSnapshot(ZoneSnapshot snapshot, String alias, String cname) {
+    List<CNAME> cnames = snapshot != null ? snapshot.cnames(alias) : null;
+    return cnames != null && cnames.size() == 1 && cname.equals(cnames.get(0).canonical()) ? cnames : null;
+  }
+
+  private static List<ARec> aRecsFromSnapshot(ZoneSnapshot snapshot, String name, String ipv4Addr) {
+    List<ARec> records = snapshot != null ? snapshot.aRecs(name) : null;
+    return records != null && records.size() == 1 && ipv4Addr.equals(records.get(0).ipv4Addr()) ? records : null;
+  }
+
+  //records written by this handler are looked up with point queries until the zone is reloaded
+  private void zoneChanged(InfobloxClient infobloxClient, String name) {
+    if (zoneSnapshotCache != null) {
+      zoneSnapshotCache.forget(String.valueOf(infobloxClient.endPoint()), name);
+    }
+  }
+
+  /*
+   * applies task to the records with at most maxConcurrencyPerGrid calls in flight against the
+   * infoblox grid, shared by all gslbs handled concurrently. Records not yet started are skipped
+   * after the first failure, which is rethrown once in-flight calls complete.
+   *
+   * the executor may be bounded and shared with the callers, so helpers never wait on it: they
+   * only take free permits and stop when there are none, and helpers that did not get a thread
+   * before the calling thread ran out of records are not waited for. Only the calling thread
+   * blocks on the permits, whose holders are all running a task.
+   */
+  private <T> void reconcile(Context context, InfobloxClient infobloxClient, List<T> records,
+      RecordTask<T> task) throws Exception {
+    if (records.isEmpty()) {
+      return;
+    }
+    Semaphore permits = gridPermits.computeIfAbsent(String.valueOf(infobloxClient.endPoint()),
+        k -> new Semaphore(maxConcurrencyPerGrid));
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    List<Helper> helpers = new ArrayList<>();
+    for (int w = 1; w < Math.min(maxConcurrencyPerGrid, records.size()); w++) {
+      Helper helper = new Helper();
+      helpers.add(helper);
+      executor().execute(() -> {
+        if (helper.started.compareAndSet(false, true)) {
+          try {
+            applyRecords(records, task, permits, false, next, failure);
+          } finally {
+            helper.done.complete(null);
+          }
+        }
+      });
+    }
+    applyRecords(records, task, permits, true, next, failure);
+    for (Helper helper : helpers) {
+      if (!helper.started.compareAndSet(false, true)) {
+        helper.done.join();
+      }
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  private <T> void applyRecords(List<T> records, RecordTask<T> task, Semaphore permits, boolean block,
+      AtomicInteger next, AtomicReference<Exception> failure) {
+    while (failure.get() == null) {
+      try {
+        if (block) {
+          permits.acquire();
+        }
+        else if (!permits.tryAcquire()) {
+          return;
+        }
         try {
-          infobloxClient.deleteARec(aRecord.aRecord());
-        } catch(Exception e) {
-          fail(context,"Exception while deleting cloud dns entry ", e);
+          int i = next.getAndIncrement();
+          if (i >= records.size()) {
+            return;
+          }
+          task.apply(records.get(i));
+        } finally {
+          permits.release();
+        }
+      } catch (Exception e) {
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
         }
+        failure.compareAndSet(null, e);
       }
     }
   }
 
+  private static class Helper {
+    final AtomicBoolean started = new AtomicBoolean();
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+  }
+
+  private Executor executor() {
+    return executor != null ? executor : Futures.defaultExecutor();
+  }
+
+  private <T> T infoblox(Context context, InfobloxClient client, String operation, String objectType,
+      InfobloxCall<T> call) throws IOException {
+    String endpoint = String.valueOf(client.endPoint());
+    String operationTag = operation + " " + objectType;
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      return retryPolicy.execute(operation, attempt -> callInfoblox(call, endpoint, operationTag, attempts), result -> false);
+    } finally {
+      context.recordCall(attempts.get());
+    }
+  }
+
+  private <T> T callInfoblox(InfobloxCall<T> call, String endpoint, String operationTag, AtomicInteger attempts)
+      throws IOException {
+    attempts.incrementAndGet();
+    long start = System.nanoTime();
+    String status = "OK";
+    try {
+      return call.call();
+    } catch (IOException e) {
+      status = errorType(e);
+      metrics.increment(Metrics.INFOBLOX_ERROR, "endpoint", endpoint, "operation", operationTag,
+          "type", status.toLowerCase());
+      throw e;
+    } finally {
+      metrics.recordTime(Metrics.REMOTE_CALL, System.nanoTime() - start, "system", "infoblox",
+          "endpoint", endpoint, "operation", operationTag, "status", status);
+    }
+  }
+
+  //infoblox errors carry the wapi error class in the message, e.g. "400 : Client.Ibap.Data.Conflict"
+  static String errorType(IOException e) {
+    if (!(e instanceof InfobloxException)) {
+      return "IO_ERROR";
+    }
+    String message = String.valueOf(e.getMessage());
+    if (message.contains("Data.Conflict") || message.contains("already exists")) {
+      return "CONFLICT";
+    }
+    if (message.contains("Data.NotFound") || message.startsWith("404") || message.contains("not found")) {
+      return "NOT_FOUND";
+    }
+    return "ERROR";
+  }
+
+  private interface RecordTask<T> {
+    void apply(T record) throws Exception;
+  }
+
+  private interface InfobloxCall<T> {
+    T call() throws IOException;
+  }
+
+  public int getMaxConcurrencyPerGrid() {
+    return maxConcurrencyPerGrid;
+  }
+
+  public void setMaxConcurrencyPerGrid(int maxConcurrencyPerGrid) {
+    if (maxConcurrencyPerGrid < 1) {
+      throw new IllegalArgumentException("maxConcurrencyPerGrid should be at least 1 : " + maxConcurrencyPerGrid);
+    }
+    this.maxConcurrencyPerGrid = maxConcurrencyPerGrid;
+    gridPermits.clear();
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public ZoneSnapshotCache getZoneSnapshotCache() {
+    return zoneSnapshotCache;
+  }
+
+  //answers lookups of records in the gslb's zone from periodic zone snapshots, off when null
+  public void setZoneSnapshotCache(ZoneSnapshotCache zoneSnapshotCache) {
+    this.zoneSnapshotCache = zoneSnapshotCache;
+  }
+
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  //record writes of a gslb are sent in wapi requests of up to this many items, one call each when 0
+  public void setWriteBatchSize(int writeBatchSize) {
+    this.writeBatchSize = writeBatchSize;
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   public InfobloxClientProvider getInfobloxClientProvider() {
     return infobloxClientProvider;
   }
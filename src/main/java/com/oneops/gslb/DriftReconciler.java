@@ -0,0 +1,419 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbProvisionResponse;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.apache.log4j.Logger;
+
+/*
+ * keeps registered gslbs in their desired state. Each gslb is checked every intervalMillis, spread
+ * by jitter so checks of gslbs registered together do not line up, with the same checks as
+ * GslbProvider.checkStatus: mtd targets with the MtdHandler and cnames with the DnsHandler. A
+ * drifted part is repaired on its own, the mtd host with MtdHandler.setupTorbitGslb and the records
+ * with DnsHandler.setupDnsEntries, both of which only write what is missing or different. Checks run
+ * on a bounded pool and each torbit endpoint and infoblox grid is called at most at its rate limit,
+ * so the number of registered gslbs only changes how long a pass over all of them takes.
+ */
+public class DriftReconciler {
+
+  private static final Logger logger = Logger.getLogger(DriftReconciler.class);
+
+  private final MtdHandler mtdHandler;
+  private final DnsHandler dnsHandler;
+  private final Metrics metrics;
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+  private long intervalMillis = TimeUnit.MINUTES.toMillis(5);
+  //fraction of the interval the next check is moved by, either way
+  private double jitter = 0.2;
+  private int maxConcurrency = 16;
+  private double torbitChecksPerSecond = 20;
+  private double infobloxChecksPerSecond = 20;
+  //drift is only reported when false
+  private boolean repair = true;
+
+  private ScheduledThreadPoolExecutor scheduler;
+  private ExecutorService workers;
+
+  public DriftReconciler(GslbProvider provider) {
+    this(provider.getMtdHandler(), provider.getDnsHandler(), provider.getMetrics());
+  }
+
+  public DriftReconciler(MtdHandler mtdHandler, DnsHandler dnsHandler, Metrics metrics) {
+    this.mtdHandler = mtdHandler;
+    this.dnsHandler = dnsHandler;
+    this.metrics = metrics != null ? metrics : Metrics.NOOP;
+  }
+
+  public enum Outcome {
+    IN_SYNC, DRIFTED, REPAIRED, REPAIR_FAILED, CHECK_FAILED, NOT_CHECKED
+  }
+
+  public static class Result {
+
+    private final Outcome mtd;
+    private final Outcome dns;
+    private final String failureMessage;
+    private final long checkedAt;
+
+    Result(Outcome mtd, Outcome dns, String failureMessage) {
+      this.mtd = mtd;
+      this.dns = dns;
+      this.failureMessage = failureMessage;
+      this.checkedAt = System.currentTimeMillis();
+    }
+
+    public Outcome getMtd() {
+      return mtd;
+    }
+
+    public Outcome getDns() {
+      return dns;
+    }
+
+    //the failed check or repair, null when both parts are in sync or repaired
+    public String getFailureMessage() {
+      return failureMessage;
+    }
+
+    public long getCheckedAt() {
+      return checkedAt;
+    }
+
+    @Override
+    public String toString() {
+      return "mtd : " + mtd + ", dns : " + dns + (failureMessage != null ? ", " + failureMessage : "");
+    }
+  }
+
+  private static class Entry {
+    final String id;
+    volatile Gslb gslb;
+    volatile Result lastResult;
+    volatile boolean removed;
+    //guarded by the reconciler, the scheduler whose chain of checks the entry is on
+    ScheduledExecutorService chain;
+    ScheduledFuture<?> next;
+
+    Entry(String id, Gslb gslb) {
+      this.id = id;
+      this.gslb = gslb;
+    }
+  }
+
+  /*
+   * adds the desired state of a gslb or replaces it, the replaced state is used from the next check
+   * on. A new gslb is first checked at a random point of the first interval.
+   */
+  public void register(String id, Gslb gslb) {
+    Entry entry = new Entry(id, gslb);
+    Entry existing = entries.putIfAbsent(id, entry);
+    if (existing != null) {
+      existing.gslb = gslb;
+      return;
+    }
+    schedule(entry, ThreadLocalRandom.current().nextLong(Math.max(1, intervalMillis)), null);
+  }
+
+  public void unregister(String id) {
+    Entry entry = entries.remove(id);
+    if (entry != null) {
+      entry.removed = true;
+      synchronized (this) {
+        if (entry.next != null) {
+          entry.next.cancel(false);
+        }
+      }
+    }
+  }
+
+  public boolean isRegistered(String id) {
+    return entries.containsKey(id);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  //result of the last check, null when the gslb was not checked yet
+  public Result lastResult(String id) {
+    Entry entry = entries.get(id);
+    return entry != null ? entry.lastResult : null;
+  }
+
+  public synchronized void start() {
+    if (scheduler != null) {
+      return;
+    }
+    scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("gslb-drift-scheduler"));
+    //unregistered gslbs do not stay queued until their next check
+    scheduler.setRemoveOnCancelPolicy(true);
+    workers = Executors.newFixedThreadPool(Math.max(1, maxConcurrency), daemonThreads("gslb-drift-worker"));
+    long interval = Math.max(1, intervalMillis);
+    entries.values().forEach(e -> schedule(e, ThreadLocalRandom.current().nextLong(interval), null));
+    logger.info("drift reconciler started for " + entries.size() + " gslbs, interval " + intervalMillis + "ms");
+  }
+
+  public synchronized void shutdown() {
+    if (scheduler == null) {
+      return;
+    }
+    scheduler.shutdownNow();
+    workers.shutdownNow();
+    scheduler = null;
+    workers = null;
+    logger.info("drift reconciler stopped");
+  }
+
+  //checks the gslb and repairs it on the calling thread, null when it is not registered
+  public Result reconcile(String id) {
+    Entry entry = entries.get(id);
+    return entry != null ? reconcile(entry) : null;
+  }
+
+  /*
+   * schedules the next check of the entry's chain, or starts its chain when chain is null. An entry
+   * has one chain per scheduler: register and start racing for a new entry start it once, and a check
+   * still running on a stopped scheduler does not continue its chain next to the one start began.
+   */
+  private synchronized void schedule(Entry entry, long delayMillis, ScheduledExecutorService chain) {
+    if (scheduler == null || entry.removed || (chain == null ? entry.chain == scheduler : chain != scheduler)) {
+      return;
+    }
+    ScheduledExecutorService current = scheduler;
+    ExecutorService pool = workers;
+    try {
+      entry.next = current.schedule(() -> pool.execute(() -> runScheduled(entry, current)), delayMillis,
+          TimeUnit.MILLISECONDS);
+      entry.chain = current;
+    } catch (RejectedExecutionException e) {
+      logger.debug("drift reconciler is stopping, " + entry.id + " not scheduled");
+    }
+  }
+
+  private void runScheduled(Entry entry, ScheduledExecutorService chain) {
+    try {
+      if (!entry.removed) {
+        reconcile(entry);
+      }
+    } catch (Exception e) {
+      logger.error(entry.gslb.logContextId() + "drift check failed", e);
+    } finally {
+      schedule(entry, nextDelay(), chain);
+    }
+  }
+
+  //checks waiting on the scheduler, one per registered gslb while started
+  synchronized int pendingChecks() {
+    return scheduler != null ? scheduler.getQueue().size() : 0;
+  }
+
+  private long nextDelay() {
+    double spread = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Math.max(1, (long) (intervalMillis * (1 + spread)));
+  }
+
+  private Result reconcile(Entry entry) {
+    Gslb gslb = entry.gslb;
+    String logKey = gslb.logContextId();
+    StringBuilder failures = new StringBuilder();
+
+    Outcome mtd = reconcileMtd(gslb, failures);
+    Outcome dns = Outcome.NOT_CHECKED;
+    if (areDnsEntriesNeeded(gslb)) {
+      dns = reconcileDns(gslb, failures);
+    }
+    Result result = new Result(mtd, dns, failures.length() > 0 ? failures.toString() : null);
+    entry.lastResult = result;
+    if (mtd != Outcome.IN_SYNC || (dns != Outcome.IN_SYNC && dns != Outcome.NOT_CHECKED)) {
+      logger.info(logKey + "drift check " + result);
+    }
+    return result;
+  }
+
+  private Outcome reconcileMtd(Gslb gslb, StringBuilder failures) {
+    RateLimiter limiter = rateLimiter("torbit|" + gslb.torbitConfig().url(), torbitChecksPerSecond);
+    Outcome outcome = reconcilePart(gslb, "mtd", limiter, failures,
+        context -> mtdHandler.checkStatus(gslb, context),
+        context -> mtdHandler.setupTorbitGslb(gslb, context));
+    return record("mtd", outcome);
+  }
+
+  private Outcome reconcileDns(Gslb gslb, StringBuilder failures) {
+    RateLimiter limiter = rateLimiter("infoblox|" + gslb.infobloxConfig().host(), infobloxChecksPerSecond);
+    Outcome outcome = reconcilePart(gslb, "dns", limiter, failures,
+        context -> dnsHandler.checkStatus(gslb, dnsContext(gslb, context)),
+        context -> dnsHandler.setupDnsEntries(gslb, dnsContext(gslb, context)));
+    return record("dns", outcome);
+  }
+
+  private Outcome reconcilePart(Gslb gslb, String part, RateLimiter limiter, StringBuilder failures,
+      Consumer<ProvisionContext> check, Consumer<ProvisionContext> repairer) {
+    ProvisionContext context = initializeProvisionContext(gslb.logContextId());
+    if (!acquire(limiter)) {
+      return Outcome.NOT_CHECKED;
+    }
+    check.accept(context);
+    String failure = context.getProvisioningResponse().getFailureMessage();
+    if (!isFailed(context)) {
+      return Outcome.IN_SYNC;
+    }
+    //only confirmed drift is repaired, a check that could not read torbit or infoblox is not
+    if (context.getProvisioningResponse().getCheckOutcome() != CheckOutcome.DRIFT) {
+      appendFailure(failures, part, failure);
+      return Outcome.CHECK_FAILED;
+    }
+    logger.info(gslb.logContextId() + part + " drifted : " + failure);
+    if (!repair) {
+      appendFailure(failures, part, failure);
+      return Outcome.DRIFTED;
+    }
+
+    ProvisionContext repairContext = initializeProvisionContext(gslb.logContextId());
+    if (!acquire(limiter)) {
+      appendFailure(failures, part, failure);
+      return Outcome.DRIFTED;
+    }
+    repairer.accept(repairContext);
+    if (isFailed(repairContext)) {
+      appendFailure(failures, part, repairContext.getProvisioningResponse().getFailureMessage());
+      return Outcome.REPAIR_FAILED;
+    }
+    return Outcome.REPAIRED;
+  }
+
+  private void appendFailure(StringBuilder failures, String part, String failure) {
+    if (failures.length() > 0) {
+      failures.append(" | ");
+    }
+    failures.append(part).append(" : ").append(failure);
+  }
+
+  private Outcome record(String part, Outcome outcome) {
+    if (outcome != Outcome.NOT_CHECKED) {
+      metrics.increment(Metrics.DRIFT, "part", part, "outcome", outcome.name().toLowerCase(Locale.ROOT));
+    }
+    return outcome;
+  }
+
+  //false when interrupted while waiting, the reconciler is then stopping
+  private boolean acquire(RateLimiter limiter) {
+    try {
+      limiter.acquire();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private RateLimiter rateLimiter(String backend, double permitsPerSecond) {
+    return rateLimiters.computeIfAbsent(backend, k -> new RateLimiter(permitsPerSecond));
+  }
+
+  //the dns handler expects app and mtd base name to be set by the mtd phase
+  private ProvisionContext dnsContext(Gslb gslb, ProvisionContext context) {
+    context.setApp(gslb.app().toLowerCase());
+    context.setMtdBaseName(MtdHandler.mtdBaseName(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain()));
+    return context;
+  }
+
+  private boolean areDnsEntriesNeeded(Gslb gslb) {
+    return gslb.infobloxConfig() != null && (isNotEmpty(gslb.cnames())
+        || isNotEmpty(gslb.cloudARecords())
+        || isNotEmpty(gslb.obsoleteCnames())
+        || isNotEmpty(gslb.obsoleteCloudARecords()));
+  }
+
+  private boolean isNotEmpty(List<?> list) {
+    return (list != null && !list.isEmpty());
+  }
+
+  private boolean isFailed(ProvisionContext context) {
+    return context.getResponse().getStatus() == Status.FAILED;
+  }
+
+  private ProvisionContext initializeProvisionContext(String logKey) {
+    ProvisionContext context = new ProvisionContext();
+    context.setProvisioningResponse(new GslbProvisionResponse());
+    context.logKey(logKey);
+    return context;
+  }
+
+  private ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public void setIntervalMillis(long intervalMillis) {
+    this.intervalMillis = intervalMillis;
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  public void setJitter(double jitter) {
+    this.jitter = jitter;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  //used by start, a running reconciler keeps its pool
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public double getTorbitChecksPerSecond() {
+    return torbitChecksPerSecond;
+  }
+
+  public void setTorbitChecksPerSecond(double torbitChecksPerSecond) {
+    this.torbitChecksPerSecond = torbitChecksPerSecond;
+    rateLimiters.keySet().removeIf(k -> k.startsWith("torbit|"));
+  }
+
+  public double getInfobloxChecksPerSecond() {
+    return infobloxChecksPerSecond;
+  }
+
+  public void setInfobloxChecksPerSecond(double infobloxChecksPerSecond) {
+    this.infobloxChecksPerSecond = infobloxChecksPerSecond;
+    rateLimiters.keySet().removeIf(k -> k.startsWith("infoblox|"));
+  }
+
+  public boolean isRepair() {
+    return repair;
+  }
+
+  public void setRepair(boolean repair) {
+    this.repair = repair;
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.oneops.gslb;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class Futures {
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "gslb-scheduler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static volatile Executor defaultExecutor;
+
+  private Futures() {
+  }
+
+  static Executor defaultExecutor() {
+    if (defaultExecutor == null) {
+      synchronized (Futures.class) {
+        if (defaultExecutor == null) {
+          AtomicInteger count = new AtomicInteger();
+          defaultExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "gslb-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+        }
+      }
+    }
+    return defaultExecutor;
+  }
+
+  static CompletableFuture<Void> delay(long delayMillis) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    scheduler.schedule(() -> future.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  static <T> CompletableFuture<T> failed(Throwable t) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(t);
+    return future;
+  }
+
+  static Exception unwrap(Throwable t) {
+    while (t instanceof CompletionException && t.getCause() != null) {
+      t = t.getCause();
+    }
+    if (t instanceof Exception) {
+      return (Exception) t;
+    }
+    return new ExecutionException(t.getMessage(), t);
+  }
+
+}
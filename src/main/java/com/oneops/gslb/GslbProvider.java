@@ -3,43 +3,330 @@ package com.oneops.gslb;
 import com.oneops.gslb.domain.Gslb;
 import com.oneops.gslb.domain.GslbProvisionResponse;
 import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.InfobloxConfig;
 import com.oneops.gslb.domain.ProvisionedGslb;
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.MtdBase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.log4j.Logger;
 
 public class GslbProvider {
 
+  private static final Logger logger = Logger.getLogger(GslbProvider.class);
+
+  private static final int DEFAULT_BATCH_PARALLELISM = 8;
+
   private MtdHandler mtdHandler = new MtdHandler();
 
   private DnsHandler dnsHandler = new DnsHandler();
 
+  private Executor executor;
+
+  private Metrics metrics = Metrics.NOOP;
+
+  public GslbProvider() {
+  }
+
+  public GslbProvider(Executor executor) {
+    this.executor = executor;
+  }
+
   public GslbProvisionResponse create(Gslb gslb) {
+    return create(gslb, context -> mtdHandler.setupTorbitGslb(gslb, context));
+  }
+
+  private GslbProvisionResponse create(Gslb gslb, Consumer<ProvisionContext> mtdSetup) {
     ProvisionContext context = initializeProvisionContext(gslb.logContextId());
-    mtdHandler.setupTorbitGslb(gslb, context);
+    Phase total = context.startPhase("total");
+    Phase mtd = context.startPhase("mtd");
+    mtdSetup.accept(context);
+    recordPhase("create", mtd, context);
     if (isNotFailed(context) && areDnsEntriesNeeded(gslb)) {
+      Phase dns = context.startPhase("dns");
       dnsHandler.setupDnsEntries(gslb, context);
+      recordPhase("create", dns, context);
     }
     updateResponseStatus(context.getProvisioningResponse());
-    return context.getProvisioningResponse();
+    return recordTotal("create", total, context, context.getProvisioningResponse());
   }
 
   public GslbResponse delete(ProvisionedGslb provisionedGslb) {
+    return delete(provisionedGslb, context -> mtdHandler.deleteGslb(provisionedGslb, context));
+  }
+
+  private GslbResponse delete(ProvisionedGslb provisionedGslb, Consumer<Context> mtdDelete) {
     Context context = initializeContext(provisionedGslb.logContextId());
-    mtdHandler.deleteGslb(provisionedGslb, context);
+    Phase total = context.startPhase("total");
+    Phase mtd = context.startPhase("mtd");
+    mtdDelete.accept(context);
+    recordPhase("delete", mtd, context);
     if (isNotFailed(context) && areDnsEntriesNeeded(provisionedGslb)) {
+      Phase dns = context.startPhase("dns");
       dnsHandler.removeDnsEntries(provisionedGslb, context);
+      recordPhase("delete", dns, context);
     }
     updateResponseStatus(context.getResponse());
-    return context.getResponse();
+    return recordTotal("delete", total, context, context.getResponse());
+  }
+
+  public List<GslbProvisionResponse> createAll(List<Gslb> gslbs) {
+    return createAll(gslbs, DEFAULT_BATCH_PARALLELISM);
+  }
+
+  /*
+   * gslbs sharing the same torbit endpoint, mtd base and infoblox grid are grouped so the
+   * mtd base and data centers are resolved once per group, hosts are then provisioned with
+   * at most parallelism calls in flight. Responses are returned in the order of gslbs.
+   */
+  public List<GslbProvisionResponse> createAll(List<Gslb> gslbs, int parallelism) {
+    List<List<Integer>> groups = groupByBatchKey(gslbs,
+        g -> batchKey(g.torbitConfig(), g.subdomain(), g.infobloxConfig()));
+    MtdBase[] mtdBases = new MtdBase[gslbs.size()];
+    GslbProvisionResponse[] responses = new GslbProvisionResponse[gslbs.size()];
+
+    runBounded(groups, parallelism, group -> {
+      List<Gslb> members = group.stream().map(gslbs::get).collect(Collectors.toList());
+      ProvisionContext context = initializeProvisionContext(members.get(0).logContextId());
+      MtdBase mtdBase = mtdHandler.setupMtdBase(members, context);
+      for (Integer i : group) {
+        if (mtdBase != null) {
+          mtdBases[i] = mtdBase;
+        }
+        else {
+          responses[i] = GslbProvisionResponse.failedResponse(context.getResponse().getFailureMessage());
+        }
+      }
+    }, (group, e) -> group.forEach(i -> responses[i] = GslbProvisionResponse.failedResponse(batchFailure(e))));
+
+    runBounded(pending(responses), parallelism,
+        i -> responses[i] = create(gslbs.get(i), context -> mtdHandler.setupTorbitGslb(gslbs.get(i), context, mtdBases[i])),
+        (i, e) -> responses[i] = GslbProvisionResponse.failedResponse(batchFailure(e)));
+    return Arrays.asList(responses);
+  }
+
+  public List<GslbResponse> deleteAll(List<ProvisionedGslb> provisionedGslbs) {
+    return deleteAll(provisionedGslbs, DEFAULT_BATCH_PARALLELISM);
+  }
+
+  public List<GslbResponse> deleteAll(List<ProvisionedGslb> provisionedGslbs, int parallelism) {
+    List<List<Integer>> groups = groupByBatchKey(provisionedGslbs,
+        g -> batchKey(g.torbitConfig(), g.subdomain(), g.infobloxConfig()));
+    MtdBase[] mtdBases = new MtdBase[provisionedGslbs.size()];
+    GslbResponse[] responses = new GslbResponse[provisionedGslbs.size()];
+
+    runBounded(groups, parallelism, group -> {
+      Context context = initializeContext(provisionedGslbs.get(group.get(0)).logContextId());
+      MtdBase mtdBase = mtdHandler.findMtdBase(provisionedGslbs.get(group.get(0)), context);
+      for (Integer i : group) {
+        if (isNotFailed(context)) {
+          mtdBases[i] = mtdBase;
+        }
+        else {
+          responses[i] = GslbResponse.failedResponse(context.getResponse().getFailureMessage());
+        }
+      }
+    }, (group, e) -> group.forEach(i -> responses[i] = GslbResponse.failedResponse(batchFailure(e))));
+
+    runBounded(pending(responses), parallelism,
+        i -> responses[i] = delete(provisionedGslbs.get(i),
+            context -> mtdHandler.deleteGslb(provisionedGslbs.get(i), context, mtdBases[i])),
+        (i, e) -> responses[i] = GslbResponse.failedResponse(batchFailure(e)));
+    return Arrays.asList(responses);
+  }
+
+  private String batchKey(TorbitConfig torbitConfig, String subdomain, InfobloxConfig infobloxConfig) {
+    String mtdBaseName = MtdHandler.mtdBaseName(subdomain, torbitConfig.gslbBaseDomain());
+    String grid = infobloxConfig != null ? infobloxConfig.host() + "|" + infobloxConfig.user() : "";
+    return torbitConfig.url() + "|" + torbitConfig.user() + "|" + mtdBaseName + "|" + grid;
+  }
+
+  private <T> List<List<Integer>> groupByBatchKey(List<T> items, Function<T, String> keyFn) {
+    Map<String, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < items.size(); i++) {
+      groups.computeIfAbsent(keyFn.apply(items.get(i)), k -> new ArrayList<>()).add(i);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  private List<Integer> pending(GslbResponse[] responses) {
+    List<Integer> pending = new ArrayList<>();
+    for (int i = 0; i < responses.length; i++) {
+      if (responses[i] == null) {
+        pending.add(i);
+      }
+    }
+    return pending;
+  }
+
+  private String batchFailure(Exception e) {
+    logger.error("gslb batch operation failed", e);
+    return "gslb operation failed : " + e.getMessage();
+  }
+
+  /*
+   * runs task for all items with at most parallelism of them in flight, the calling thread
+   * is one of the workers so the batch makes progress even on a saturated executor.
+   */
+  private <T> void runBounded(List<T> items, int parallelism, Consumer<T> task, BiConsumer<T, Exception> onError) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism should be at least 1 : " + parallelism);
+    }
+    AtomicInteger next = new AtomicInteger();
+    Runnable worker = () -> {
+      for (int i = next.getAndIncrement(); i < items.size(); i = next.getAndIncrement()) {
+        T item = items.get(i);
+        try {
+          task.accept(item);
+        } catch (Exception e) {
+          onError.accept(item, e);
+        }
+      }
+    };
+    int workers = Math.min(parallelism, items.size());
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int w = 1; w < workers; w++) {
+      futures.add(CompletableFuture.runAsync(worker, executor()));
+    }
+    worker.run();
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
   }
 
   public GslbProvisionResponse checkStatus(Gslb gslb) {
     ProvisionContext context = initializeProvisionContext(gslb.logContextId());
+    Phase total = context.startPhase("total");
+    Phase mtd = context.startPhase("mtd");
     mtdHandler.checkStatus(gslb, context);
+    recordPhase("checkStatus", mtd, context);
     if (isNotFailed(context) && areDnsEntriesNeeded(gslb)) {
+      Phase dns = context.startPhase("dns");
       dnsHandler.checkStatus(gslb, context);
+      recordPhase("checkStatus", dns, context);
     }
     updateResponseStatus(context.getProvisioningResponse());
-    return context.getProvisioningResponse();
+    return recordTotal("checkStatus", total, context, context.getProvisioningResponse());
+  }
+
+  public CompletableFuture<GslbProvisionResponse> createAsync(Gslb gslb) {
+    ProvisionContext context = initializeProvisionContext(gslb.logContextId());
+    Phase total = context.startPhase("total");
+    Phase mtd = context.startPhase("mtd");
+    return mtdHandler.setupTorbitGslbAsync(gslb, context)
+        .whenComplete((v, e) -> recordPhase("create", mtd, context, e))
+        .thenRunAsync(() -> {
+          if (isNotFailed(context) && areDnsEntriesNeeded(gslb)) {
+            Phase dns = context.startPhase("dns");
+            dnsHandler.setupDnsEntries(gslb, context);
+            recordPhase("create", dns, context);
+          }
+        }, executor())
+        .handle((v, e) -> recordTotal("create", total, context,
+            completeResponse(context, e, context.getProvisioningResponse())));
+  }
+
+  public CompletableFuture<GslbResponse> deleteAsync(ProvisionedGslb provisionedGslb) {
+    Context context = initializeContext(provisionedGslb.logContextId());
+    Phase total = context.startPhase("total");
+    Phase mtd = context.startPhase("mtd");
+    return mtdHandler.deleteGslbAsync(provisionedGslb, context)
+        .whenComplete((v, e) -> recordPhase("delete", mtd, context, e))
+        .thenRunAsync(() -> {
+          if (isNotFailed(context) && areDnsEntriesNeeded(provisionedGslb)) {
+            Phase dns = context.startPhase("dns");
+            dnsHandler.removeDnsEntries(provisionedGslb, context);
+            recordPhase("delete", dns, context);
+          }
+        }, executor())
+        .handle((v, e) -> recordTotal("delete", total, context, completeResponse(context, e, context.getResponse())));
+  }
+
+  /*
+   * mtd host and cname reads are independent, so both phases run at the same time on their own
+   * context and the failures of both are merged in the returned response.
+   */
+  public CompletableFuture<GslbProvisionResponse> checkStatusAsync(Gslb gslb) {
+    ProvisionContext context = initializeProvisionContext(gslb.logContextId());
+    Phase total = context.startPhase("total");
+    Phase mtd = context.startPhase("mtd");
+    CompletableFuture<Void> mtdStatus = mtdHandler.checkStatusAsync(gslb, context)
+        .whenComplete((v, e) -> recordPhase("checkStatus", mtd, context, e));
+    if (!areDnsEntriesNeeded(gslb)) {
+      return mtdStatus.handle((v, e) -> recordTotal("checkStatus", total, context,
+          completeResponse(context, e, context.getProvisioningResponse())));
+    }
+    ProvisionContext dnsContext = initializeProvisionContext(gslb.logContextId());
+    dnsContext.setApp(gslb.app().toLowerCase());
+    dnsContext.setMtdBaseName(MtdHandler.mtdBaseName(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain()));
+    CompletableFuture<Void> dnsStatus = CompletableFuture.runAsync(() -> {
+      Phase dns = dnsContext.startPhase("dns");
+      dnsHandler.checkStatus(gslb, dnsContext);
+      recordPhase("checkStatus", dns, dnsContext);
+    }, executor());
+    return CompletableFuture.allOf(mtdStatus, dnsStatus)
+        .handle((v, e) -> {
+          context.merge(dnsContext);
+          if (e == null) {
+            mergeFailure(context, dnsContext);
+          }
+          return recordTotal("checkStatus", total, context,
+              completeResponse(context, e, context.getProvisioningResponse()));
+        });
+  }
+
+  private void recordPhase(String operation, Phase phase, Context context) {
+    recordPhase(operation, phase, context, null);
+  }
+
+  //ends the phase and records its duration, failed if the context or future failed
+  private void recordPhase(String operation, Phase phase, Context context, Throwable e) {
+    metrics.recordTime(Metrics.PHASE, phase.end(), "operation", operation, "phase", phase.name(),
+        "outcome", e == null && isNotFailed(context) ? "success" : "failed");
+  }
+
+  private <T extends GslbResponse> T recordTotal(String operation, Phase total, Context context, T response) {
+    recordPhase(operation, total, context);
+    response.setPhaseTimings(context.getPhaseTimings());
+    return response;
+  }
+
+  private void mergeFailure(ProvisionContext context, ProvisionContext other) {
+    CheckOutcome outcome = CheckOutcome.worst(context.getProvisioningResponse().getCheckOutcome(),
+        other.getProvisioningResponse().getCheckOutcome());
+    if (isNotFailed(other)) {
+      context.getProvisioningResponse().setCheckOutcome(outcome);
+      return;
+    }
+    String message = other.getResponse().getFailureMessage();
+    if (!isNotFailed(context)) {
+      message = context.getResponse().getFailureMessage() + " | " + message;
+    }
+    context.failedResponseWithMessage(message);
+    context.getProvisioningResponse().setCheckOutcome(outcome);
+  }
+
+  private <T extends GslbResponse> T completeResponse(Context context, Throwable e, T response) {
+    if (e != null) {
+      Exception cause = Futures.unwrap(e);
+      logger.error(context.logKey() + "gslb operation failed", cause);
+      context.failedResponseWithMessage("gslb operation failed : " + cause.getMessage());
+      return (T) context.getResponse();
+    }
+    updateResponseStatus(response);
+    return response;
+  }
+
+  private Executor executor() {
+    return executor != null ? executor : Futures.defaultExecutor();
   }
 
   private boolean isNotFailed(Context context) {
@@ -82,4 +369,39 @@ public class GslbProvider {
     }
   }
 
+  public MtdHandler getMtdHandler() {
+    return mtdHandler;
+  }
+
+  public void setMtdHandler(MtdHandler mtdHandler) {
+    this.mtdHandler = mtdHandler;
+  }
+
+  public DnsHandler getDnsHandler() {
+    return dnsHandler;
+  }
+
+  public void setDnsHandler(DnsHandler dnsHandler) {
+    this.dnsHandler = dnsHandler;
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  //phase timings are recorded here, remote call metrics by the dns handler and the mtd handler's torbit clients
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+    dnsHandler.setMetrics(metrics);
+    mtdHandler.setMetrics(metrics);
+  }
+
 }
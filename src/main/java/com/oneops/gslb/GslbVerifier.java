@@ -9,6 +9,7 @@ import com.oneops.gslb.domain.InfobloxConfig;
 import com.oneops.gslb.domain.Lb;
 import com.oneops.gslb.domain.ProvisionedGslb;
 import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.domain.WriteReceipt;
 import com.oneops.gslb.mtd.v2.domain.MtdBase;
 import com.oneops.gslb.mtd.v2.domain.MtdBaseResponse;
 import com.oneops.gslb.mtd.v2.domain.MtdHost;
@@ -18,8 +19,13 @@ import com.oneops.gslb.mtd.v2.domain.MtdTarget;
 import com.oneops.infoblox.InfobloxClient;
 import com.oneops.infoblox.model.a.ARec;
 import com.oneops.infoblox.model.cname.CNAME;
+import java.io.IOException;
 import java.util.List;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
@@ -29,12 +35,48 @@ public class GslbVerifier {
 
   private static final Logger logger = Logger.getLogger(GslbVerifier.class);
 
+  private static final int DEFAULT_MAX_CONCURRENT_CHECKS = 8;
+
+  private TorbitClientProvider torbitClientProvider = TorbitClientProvider.shared();
+
+  private InfobloxClientProvider infobloxClientProvider = InfobloxClientProvider.shared();
+
+  private ZoneSnapshotCache zoneSnapshotCache;
+
+  //verifyCreate checks the write receipt of the response instead of reading the mtd host and records back
+  private boolean receiptVerification;
+
+  //with receipt verification every deepVerifyInterval-th create is read back anyway, never when 0
+  private int deepVerifyInterval;
+
+  private final AtomicLong receiptVerifications = new AtomicLong();
+
+  //checks not passed yet are polled until this deadline, checked once when 0
+  private long pollDeadlineMillis;
+
+  private RetryPolicy pollBackoff = RetryPolicy.builder()
+      .initialBackoffMillis(500)
+      .maxBackoffMillis(TimeUnit.SECONDS.toMillis(10))
+      .build();
+
+  private int maxConcurrentChecks = DEFAULT_MAX_CONCURRENT_CHECKS;
+
+  private Executor executor;
+
   public GslbProvisionResponse verifyCreate(Gslb gslb, GslbProvisionResponse response) {
     String logKey = gslb.logContextId();
     try {
       VerifyContext context = getContext(gslb.torbitConfig(), gslb.app(), gslb.subdomain());
-      verifyMtdHost(gslb, response, context, true);
-      verifyCnamesWithResultEntries(gslb, response, context);
+      WriteReceipt receipt = writeReceipt(gslb, response);
+      Convergence checks = new Convergence(logKey);
+      if (receipt != null && receipt.getMtdHost() != null) {
+        verifyMtdHostFromReceipt(gslb, response, receipt, context);
+      }
+      else {
+        verifyMtdHost(gslb, response, context, true, checks);
+      }
+      verifyCnamesWithResultEntries(gslb, response, context, receipt, checks);
+      await(checks);
     } catch (Exception e) {
       String msg = failureMessage(logKey,"wo failed during verify", e);
       return GslbProvisionResponse.failedResponse(msg);
@@ -48,8 +90,10 @@ public class GslbVerifier {
       VerifyContext context = getContext(provisionedGslb.torbitConfig(), provisionedGslb.app(),
           provisionedGslb.subdomain());
       logger.info(provisionedGslb.logContextId() + "platform is disabled, verify mtd delete and cname deletes");
-      verifyMtdDelete(provisionedGslb, context);
-      verifyInfobloxDelete(provisionedGslb, context);
+      Convergence checks = new Convergence(logKey);
+      checks.check("mtd host delete", round -> verifyMtdDelete(provisionedGslb, context));
+      verifyInfobloxDelete(provisionedGslb, context, checks);
+      await(checks);
     } catch (Exception e) {
       String msg = failureMessage(logKey, "wo failed during verify", e);
       return GslbResponse.failedResponse(msg);
@@ -57,23 +101,59 @@ public class GslbVerifier {
     return response;
   }
 
+  /*
+   * runs the checks reading torbit and infoblox, concurrently for independent cnames, records and
+   * mtd targets. With a poll deadline the failed ones are checked again until they converge.
+   */
+  private void await(Convergence checks) throws Exception {
+    checks.await(pollDeadlineMillis, pollBackoff, executor != null ? executor : Futures.defaultExecutor(),
+        maxConcurrentChecks);
+  }
+
   private String failureMessage(String logKey, String message, Exception e) {
     String failMsg = (e != null) ? message + " : " + e.getMessage() : message;
     logger.error(logKey + failMsg, e);
     return failMsg;
   }
 
-  private void verifyCnamesWithResultEntries(Gslb gslb, GslbProvisionResponse response, VerifyContext context) throws Exception {
+  /*
+   * the receipt to verify against, null when the create is read back: receipt verification is off,
+   * the create was sampled for a deep verify or its response has no receipt. Parts missing from a
+   * receipt, e.g. a cname whose create reported that it already existed, are read back as well.
+   */
+  private WriteReceipt writeReceipt(Gslb gslb, GslbProvisionResponse response) {
+    if (!receiptVerification) {
+      return null;
+    }
+    if (deepVerifyInterval > 0 && receiptVerifications.incrementAndGet() % deepVerifyInterval == 0) {
+      logger.info(gslb.logContextId() + "create sampled for deep verify");
+      return null;
+    }
+    return response.getWriteReceipt();
+  }
+
+  private void verifyCnamesWithResultEntries(Gslb gslb, GslbProvisionResponse response, VerifyContext context,
+      WriteReceipt receipt, Convergence checks) throws Exception {
     InfobloxClient infobloxClient = getInfoBloxClient(gslb.infobloxConfig());
     String cname = (context.app + context.mtdBaseHost).toLowerCase();
     Map<String, String> dnsEntries = response.getDnsEntries();
     verify(() -> dnsEntries != null && !dnsEntries.isEmpty(), "response has dns entries");
     logger.info(gslb.logContextId() + "response entries map " + response.getDnsEntries());
+    //with a receipt only the few records missing from it are read, a zone load would cost more
+    ZoneSnapshot snapshot = receipt == null ? zoneSnapshot(gslb.infobloxConfig(), infobloxClient) : null;
     for (String al : gslb.cnames()) {
       String alias = al.toLowerCase();
-      List<CNAME> cnames = infobloxClient.getCNameRec(alias);
-      verify(() ->cnames != null && cnames.size() == 1 && cnames.get(0).canonical().equals(cname),
-          "cname verify failed " + alias);
+      String acknowledged = receipt != null ? receipt.getCname(alias) : null;
+      if (acknowledged != null) {
+        verify(() -> acknowledged.equals(cname), "cname verify failed " + alias);
+      }
+      else {
+        checks.check("cname " + alias, round -> {
+          List<CNAME> cnames = getCNameRec(snapshot, infobloxClient, alias, cname);
+          verify(() -> cnames != null && cnames.size() == 1 && cnames.get(0).canonical().equals(cname),
+              "cname verify failed " + alias);
+        });
+      }
       verify(() -> cname.equals(dnsEntries.get(alias)), "result ci entries attribute has entry for alias " + alias);
     }
     verify(() -> dnsEntries.get(cname) != null, "result ci entries attribute value for " + cname + " is present ");
@@ -81,13 +161,22 @@ public class GslbVerifier {
     if (gslb.cloudARecords() != null && !gslb.cloudARecords().isEmpty()) {
       Map<String, Lb> cloudLbMap = gslb.lbs().stream().collect(Collectors.toMap(l -> l.cloud(), l->l));
       for (CloudARecord aRecord : gslb.cloudARecords()) {
-        List<ARec> records = infobloxClient.getARec(aRecord.aRecord());
-        if (cloudLbMap.containsKey(aRecord.cloud())) {
-          String lbVip = cloudLbMap.get(aRecord.cloud()).vip();
-          logger.info(gslb.logContextId() + "cloud entry records " + records.size());
+        Lb lb = cloudLbMap.get(aRecord.cloud());
+        String acknowledged = receipt != null ? receipt.getARecord(aRecord.aRecord()) : null;
+        if (lb != null) {
+          String lbVip = lb.vip();
           if (StringUtils.isNotBlank(lbVip)) {
-            verify(() -> records != null && records.size() == 1 && records.get(0).ipv4Addr().equals(lbVip),
-                "cloud cname verify failed " + aRecord.aRecord());
+            if (acknowledged != null) {
+              verify(() -> acknowledged.equals(lbVip), "cloud cname verify failed " + aRecord.aRecord());
+            }
+            else {
+              checks.check("cloud entry " + aRecord.aRecord(), round -> {
+                List<ARec> records = getARec(snapshot, infobloxClient, aRecord.aRecord(), lbVip);
+                logger.info(gslb.logContextId() + "cloud entry records " + (records != null ? records.size() : 0));
+                verify(() -> records != null && records.size() == 1 && records.get(0).ipv4Addr().equals(lbVip),
+                    "cloud cname verify failed " + aRecord.aRecord());
+              });
+            }
             verify(() -> lbVip.equals(dnsEntries.get(aRecord.cloud())),
                 "result ci entries attribute has entry for cloud cname " + aRecord.cloud());
           }
@@ -99,40 +188,71 @@ public class GslbVerifier {
   private void verifyCnames(Gslb gslb, VerifyContext context) throws Exception {
     InfobloxClient infobloxClient = getInfoBloxClient(gslb.infobloxConfig());
     String cname = (context.app + context.mtdBaseHost).toLowerCase();
+    ZoneSnapshot snapshot = zoneSnapshot(gslb.infobloxConfig(), infobloxClient);
     for (String alias : gslb.cnames()) {
       alias = alias.toLowerCase();
-      List<CNAME> cnames = infobloxClient.getCNameRec(alias);
+      List<CNAME> cnames = getCNameRec(snapshot, infobloxClient, alias, cname);
       verify(() ->cnames != null && cnames.size() == 1 && cnames.get(0).canonical().equals(cname),
           "cname verify failed " + alias);
     }
   }
 
-  private void verifyInfobloxDelete(ProvisionedGslb provisionedGslb, VerifyContext context) throws Exception {
+  private void verifyInfobloxDelete(ProvisionedGslb provisionedGslb, VerifyContext context, Convergence checks)
+      throws Exception {
     InfobloxClient infobloxClient = getInfoBloxClient(provisionedGslb.infobloxConfig());
-    for (String alias : provisionedGslb.cnames()) {
-      alias = alias.toLowerCase();
-      List<CNAME> cnames = infobloxClient.getCNameRec(alias);
-      verify(() ->cnames == null || cnames.isEmpty(), "cname delete verify failed " + alias);
-    };
-    verifyCloudCnameDelete(provisionedGslb, context, infobloxClient);
+    for (String al : provisionedGslb.cnames()) {
+      String alias = al.toLowerCase();
+      checks.check("cname delete " + alias, round -> {
+        List<CNAME> cnames = infobloxClient.getCNameRec(alias);
+        verify(() ->cnames == null || cnames.isEmpty(), "cname delete verify failed " + alias);
+      });
+    }
+    verifyCloudCnameDelete(provisionedGslb, context, infobloxClient, checks);
   }
 
   private void verifyCloudCnameDelete(ProvisionedGslb provisionedGslb, VerifyContext context,
-      InfobloxClient infobloxClient) throws Exception {
+      InfobloxClient infobloxClient, Convergence checks) throws Exception {
     if (provisionedGslb.cloudARecords() != null) {
       for (CloudARecord cloudARecord : provisionedGslb.cloudARecords()) {
-        List<CNAME> cnames = infobloxClient.getCNameRec(cloudARecord.aRecord());
-        verify(() -> cnames == null || cnames.isEmpty(), "cloud cname delete verify failed " + cloudARecord.aRecord());
+        checks.check("cloud entry delete " + cloudARecord.aRecord(), round -> {
+          List<CNAME> cnames = infobloxClient.getCNameRec(cloudARecord.aRecord());
+          verify(() -> cnames == null || cnames.isEmpty(), "cloud cname delete verify failed " + cloudARecord.aRecord());
+        });
       }
     }
   }
 
+  /*
+   * create verification takes the expected records from the zone snapshot when a cache is set,
+   * anything else is read with point queries. Delete verification always uses point queries, a
+   * record missing from a snapshot may have been created since.
+   */
+  private ZoneSnapshot zoneSnapshot(InfobloxConfig infobloxConfig, InfobloxClient infobloxClient) {
+    if (zoneSnapshotCache == null) {
+      return null;
+    }
+    return zoneSnapshotCache.get(String.valueOf(infobloxClient.endPoint()), infobloxConfig.zone(),
+        () -> ZoneSnapshot.load(infobloxClientProvider.getWapiRequestClient(infobloxConfig.host(),
+            infobloxConfig.user(), infobloxConfig.pwd()), infobloxConfig.zone(), zoneSnapshotCache.getPageSize()));
+  }
+
+  private List<CNAME> getCNameRec(ZoneSnapshot snapshot, InfobloxClient infobloxClient, String alias, String cname)
+      throws IOException {
+    List<CNAME> cnames = snapshot != null ? snapshot.cnames(alias) : null;
+    return cnames != null && cnames.size() == 1 && cname.equals(cnames.get(0).canonical()) ?
+        cnames : infobloxClient.getCNameRec(alias);
+  }
+
+  private List<ARec> getARec(ZoneSnapshot snapshot, InfobloxClient infobloxClient, String name, String ipv4Addr)
+      throws IOException {
+    List<ARec> records = snapshot != null ? snapshot.aRecs(name) : null;
+    return records != null && records.size() == 1 && records.get(0).ipv4Addr().equals(ipv4Addr) ?
+        records : infobloxClient.getARec(name);
+  }
+
   private InfobloxClient getInfoBloxClient(InfobloxConfig infobloxConfig) {
-    return InfobloxClient.builder().endPoint(infobloxConfig.host()).
-        userName(infobloxConfig.user()).
-        password(infobloxConfig.pwd()).
-        tlsVerify(false).
-        build();
+    return infobloxClientProvider.getInfobloxClient(infobloxConfig.host(), infobloxConfig.user(),
+        infobloxConfig.pwd());
   }
 
   private void verifyMtdDelete(ProvisionedGslb provisionedGslb, VerifyContext context) throws Exception {
@@ -149,12 +269,26 @@ public class GslbVerifier {
     }
   }
 
+  //the targets and health checks are checked separately, each poll round reads the host once for all of them
   private void verifyMtdHost(Gslb gslb, GslbProvisionResponse response, VerifyContext context,
-      boolean verifyResultEntries) throws Exception {
+      boolean verifyResultEntries, Convergence checks) throws Exception {
+    logger.info(gslb.logContextId() + "verifying for platform " + context.app);
+    MtdHostRead read = new MtdHostRead(gslb, context);
+    checks.check("mtd host", read::get);
+    for (Lb lb : gslb.lbs()) {
+      checks.check("mtd target " + lb.vip(), round -> verifyMtdTarget(read.get(round), lb));
+    }
+    checks.check("mtd health checks", round -> verifyHealthChecks(gslb, read.get(round)));
+    context.primaryTargets = gslb.lbs().stream().filter(lb -> lb.enabledForTraffic()).map(lb -> lb.vip()).collect(Collectors.toList());
+    if (verifyResultEntries) {
+      verifyResultEntries(response);
+    }
+  }
+
+  private MtdHost readMtdHost(Gslb gslb, VerifyContext context) throws Exception {
     TorbitClient client = context.torbitClient;
     TorbitApi torbit = context.torbit;
 
-    logger.info(gslb.logContextId() + "verifying for platform " + context.app);
     Resp<MtdBaseResponse> resp = client.execute(torbit.getMTDBase(context.mtdBaseHost), MtdBaseResponse.class);
     logger.info(gslb.logContextId() + "verifying mtd base ");
     verify(() -> resp.isSuccessful(), "mtd base exists");
@@ -164,26 +298,42 @@ public class GslbVerifier {
     Resp<MtdHostResponse> hostResp = client.execute(torbit.getMTDHost(mtdBase.mtdBaseId(), context.app), MtdHostResponse.class);
     logger.info(gslb.logContextId() + "verifying mtd host version exists");
     verify(() -> hostResp.isSuccessful(), "mtd host version exists");
+    return hostResp.getBody().mtdHost();
+  }
+
+  //the host of the receipt was read from torbit during the create, so only the mtd base is checked
+  private void verifyMtdHostFromReceipt(Gslb gslb, GslbProvisionResponse response, WriteReceipt receipt,
+      VerifyContext context) throws Exception {
+    logger.info(gslb.logContextId() + "verifying mtd host from write receipt for platform " + context.app);
+    String glb = context.app + context.mtdBaseHost;
+    verify(() -> glb.equalsIgnoreCase(response.getGlb()), "mtd base name match", glb, response.getGlb());
+    verifyMtdHostConfig(gslb, receipt.getMtdHost(), context);
+    verifyResultEntries(response);
+  }
 
-    MtdHost host = hostResp.getBody().mtdHost();
+  private void verifyMtdHostConfig(Gslb gslb, MtdHost host, VerifyContext context) throws Exception {
     logger.info(gslb.logContextId() + "verifying mtd host targets");
-    List<MtdTarget> targets = host.mtdTargets();
-    logger.info(gslb.logContextId() + "configured mtd targets " + targets.stream().
-        map(MtdTarget::mtdTargetHost).
-        collect(Collectors.joining(",")));
-    Map<String, MtdTarget> map = targets.stream().collect(Collectors.toMap(MtdTarget::mtdTargetHost, Function
-        .identity()));
     List<Lb> lbList = gslb.lbs();
     logger.info(gslb.logContextId() + "expected targets " +
         lbList.stream().map(l -> l.vip()).collect(Collectors.joining(",")));
     for (Lb lb : lbList) {
-      verify(() -> map.containsKey(lb.vip()), "lb vip present in MTD target");
-      MtdTarget target = map.get(lb.vip());
-      verify(() -> lb.enabledForTraffic() ? target.enabled() : !target.enabled(),
-          "mtd target enabled/disabled based on cloud status");
+      verifyMtdTarget(host, lb);
     }
     context.primaryTargets = lbList.stream().filter(lb -> lb.enabledForTraffic()).map(lb -> lb.vip()).collect(Collectors.toList());
+    verifyHealthChecks(gslb, host);
+  }
+
+  private void verifyMtdTarget(MtdHost host, Lb lb) throws Exception {
+    List<MtdTarget> targets = host.mtdTargets() != null ? host.mtdTargets() : Collections.emptyList();
+    Map<String, MtdTarget> map = targets.stream().collect(Collectors.toMap(MtdTarget::mtdTargetHost, Function
+        .identity()));
+    verify(() -> map.containsKey(lb.vip()), "lb vip present in MTD target");
+    MtdTarget target = map.get(lb.vip());
+    verify(() -> lb.enabledForTraffic() ? target.enabled() : !target.enabled(),
+        "mtd target enabled/disabled based on cloud status");
+  }
 
+  private void verifyHealthChecks(Gslb gslb, MtdHost host) throws Exception {
     logger.info(gslb.logContextId() + "verifying mtd health checks");
     List<MtdHostHealthCheck> healthChecks = host.mtdHealthChecks();
 
@@ -204,11 +354,14 @@ public class GslbVerifier {
         }
       }
     }
-    if (verifyResultEntries)
-      verify(() -> StringUtils.isNotBlank(response.getMtdBaseId()) &&
-              StringUtils.isNotBlank(response.getGlb()) &&
-              StringUtils.isNotBlank(response.getMtdDeploymentId()),
-          "result ci contains gslb_map attribute");
+  }
+
+  //an unchanged mtd host has no new deployment to report
+  private void verifyResultEntries(GslbProvisionResponse response) throws Exception {
+    verify(() -> StringUtils.isNotBlank(response.getMtdBaseId()) &&
+            StringUtils.isNotBlank(response.getGlb()) &&
+            (response.isMtdHostUnchanged() || StringUtils.isNotBlank(response.getMtdDeploymentId())),
+        "result ci contains gslb_map attribute");
   }
 
   private void verify(Condition condition, String message) throws Exception {
@@ -225,13 +378,116 @@ public class GslbVerifier {
 
   private VerifyContext getContext(TorbitConfig torbitConfig, String app, String subdomain) throws Exception {
     VerifyContext context = new VerifyContext();
-    context.torbitClient = new TorbitClient(torbitConfig);
+    context.torbitClient = torbitClientProvider.getTorbitClient(torbitConfig);
     context.torbit = context.torbitClient.getTorbit();
     context.mtdBaseHost = ("." + subdomain + "." + torbitConfig.gslbBaseDomain()).toLowerCase();
     context.app = app.toLowerCase();
     return context;
   }
 
+  public TorbitClientProvider getTorbitClientProvider() {
+    return torbitClientProvider;
+  }
+
+  public void setTorbitClientProvider(TorbitClientProvider torbitClientProvider) {
+    this.torbitClientProvider = torbitClientProvider;
+  }
+
+  public ZoneSnapshotCache getZoneSnapshotCache() {
+    return zoneSnapshotCache;
+  }
+
+  public void setZoneSnapshotCache(ZoneSnapshotCache zoneSnapshotCache) {
+    this.zoneSnapshotCache = zoneSnapshotCache;
+  }
+
+  public boolean isReceiptVerification() {
+    return receiptVerification;
+  }
+
+  public void setReceiptVerification(boolean receiptVerification) {
+    this.receiptVerification = receiptVerification;
+  }
+
+  public int getDeepVerifyInterval() {
+    return deepVerifyInterval;
+  }
+
+  public void setDeepVerifyInterval(int deepVerifyInterval) {
+    this.deepVerifyInterval = deepVerifyInterval;
+  }
+
+  public long getPollDeadlineMillis() {
+    return pollDeadlineMillis;
+  }
+
+  public void setPollDeadlineMillis(long pollDeadlineMillis) {
+    this.pollDeadlineMillis = pollDeadlineMillis;
+  }
+
+  public RetryPolicy getPollBackoff() {
+    return pollBackoff;
+  }
+
+  public void setPollBackoff(RetryPolicy pollBackoff) {
+    this.pollBackoff = pollBackoff;
+  }
+
+  public int getMaxConcurrentChecks() {
+    return maxConcurrentChecks;
+  }
+
+  public void setMaxConcurrentChecks(int maxConcurrentChecks) {
+    this.maxConcurrentChecks = maxConcurrentChecks;
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  public InfobloxClientProvider getInfobloxClientProvider() {
+    return infobloxClientProvider;
+  }
+
+  public void setInfobloxClientProvider(InfobloxClientProvider infobloxClientProvider) {
+    this.infobloxClientProvider = infobloxClientProvider;
+  }
+
+  //one read of the mtd base and host per poll round, shared by the checks of its targets and health checks
+  private class MtdHostRead {
+    private final Gslb gslb;
+    private final VerifyContext context;
+    private int round;
+    private MtdHost host;
+    private Exception failure;
+
+    MtdHostRead(Gslb gslb, VerifyContext context) {
+      this.gslb = gslb;
+      this.context = context;
+    }
+
+    synchronized MtdHost get(int round) throws Exception {
+      if (this.round != round) {
+        this.round = round;
+        try {
+          host = readMtdHost(gslb, context);
+          failure = null;
+        } catch (Exception e) {
+          host = null;
+          failure = e;
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return host;
+    }
+  }
+
   class VerifyContext {
     TorbitClient torbitClient;
     TorbitApi torbit;
@@ -1,10 +1,58 @@
 package com.oneops.gslb;
 
 import com.oneops.infoblox.InfobloxClient;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import okhttp3.OkHttpClient;
 
 public class InfobloxClientProvider {
 
+  private static final int DEFAULT_MAX_CLIENTS = 32;
+  private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final InfobloxClientProvider sharedProvider = new InfobloxClientProvider();
+
+  private final ClientCache<ClientKey, InfobloxClient> clients;
+  private final ClientCache<ClientKey, WapiRequestClient> requestClients;
+  //http clients of the WapiRequestClients, sharing one connection pool, by tls verification
+  private OkHttpClient verifyingHttpClient;
+  private OkHttpClient trustingHttpClient;
+
+  public InfobloxClientProvider() {
+    this(DEFAULT_MAX_CLIENTS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+  }
+
+  public InfobloxClientProvider(int maxClients, long idleTimeoutMillis) {
+    this.clients = new ClientCache<>(maxClients, idleTimeoutMillis);
+    this.requestClients = new ClientCache<>(maxClients, idleTimeoutMillis);
+  }
+
+  public static InfobloxClientProvider shared() {
+    return sharedProvider;
+  }
+
   public InfobloxClient getInfobloxClient(String host, String user, String pwd) {
+    //a password change for the same host and user replaces the cached client
+    return clients.get(new ClientKey(host, user), k -> newInfobloxClient(host, user, pwd),
+        c -> Objects.equals(pwd, c.password()));
+  }
+
+  public WapiRequestClient getWapiRequestClient(String host, String user, String pwd) throws Exception {
+    return requestClients.get(new ClientKey(host, user),
+        k -> newWapiRequestClient(getInfobloxClient(host, user, pwd)), c -> Objects.equals(pwd, c.password()));
+  }
+
+  public void invalidate(String host, String user) {
+    clients.invalidate(new ClientKey(host, user));
+    requestClients.invalidate(new ClientKey(host, user));
+  }
+
+  InfobloxClient newInfobloxClient(String host, String user, String pwd) {
     return InfobloxClient.builder().
         endPoint(host).
         userName(user).
@@ -12,4 +60,82 @@ public class InfobloxClientProvider {
         tlsVerify(false).build();
   }
 
+  WapiRequestClient newWapiRequestClient(InfobloxClient client) throws Exception {
+    return new WapiRequestClient(client, wapiHttpClient(client));
+  }
+
+  /*
+   * infoblox calls get their own http client rather than one of torbit's, tls is verified the same
+   * way as by the InfobloxClient. Retries are left to the RetryPolicy of the DnsHandler.
+   */
+  synchronized OkHttpClient wapiHttpClient(InfobloxClient client) throws Exception {
+    if (verifyingHttpClient == null) {
+      verifyingHttpClient = new OkHttpClient.Builder()
+          .followSslRedirects(false)
+          .retryOnConnectionFailure(false)
+          .build();
+    }
+    if (client.tlsVerify()) {
+      return verifyingHttpClient;
+    }
+    if (trustingHttpClient == null) {
+      X509TrustManager trustManager = trustAllManager();
+      SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+      sslContext.init(null, new TrustManager[]{trustManager}, new SecureRandom());
+      trustingHttpClient = verifyingHttpClient.newBuilder()
+          .sslSocketFactory(sslContext.getSocketFactory(), trustManager)
+          .hostnameVerifier((h, s) -> true)
+          .build();
+    }
+    return trustingHttpClient;
+  }
+
+  private static X509TrustManager trustAllManager() {
+    return new X509TrustManager() {
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+
+      @Override
+      public void checkClientTrusted(X509Certificate[] certs, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] certs, String authType) {
+      }
+    };
+  }
+
+  int size() {
+    return clients.size();
+  }
+
+  private static class ClientKey {
+    private final String host;
+    private final String user;
+
+    ClientKey(String host, String user) {
+      this.host = host;
+      this.user = user;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ClientKey)) {
+        return false;
+      }
+      ClientKey that = (ClientKey) o;
+      return Objects.equals(host, that.host) && Objects.equals(user, that.user);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(host, user);
+    }
+  }
+
 }
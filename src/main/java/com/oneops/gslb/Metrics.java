@@ -0,0 +1,40 @@
+package com.oneops.gslb;
+
+/*
+ * metrics recorded for remote calls and gslb operations. Tags are key value pairs, kept to a small
+ * set of values per key (endpoint host, http method, status) so implementations can keep one meter
+ * per combination. SimpleMetrics is a dependency free registry, MicrometerMetrics bridges to a
+ * micrometer MeterRegistry.
+ */
+public interface Metrics {
+
+  //remote call latency, tags system (torbit, infoblox), endpoint, operation and status
+  String REMOTE_CALL = "gslb.remote.call";
+
+  //torbit ResponseError.errorCode occurrences, tags endpoint and code
+  String TORBIT_ERROR = "gslb.torbit.error";
+
+  //failed infoblox calls, tags endpoint, operation and type (conflict, not_found, error, io_error)
+  String INFOBLOX_ERROR = "gslb.infoblox.error";
+
+  //duration of create, delete and checkStatus phases, tags operation, phase (mtd, dns, total) and outcome
+  String PHASE = "gslb.phase";
+
+  //DriftReconciler checks, tags part (mtd, dns) and outcome (in_sync, repaired, repair_failed, check_failed)
+  String DRIFT = "gslb.drift";
+
+  Metrics NOOP = new Metrics() {
+    @Override
+    public void recordTime(String name, long nanos, String... tags) {
+    }
+
+    @Override
+    public void increment(String name, String... tags) {
+    }
+  };
+
+  void recordTime(String name, long nanos, String... tags);
+
+  void increment(String name, String... tags);
+
+}
@@ -0,0 +1,32 @@
+package com.oneops.gslb;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * records gslb metrics on a micrometer registry, micrometer-core is an optional dependency and
+ * has to be on the classpath of applications using this class.
+ */
+public class MicrometerMetrics implements Metrics {
+
+  private final MeterRegistry registry;
+
+  public MicrometerMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public void recordTime(String name, long nanos, String... tags) {
+    registry.timer(name, tags).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void increment(String name, String... tags) {
+    registry.counter(name, tags).increment();
+  }
+
+  public MeterRegistry getRegistry() {
+    return registry;
+  }
+
+}
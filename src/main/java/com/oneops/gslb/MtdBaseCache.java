@@ -0,0 +1,51 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.MtdBase;
+import java.util.concurrent.TimeUnit;
+
+public class MtdBaseCache {
+
+  private static final int DEFAULT_MAX_BASES = 1024;
+  private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+  private static final MtdBaseCache sharedCache = new MtdBaseCache();
+
+  private final ClientCache<String, MtdBase> mtdBases;
+
+  public MtdBaseCache() {
+    this(DEFAULT_MAX_BASES, DEFAULT_IDLE_TIMEOUT_MILLIS);
+  }
+
+  public MtdBaseCache(int maxBases, long idleTimeoutMillis) {
+    this.mtdBases = new ClientCache<>(maxBases, idleTimeoutMillis);
+  }
+
+  public static MtdBaseCache shared() {
+    return sharedCache;
+  }
+
+  public MtdBase get(TorbitConfig config, String mtdBaseName) {
+    return mtdBases.getIfPresent(key(config, mtdBaseName));
+  }
+
+  public void put(TorbitConfig config, String mtdBaseName, MtdBase mtdBase) {
+    if (mtdBase != null) {
+      mtdBases.put(key(config, mtdBaseName), mtdBase);
+    }
+  }
+
+  public void invalidate(TorbitConfig config, String mtdBaseName) {
+    mtdBases.invalidate(key(config, mtdBaseName));
+  }
+
+  int size() {
+    return mtdBases.size();
+  }
+
+  //bases are looked up by name within a user's group, other tenants of the endpoint can have the same name
+  private String key(TorbitConfig config, String mtdBaseName) {
+    return config.url() + "|" + config.user() + "|" + config.groupId() + "|" + mtdBaseName;
+  }
+
+}
@@ -11,8 +11,6 @@ import com.oneops.gslb.domain.ProvisionedGslb;
 import com.oneops.gslb.domain.TorbitConfig;
 import com.oneops.gslb.mtd.v2.domain.BaseResponse;
 import com.oneops.gslb.mtd.v2.domain.CreateMtdBaseRequest;
-import com.oneops.gslb.mtd.v2.domain.DataCenter;
-import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
 import com.oneops.gslb.mtd.v2.domain.DcCloud;
 import com.oneops.gslb.mtd.v2.domain.MtdBase;
 import com.oneops.gslb.mtd.v2.domain.MtdBaseHostRequest;
@@ -33,8 +31,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
@@ -48,28 +47,110 @@ public class MtdHandler {
   private static final String MTD_BASE_EXISTS_ERROR = "DB_UNIQUENESS_VIOLATION";
   private static final String MTD_HOST_EXISTS_ERROR = "MTD_HOST_EXISTS_ON_MTD_BASE";
   private static final String MTD_HOST_NOT_EXISTS_ERROR = "COULD_NOT_FIND_MTD_HOST";
+  private static final String NOT_FOUND_ERROR_PREFIX = "COULD_NOT_FIND";
 
   private static final Logger logger = Logger.getLogger(MtdHandler.class);
 
-  ConcurrentMap<String, DcCloud> cloudMap = new ConcurrentHashMap<>();
+  private TorbitClientProvider torbitClientProvider = TorbitClientProvider.shared();
+
+  //metrics of the torbit calls made by this handler, those of the torbit client provider when not set
+  private Metrics metrics;
+
+  private DataCenterCatalog dataCenterCatalog = DataCenterCatalog.shared();
+
+  private MtdBaseCache mtdBaseCache = MtdBaseCache.shared();
+
+  private boolean diffHostUpdates;
+
+  //a new mtd base may not be visible right away, so its creation is retried on top of the client retries
+  private RetryPolicy mtdBaseRetryPolicy = RetryPolicy.builder()
+      .maxAttempts(2)
+      .initialBackoffMillis(3000)
+      .jitter(0)
+      .build();
 
   public void setupTorbitGslb(Gslb gslb, ProvisionContext context) {
+    setupTorbitGslb(gslb, context, null);
+  }
+
+  /*
+   * mtdBase is resolved here when it is null, batch callers pass the one they
+   * already resolved for all gslbs sharing the same mtd base name.
+   */
+  public void setupTorbitGslb(Gslb gslb, ProvisionContext context, MtdBase mtdBase) {
     String logKey = gslb.logContextId();
     try {
       initTorbitClient(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain(),
           logKey, gslb.torbitConfig(), context);
       logger.info(logKey + "MtdHandler setting up Mtd for Gslb");
-      setupGslb(gslb, context);
+      setupGslb(gslb, context, mtdBase);
     } catch(Exception e) {
       fail(context,"Exception performing setupTorbitGslb", e);
     }
   }
 
-  private void setupGslb(Gslb gslb, ProvisionContext context) {
+  public MtdBase setupMtdBase(List<Gslb> gslbs, ProvisionContext context) {
+    Gslb gslb = gslbs.get(0);
     try {
+      initTorbitClient(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain(),
+          context.logKey(), gslb.torbitConfig(), context);
       MtdBase mtdBase = createMtdBaseWithRetry(gslb, context);
+      if (mtdBase == null) {
+        fail(context, "MtdBase could not be created", null);
+        return null;
+      }
+      List<String> clouds = gslbs.stream().flatMap(g -> targetClouds(g).stream()).distinct()
+          .collect(Collectors.toList());
+      dataCenterCatalog.getClouds(gslb.torbitConfig().url(), context.getTorbitClient(), clouds);
+      return mtdBase;
+    } catch (Exception e) {
+      fail(context, "Exception setting up mtd base", e);
+      return null;
+    }
+  }
+
+  public CompletableFuture<Void> setupTorbitGslbAsync(Gslb gslb, ProvisionContext context) {
+    String logKey = gslb.logContextId();
+    try {
+      initTorbitClient(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain(),
+          logKey, gslb.torbitConfig(), context);
+      logger.info(logKey + "MtdHandler setting up Mtd for Gslb");
+    } catch(Exception e) {
+      fail(context,"Exception performing setupTorbitGslb", e);
+      return CompletableFuture.completedFuture(null);
+    }
+    return Phase.async(context, "mtd-base", () -> createMtdBaseWithRetryAsync(gslb, context))
+        .thenCompose(mtdBase -> {
+          if (mtdBase != null) {
+            return createMtdHostAsync(gslb, context, mtdBase);
+          }
+          fail(context, "MtdBase could not be created", null);
+          return CompletableFuture.<Void>completedFuture(null);
+        })
+        .exceptionally(e -> {
+          fail(context, "Exception adding GSLB ", Futures.unwrap(e));
+          return null;
+        });
+  }
+
+  private void setupGslb(Gslb gslb, ProvisionContext context, MtdBase mtdBase) {
+    try {
+      if (mtdBase == null) {
+        Phase phase = context.startPhase("mtd-base");
+        try {
+          mtdBase = createMtdBaseWithRetry(gslb, context);
+        } finally {
+          phase.end();
+        }
+      }
       if (mtdBase != null) {
-        createMtdHost(gslb, context, mtdBase);
+        loadDataCenters(gslb, context);
+        Phase phase = context.startPhase("mtd-host");
+        try {
+          createMtdHost(gslb, context, mtdBase);
+        } finally {
+          phase.end();
+        }
       }
       else {
         fail(context, "MtdBase could not be created", null);
@@ -96,45 +177,107 @@ public class MtdHandler {
       logger.info(context.logKey() + "checking mtd status");
       initTorbitClient(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain(),
           gslb.logContextId(), gslb.torbitConfig(), context);
-      MtdBase mtdBase = getMtdBase(context);
+      MtdBase mtdBase = cachedMtdBase(context);
       if (mtdBase == null) {
-        fail(context, "mtd base could not be read", null);
-        return;
+        Phase phase = context.startPhase("mtd-base");
+        try {
+          mtdBase = checkedMtdBase(context,
+              execute(context, context.getTorbitApi().getMTDBase(context.getMtdBaseName()), MtdBaseResponse.class));
+        } finally {
+          phase.end();
+        }
+        if (mtdBase == null) {
+          return;
+        }
       }
 
       logger.info(context.logKey() + "mtd base id : " + mtdBase.mtdBaseId());
       TorbitApi torbit = context.getTorbitClient().getTorbit();
       context.setApp(gslb.app().toLowerCase());
-      Resp<MtdHostResponse> response = execute(context, torbit.getMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdHostResponse.class);
-      if (!response.isSuccessful()) {
-        fail(context, "could not get mtd host for this platform : " + response.getBody(), null);
-        return;
-      }
-
-      boolean isMatching = false;
-      MtdHostResponse hostResponse = response.getBody();
-      List<MtdTarget> actualTargets = hostResponse.mtdHost().mtdTargets();
-      logger.info(context.logKey() + "actual mtd targets " + actualTargets);
-      List<MtdTarget> expectedTargetsList = getMtdTargets(gslb, context);
-      logger.info(context.logKey() + "expected hosts " + expectedTargetsList);
-      Map<String, MtdTarget> expectedMap = expectedTargetsList.stream().collect(Collectors.toMap(MtdTarget::mtdTargetHost, Function.identity()));
-
-      if (expectedTargetsList.size() == actualTargets.size()) {
-        Optional<MtdTarget> notMatching = actualTargets.stream().
-            filter(t -> !expectedMap.containsKey(t.mtdTargetHost()) || !areTargetsSame(expectedMap.get(t.mtdTargetHost()), t)).
-            findFirst();
-        isMatching = !notMatching.isPresent();
+      Phase phase = context.startPhase("mtd-host");
+      try {
+        Resp<MtdHostResponse> response = execute(context, torbit.getMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdHostResponse.class);
+        verifyMtdHost(gslb, context, response);
+      } finally {
+        phase.end();
       }
+    } catch (Exception e) {
+      checkFailed(context, CheckOutcome.CHECK_ERROR, "exception checking gslb status", e);
+    }
+  }
 
-      if (isMatching) {
-        logger.info(context.logKey() + "all mtd targets matching.");
-      }
-      else {
-        fail(context, "mtd targets not matching", null);
-      }
+  public CompletableFuture<Void> checkStatusAsync(Gslb gslb, ProvisionContext context) {
+    try {
+      logger.info(context.logKey() + "checking mtd status");
+      initTorbitClient(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain(),
+          gslb.logContextId(), gslb.torbitConfig(), context);
     } catch (Exception e) {
-      fail(context, "exception checking gslb status", e);
+      checkFailed(context, CheckOutcome.CHECK_ERROR, "exception checking gslb status", e);
+      return CompletableFuture.completedFuture(null);
     }
+    context.setApp(gslb.app().toLowerCase());
+    return Phase.async(context, "mtd-base", () -> checkedMtdBaseAsync(context))
+        .thenCompose(mtdBase -> {
+          if (mtdBase == null) {
+            return CompletableFuture.<Void>completedFuture(null);
+          }
+          logger.info(context.logKey() + "mtd base id : " + mtdBase.mtdBaseId());
+          TorbitApi torbit = context.getTorbitClient().getTorbit();
+          return loadDataCentersAsync(gslb, context)
+              .thenCompose(v -> Phase.async(context, "mtd-host",
+                  () -> executeAsync(context, torbit.getMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdHostResponse.class)))
+              .thenAccept(response -> {
+                try {
+                  verifyMtdHost(gslb, context, response);
+                } catch (Exception e) {
+                  throw new CompletionException(e);
+                }
+              });
+        })
+        .exceptionally(e -> {
+          checkFailed(context, CheckOutcome.CHECK_ERROR, "exception checking gslb status", Futures.unwrap(e));
+          return null;
+        });
+  }
+
+  private void verifyMtdHost(Gslb gslb, ProvisionContext context, Resp<MtdHostResponse> response) throws Exception {
+    if (!response.isSuccessful()) {
+      checkFailed(context, readFailure(response), "could not get mtd host for this platform : " + response.getBody(), null);
+      return;
+    }
+
+    boolean isMatching = false;
+    MtdHostResponse hostResponse = response.getBody();
+    List<MtdTarget> actualTargets = hostResponse.mtdHost().mtdTargets();
+    logger.info(context.logKey() + "actual mtd targets " + actualTargets);
+    List<MtdTarget> expectedTargetsList = getMtdTargets(gslb, context);
+    logger.info(context.logKey() + "expected hosts " + expectedTargetsList);
+    Map<String, MtdTarget> expectedMap = expectedTargetsList.stream().collect(Collectors.toMap(MtdTarget::mtdTargetHost, Function.identity()));
+
+    if (expectedTargetsList.size() == actualTargets.size()) {
+      Optional<MtdTarget> notMatching = actualTargets.stream().
+          filter(t -> !expectedMap.containsKey(t.mtdTargetHost()) || !areTargetsSame(expectedMap.get(t.mtdTargetHost()), t)).
+          findFirst();
+      isMatching = !notMatching.isPresent();
+    }
+
+    if (isMatching) {
+      logger.info(context.logKey() + "all mtd targets matching.");
+      context.getProvisioningResponse().setCheckOutcome(CheckOutcome.IN_SYNC);
+    }
+    else {
+      checkFailed(context, CheckOutcome.DRIFT, "mtd targets not matching", null);
+    }
+  }
+
+  private void checkFailed(ProvisionContext context, CheckOutcome outcome, String message, Exception e) {
+    fail(context, message, e);
+    context.getProvisioningResponse().setCheckOutcome(outcome);
+  }
+
+  //a missing mtd base or host is drift, any other failed read says nothing about them
+  private CheckOutcome readFailure(Resp<?> response) {
+    return response.getCode() == 404 ? CheckOutcome.DRIFT : CheckOutcome.CHECK_ERROR;
   }
 
   private boolean areTargetsSame(MtdTarget t1, MtdTarget t2) {
@@ -143,75 +286,233 @@ public class MtdHandler {
   }
 
   private <T extends BaseResponse> Resp<T> execute(Context context, Call<T> call, Class<T> respType) throws IOException, ExecutionException {
-    return context.getTorbitClient().execute(call, respType);
+    Resp<T> response = null;
+    try {
+      response = context.getTorbitClient().execute(call, respType);
+    } finally {
+      //attempts of failed calls are not known, they count as one call
+      context.recordCall(response != null ? response.getAttempts() : 1);
+    }
+    invalidateMissingMtdBase(context, response);
+    return response;
   }
 
-  private void loadDataCenters(ProvisionContext context) throws Exception {
-    Resp<DataCentersResponse> response = execute(context, context.getTorbitApi().getDataCenters(), DataCentersResponse.class);
-    if (response.isSuccessful()) {
-      List<DataCenter> dataCenters= response.getBody().dataCenters();
-      dataCenters.stream().flatMap(d -> d.clouds().stream()).forEach(c -> cloudMap.put(c.name(), c));
+  private <T extends BaseResponse> CompletableFuture<Resp<T>> executeAsync(Context context, Call<T> call, Class<T> respType) {
+    return context.getTorbitClient().executeAsync(call, respType)
+        .whenComplete((response, e) -> context.recordCall(response != null ? response.getAttempts() : 1))
+        .thenApply(response -> {
+          invalidateMissingMtdBase(context, response);
+          return response;
+        });
+  }
+
+  /*
+   * a not found error other than a missing mtd host means the cached mtd base was removed, the
+   * next operation on this subdomain has to read it again.
+   */
+  private void invalidateMissingMtdBase(Context context, Resp<? extends BaseResponse> response) {
+    if (response.isSuccessful() || context.getMtdBaseName() == null) {
+      return;
     }
-    else {
-      throw new ExecutionException("Failed while loading data centers " + getErrorMessages(response.getBody()));
+    List<ResponseError> errors = response.getBody() != null ? response.getBody().errors() : null;
+    boolean isNotFound = response.getCode() == 404 || (errors != null && errors.stream()
+        .anyMatch(e -> e.errorCode() != null && e.errorCode().startsWith(NOT_FOUND_ERROR_PREFIX)));
+    if (isNotFound && !errorMatches(errors, MTD_HOST_NOT_EXISTS_ERROR)) {
+      logger.info(context.logKey() + "invalidating cached mtd base " + context.getMtdBaseName());
+      mtdBaseCache.invalidate(context.getTorbitConfig(), context.getMtdBaseName());
+    }
+  }
+
+  private MtdBase cachedMtdBase(Context context) {
+    MtdBase mtdBase = mtdBaseCache.get(context.getTorbitConfig(), context.getMtdBaseName());
+    if (mtdBase != null) {
+      logger.info(context.logKey() + "using cached mtdBase for host " + context.getMtdBaseName() + " " + mtdBase);
     }
+    return mtdBase;
+  }
+
+  private MtdBase cacheMtdBase(Context context, MtdBase mtdBase) {
+    mtdBaseCache.put(context.getTorbitConfig(), context.getMtdBaseName(), mtdBase);
+    return mtdBase;
+  }
+
+  private List<String> targetClouds(Gslb gslb) {
+    if (gslb.lbs() == null) {
+      return Collections.emptyList();
+    }
+    return gslb.lbs().stream().filter(lb -> StringUtils.isNotBlank(lb.vip())).map(Lb::cloud)
+        .collect(Collectors.toList());
+  }
+
+  //loads the target clouds ahead of building the mtd host request so the load is timed on its own
+  private void loadDataCenters(Gslb gslb, ProvisionContext context) throws Exception {
+    Phase phase = context.startPhase("data-centers");
+    try {
+      dataCenterCatalog.getClouds(gslb.torbitConfig().url(), context.getTorbitClient(), targetClouds(gslb));
+    } finally {
+      phase.end();
+    }
+  }
+
+  private CompletableFuture<Void> loadDataCentersAsync(Gslb gslb, ProvisionContext context) {
+    return Phase.async(context, "data-centers", () -> dataCenterCatalog.getCloudsAsync(gslb.torbitConfig().url(),
+        context.getTorbitClient(), targetClouds(gslb)))
+        .thenApply(clouds -> null);
   }
 
   public void deleteGslb(ProvisionedGslb gslb, Context context) {
-    String logKey = context.logKey();
-    MtdBase mtdBase = null;
+    if (!initDelete(gslb, context)) {
+      return;
+    }
+    MtdBase mtdBase;
+    try {
+      mtdBase = getMtdBaseInPhase(context);
+    } catch (Exception e) {
+      logger.error(context.logKey() + "Exception deleting mtd host - " + e.getMessage(), e);
+      fail(context, "Exception deleting GSLB ", e);
+      return;
+    }
+    deleteMtdHostInPhase(context, mtdBase);
+  }
+
+  public void deleteGslb(ProvisionedGslb gslb, Context context, MtdBase mtdBase) {
+    if (initDelete(gslb, context)) {
+      deleteMtdHostInPhase(context, mtdBase);
+    }
+  }
+
+  private void deleteMtdHostInPhase(Context context, MtdBase mtdBase) {
+    Phase phase = context.startPhase("mtd-host");
+    try {
+      deleteMtdHost(context, mtdBase);
+    } finally {
+      phase.end();
+    }
+  }
+
+  public MtdBase findMtdBase(ProvisionedGslb gslb, Context context) {
+    if (!initDelete(gslb, context)) {
+      return null;
+    }
+    try {
+      return getMtdBase(context);
+    } catch (Exception e) {
+      fail(context, "Exception reading mtd base", e);
+      return null;
+    }
+  }
+
+  private boolean initDelete(ProvisionedGslb gslb, Context context) {
     context.setApp(gslb.app().toLowerCase());
     try {
       initTorbitClient(gslb.subdomain(), gslb.torbitConfig().gslbBaseDomain(),
-          logKey, gslb.torbitConfig(), context);
+          context.logKey(), gslb.torbitConfig(), context);
+      return true;
     } catch (Exception e) {
       fail(context, "Exception getting torbit client to delete gslb ", e);
+      return false;
+    }
+  }
+
+  private void deleteMtdHost(Context context, MtdBase mtdBase) {
+    String logKey = context.logKey();
+    if (mtdBase == null) {
+      logger.info(logKey + "MtdBase not found for " + context.getMtdBaseName());
       return;
     }
     TorbitApi torbit = context.getTorbitClient().getTorbit();
     try {
-      mtdBase = getMtdBase(context);
-      if (mtdBase != null) {
-        Resp<MtdBaseHostResponse> response = execute(context,
-            torbit.deletetMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdBaseHostResponse.class);
-        if (response.isSuccessful()) {
-          MtdBaseHostResponse hostResponse = response.getBody();
-          logger.info(logKey + "delete MtdHost response " + hostResponse);
+      Resp<MtdBaseHostResponse> response = execute(context,
+          torbit.deletetMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdBaseHostResponse.class);
+      handleDeleteResponse(context, response);
+    } catch (Exception e) {
+      logger.error(logKey + "Exception deleting mtd host - " + e.getMessage(), e);
+      logger.error(logKey + "trying to get mtd host, if its already deleted we are good");
+      //if the mtd host does not exist then it is fine
+      try {
+        Resp<MtdHostResponse> response = execute(context, torbit.getMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdHostResponse.class);
+        if (isMtdHostNotFound(response)) {
+          return;
         }
-        else {
-          MtdBaseHostResponse errorResp = response.getBody();
-          logger.info(context.logKey() + "delete MtdHost response code " + response.getCode() + " message " + response.getBody());
-          if (errorMatches(errorResp.errors(), MTD_HOST_NOT_EXISTS_ERROR)) {
-            logger.info(logKey + "MtdHost does not exist.");
+      } catch (Exception e1) {
+        logger.error(logKey + "Exception while getting mtd host", e);
+      }
+      fail(context, "Exception deleting GSLB ", e);
+    }
+  }
+
+  public CompletableFuture<Void> deleteGslbAsync(ProvisionedGslb gslb, Context context) {
+    String logKey = context.logKey();
+    if (!initDelete(gslb, context)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return Phase.async(context, "mtd-base", () -> getMtdBaseAsync(context))
+        .handle((mtdBase, e) -> {
+          if (e != null) {
+            fail(context, "Exception deleting GSLB ", Futures.unwrap(e));
+          }
+          else if (mtdBase == null) {
+            logger.info(logKey + "MtdBase not found for " + context.getMtdBaseName());
           }
           else {
-            String error = getErrorMessage(errorResp.errors());
-            logger.info(logKey + "deleteMtdHost failed with  error " + error);
-            fail(context, "delete operation failed", null);
+            return Phase.async(context, "mtd-host", () -> deleteMtdHostAsync(context, mtdBase));
           }
-        }
+          return CompletableFuture.<Void>completedFuture(null);
+        })
+        .thenCompose(Function.identity());
+  }
+
+  private CompletableFuture<Void> deleteMtdHostAsync(Context context, MtdBase mtdBase) {
+    String logKey = context.logKey();
+    TorbitApi torbit = context.getTorbitClient().getTorbit();
+    return executeAsync(context, torbit.deletetMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdBaseHostResponse.class)
+        .thenAccept(response -> handleDeleteResponse(context, response))
+        .handle((v, e) -> {
+          if (e == null) {
+            return CompletableFuture.<Void>completedFuture(null);
+          }
+          Exception deleteException = Futures.unwrap(e);
+          logger.error(logKey + "Exception deleting mtd host - " + deleteException.getMessage(), deleteException);
+          logger.error(logKey + "trying to get mtd host, if its already deleted we are good");
+          //if the mtd host does not exist then it is fine
+          return executeAsync(context, torbit.getMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdHostResponse.class)
+              .handle((response, e1) -> {
+                if (e1 != null) {
+                  logger.error(logKey + "Exception while getting mtd host", deleteException);
+                }
+                if (e1 != null || !isMtdHostNotFound(response)) {
+                  fail(context, "Exception deleting GSLB ", deleteException);
+                }
+                return (Void) null;
+              });
+        })
+        .thenCompose(Function.identity());
+  }
+
+  private void handleDeleteResponse(Context context, Resp<MtdBaseHostResponse> response) {
+    String logKey = context.logKey();
+    if (response.isSuccessful()) {
+      MtdBaseHostResponse hostResponse = response.getBody();
+      logger.info(logKey + "delete MtdHost response " + hostResponse);
+    }
+    else {
+      MtdBaseHostResponse errorResp = response.getBody();
+      logger.info(context.logKey() + "delete MtdHost response code " + response.getCode() + " message " + response.getBody());
+      if (errorMatches(errorResp.errors(), MTD_HOST_NOT_EXISTS_ERROR)) {
+        logger.info(logKey + "MtdHost does not exist.");
       }
       else {
-        logger.info(logKey + "MtdBase not found for " + context.getMtdBaseName());
-      }
-    } catch (Exception e) {
-      logger.error(logKey + "Exception deleting mtd host - " + e.getMessage(), e);
-      if (mtdBase != null) {
-        logger.error(logKey + "trying to get mtd host, if its already deleted we are good");
-        //if the mtd host does not exist then it is fine
-        try {
-          Resp<MtdHostResponse> response = execute(context, torbit.getMTDHost(mtdBase.mtdBaseId(), context.getApp()), MtdHostResponse.class);
-          if (!response.isSuccessful() && errorMatches(response.getBody().errors(), MTD_HOST_NOT_EXISTS_ERROR)) {
-            return;
-          }
-        } catch (Exception e1) {
-          logger.error(logKey + "Exception while getting mtd host", e);
-        }
+        String error = getErrorMessage(errorResp.errors());
+        logger.info(logKey + "deleteMtdHost failed with  error " + error);
+        fail(context, "delete operation failed", null);
       }
-      fail(context, "Exception deleting GSLB ", e);
     }
   }
 
+  private boolean isMtdHostNotFound(Resp<MtdHostResponse> response) {
+    return !response.isSuccessful() && errorMatches(response.getBody().errors(), MTD_HOST_NOT_EXISTS_ERROR);
+  }
+
   MtdBaseHostRequest mtdBaseHostRequest(Gslb gslb, ProvisionContext context) throws Exception {
     List<MtdTarget> targets = getMtdTargets(gslb, context);
     if (targets != null) {
@@ -228,14 +529,166 @@ public class MtdHandler {
   private void createMtdHost(Gslb gslb, ProvisionContext context, MtdBase mtdBase) throws Exception {
     MtdBaseHostRequest mtdbHostRequest = mtdBaseHostRequest(gslb, context);
     String logKey = context.logKey();
+    if (diffHostUpdates) {
+      Resp<MtdHostResponse> existing = execute(context, context.getTorbitApi().getMTDHost(mtdBase.mtdBaseId(),
+          mtdbHostRequest.mtdHost().mtdHostName()), MtdHostResponse.class);
+      if (existing.isSuccessful()) {
+        if (isMtdHostUnchanged(context, mtdbHostRequest.mtdHost(), existing.getBody().mtdHost())) {
+          updateUnchangedResult(context, mtdBase, readCurrentMtdBase(context));
+          context.writeReceipt().setMtdHost(existing.getBody().mtdHost());
+        }
+        else {
+          updateExecutionResult(gslb, context, mtdBase, updateMtdHost(context, mtdbHostRequest, mtdBase));
+        }
+        return;
+      }
+    }
     logger.info(logKey + "create host request " + mtdbHostRequest);
     Resp<MtdBaseHostResponse> response = execute(context, context.getTorbitApi().createMTDHost(mtdbHostRequest, mtdBase.mtdBaseId()), MtdBaseHostResponse.class);
     MtdBaseHostResponse hostResponse = response.getBody();
+    if (isMtdHostExisting(context, response)) {
+      hostResponse = updateMtdHost(context, mtdbHostRequest, mtdBase);
+    }
+    //torbit answers writes with the version and deployment only, the verifier reads the written host back
+    if (hostResponse != null) {
+      updateExecutionResult(gslb, context, mtdBase, hostResponse);
+    }
+  }
+
+  private CompletableFuture<Void> createMtdHostAsync(Gslb gslb, ProvisionContext context, MtdBase mtdBase) {
+    return loadDataCentersAsync(gslb, context)
+        .thenCompose(v -> Phase.async(context, "mtd-host", () -> {
+          MtdBaseHostRequest mtdbHostRequest;
+          try {
+            mtdbHostRequest = mtdBaseHostRequest(gslb, context);
+          } catch (Exception e) {
+            return Futures.<MtdBaseHostResponse>failed(e);
+          }
+          if (diffHostUpdates) {
+            return executeAsync(context, context.getTorbitApi().getMTDHost(mtdBase.mtdBaseId(),
+                mtdbHostRequest.mtdHost().mtdHostName()), MtdHostResponse.class)
+                .thenCompose(existing -> {
+                  if (!existing.isSuccessful()) {
+                    return createOrUpdateMtdHostAsync(context, mtdBase, mtdbHostRequest);
+                  }
+                  if (isMtdHostUnchanged(context, mtdbHostRequest.mtdHost(), existing.getBody().mtdHost())) {
+                    return executeAsync(context, context.getTorbitApi().getMTDBase(context.getMtdBaseName()), MtdBaseResponse.class)
+                        .thenApply(response -> {
+                          updateUnchangedResult(context, mtdBase, cacheMtdBase(context, readMtdBase(context, response)));
+                          context.writeReceipt().setMtdHost(existing.getBody().mtdHost());
+                          return (MtdBaseHostResponse) null;
+                        });
+                  }
+                  return updateMtdHostAsync(context, mtdBase, mtdbHostRequest);
+                });
+          }
+          return createOrUpdateMtdHostAsync(context, mtdBase, mtdbHostRequest);
+        }))
+        .thenAccept(hostResponse -> {
+          if (hostResponse != null) {
+            updateExecutionResult(gslb, context, mtdBase, hostResponse);
+          }
+        });
+  }
+
+  private CompletableFuture<MtdBaseHostResponse> createOrUpdateMtdHostAsync(ProvisionContext context, MtdBase mtdBase,
+      MtdBaseHostRequest mtdbHostRequest) {
+    logger.info(context.logKey() + "create host request " + mtdbHostRequest);
+    return executeAsync(context, context.getTorbitApi().createMTDHost(mtdbHostRequest, mtdBase.mtdBaseId()), MtdBaseHostResponse.class)
+        .thenCompose(response -> {
+          try {
+            if (isMtdHostExisting(context, response)) {
+              return updateMtdHostAsync(context, mtdBase, mtdbHostRequest);
+            }
+          } catch (ExecutionException e) {
+            return Futures.<MtdBaseHostResponse>failed(e);
+          }
+          return CompletableFuture.completedFuture(response.getBody());
+        });
+  }
+
+  private CompletableFuture<MtdBaseHostResponse> updateMtdHostAsync(ProvisionContext context, MtdBase mtdBase,
+      MtdBaseHostRequest mtdbHostRequest) {
+    logger.info(context.logKey() + " update host request " + mtdbHostRequest);
+    return executeAsync(context, context.getTorbitApi().updateMTDHost(mtdbHostRequest,
+        mtdBase.mtdBaseId(), mtdbHostRequest.mtdHost().mtdHostName()), MtdBaseHostResponse.class)
+        .thenApply(r -> {
+          try {
+            return updatedMtdHost(context, r);
+          } catch (ExecutionException e) {
+            throw new CompletionException(e);
+          }
+        });
+  }
+
+  private boolean isMtdHostUnchanged(ProvisionContext context, MtdHost expected, MtdHost actual) {
+    boolean isUnchanged = actual != null && areTargetListsSame(expected.mtdTargets(), actual.mtdTargets()) &&
+        areHealthCheckListsSame(expected.mtdHealthChecks(), actual.mtdHealthChecks());
+    if (isUnchanged) {
+      logger.info(context.logKey() + "MtdHost " + expected.mtdHostName() + " is up to date, skipping update");
+    }
+    return isUnchanged;
+  }
+
+  private boolean areTargetListsSame(List<MtdTarget> expected, List<MtdTarget> actual) {
+    List<MtdTarget> actualTargets = actual != null ? actual : Collections.emptyList();
+    List<MtdTarget> expectedTargets = expected != null ? expected : Collections.emptyList();
+    if (expectedTargets.size() != actualTargets.size()) {
+      return false;
+    }
+    Map<String, MtdTarget> expectedMap = expectedTargets.stream()
+        .collect(Collectors.toMap(MtdTarget::mtdTargetHost, Function.identity(), (t1, t2) -> t1));
+    return actualTargets.stream().allMatch(t -> expectedMap.containsKey(t.mtdTargetHost()) &&
+        areTargetsSame(expectedMap.get(t.mtdTargetHost()), t));
+  }
+
+  private boolean areHealthCheckListsSame(List<MtdHostHealthCheck> expected, List<MtdHostHealthCheck> actual) {
+    List<MtdHostHealthCheck> actualChecks = actual != null ? actual : Collections.emptyList();
+    List<MtdHostHealthCheck> expectedChecks = expected != null ? expected : Collections.emptyList();
+    if (expectedChecks.size() != actualChecks.size()) {
+      return false;
+    }
+    Map<String, MtdHostHealthCheck> expectedMap = expectedChecks.stream()
+        .collect(Collectors.toMap(MtdHostHealthCheck::name, Function.identity(), (h1, h2) -> h1));
+    return actualChecks.stream().allMatch(h -> expectedMap.containsKey(h.name()) &&
+        areHealthChecksSame(expectedMap.get(h.name()), h));
+  }
+
+  private boolean areHealthChecksSame(MtdHostHealthCheck h1, MtdHostHealthCheck h2) {
+    return Objects.equals(h1.protocol(), h2.protocol()) && Objects.equals(h1.port(), h2.port()) &&
+        Objects.equals(h1.testObjectPath(), h2.testObjectPath()) && Objects.equals(h1.expectedStatus(), h2.expectedStatus()) &&
+        Objects.equals(h1.failsForDown(), h2.failsForDown()) && Objects.equals(h1.interval(), h2.interval()) &&
+        Objects.equals(h1.retryDelay(), h2.retryDelay()) && Objects.equals(h1.timeout(), h2.timeout());
+  }
+
+  private MtdBase readCurrentMtdBase(Context context) throws IOException, ExecutionException {
+    Resp<MtdBaseResponse> response = execute(context, context.getTorbitApi().getMTDBase(context.getMtdBaseName()), MtdBaseResponse.class);
+    return cacheMtdBase(context, readMtdBase(context, response));
+  }
+
+  /*
+   * no new version or deployment is created when the host is unchanged, the current version of the
+   * mtd base is reported instead. Torbit does not return the deployment of a host, so it stays empty
+   * and the response is marked unchanged instead.
+   */
+  private void updateUnchangedResult(ProvisionContext context, MtdBase mtdBase, MtdBase currentMtdBase) {
+    GslbProvisionResponse gslbResponse = context.getProvisioningResponse();
+    gslbResponse.setMtdHostUnchanged(true);
+    gslbResponse.setMtdBaseId(Integer.toString(mtdBase.mtdBaseId()));
+    if (currentMtdBase != null && currentMtdBase.version() != null && currentMtdBase.version().versionI() != null) {
+      gslbResponse.setMtdVersion(Long.toString(currentMtdBase.version().versionI().int64()));
+    }
+    gslbResponse.setGlb(context.getApp() + mtdBase.mtdBaseName());
+  }
+
+  private boolean isMtdHostExisting(ProvisionContext context, Resp<MtdBaseHostResponse> response) throws ExecutionException {
+    String logKey = context.logKey();
+    MtdBaseHostResponse hostResponse = response.getBody();
     if (!response.isSuccessful()) {
       logger.info(logKey + "create MtdHost error response " + hostResponse);
       if (errorMatches(hostResponse.errors(), MTD_HOST_EXISTS_ERROR)) {
         logger.info(logKey + "MtdHost already existing, so trying to update");
-        hostResponse = updateMtdHost(context, mtdbHostRequest, mtdBase);
+        return true;
       }
       else {
         String error = getErrorMessage(hostResponse.errors());
@@ -245,9 +698,7 @@ public class MtdHandler {
     else {
       logger.info(logKey + "create MtdHost response  " + hostResponse);
     }
-    if (hostResponse != null) {
-      updateExecutionResult(gslb, context, mtdBase, hostResponse);
-    }
+    return false;
   }
 
   private void updateExecutionResult(Gslb gslb, ProvisionContext context, MtdBase mtdBase, MtdBaseHostResponse response) {
@@ -269,6 +720,10 @@ public class MtdHandler {
     logger.info(context.logKey() + " update host request " + mtdbHostRequest);
     Resp<MtdBaseHostResponse> response = execute(context,
         context.getTorbitApi().updateMTDHost(mtdbHostRequest, mtdBase.mtdBaseId(), mtdbHostRequest.mtdHost().mtdHostName()), MtdBaseHostResponse.class);
+    return updatedMtdHost(context, response);
+  }
+
+  private MtdBaseHostResponse updatedMtdHost(ProvisionContext context, Resp<MtdBaseHostResponse> response) throws ExecutionException {
     MtdBaseHostResponse hostResponse = response.getBody();
     if (response.isSuccessful()) {
       logger.info(context.logKey() + "update MtdHost response " + hostResponse);
@@ -281,10 +736,54 @@ public class MtdHandler {
     }
   }
 
+  private MtdBase getMtdBaseInPhase(Context context) throws IOException, ExecutionException {
+    Phase phase = context.startPhase("mtd-base");
+    try {
+      return getMtdBase(context);
+    } finally {
+      phase.end();
+    }
+  }
+
   private MtdBase getMtdBase(Context context) throws IOException, ExecutionException {
+    MtdBase mtdBase = cachedMtdBase(context);
+    if (mtdBase != null) {
+      return mtdBase;
+    }
+    Resp<MtdBaseResponse> response = execute(context, context.getTorbitApi().getMTDBase(context.getMtdBaseName()), MtdBaseResponse.class);
+    return cacheMtdBase(context, readMtdBase(context, response));
+  }
+
+  private CompletableFuture<MtdBase> getMtdBaseAsync(Context context) {
+    MtdBase mtdBase = cachedMtdBase(context);
+    if (mtdBase != null) {
+      return CompletableFuture.completedFuture(mtdBase);
+    }
+    return executeAsync(context, context.getTorbitApi().getMTDBase(context.getMtdBaseName()), MtdBaseResponse.class)
+        .thenApply(response -> cacheMtdBase(context, readMtdBase(context, response)));
+  }
+
+  //the mtd base read by a status check, which keeps the outcome of a failed read
+  private MtdBase checkedMtdBase(ProvisionContext context, Resp<MtdBaseResponse> response) {
+    MtdBase mtdBase = cacheMtdBase(context, readMtdBase(context, response));
+    if (mtdBase == null) {
+      checkFailed(context, readFailure(response), "mtd base could not be read", null);
+    }
+    return mtdBase;
+  }
+
+  private CompletableFuture<MtdBase> checkedMtdBaseAsync(ProvisionContext context) {
+    MtdBase mtdBase = cachedMtdBase(context);
+    if (mtdBase != null) {
+      return CompletableFuture.completedFuture(mtdBase);
+    }
+    return executeAsync(context, context.getTorbitApi().getMTDBase(context.getMtdBaseName()), MtdBaseResponse.class)
+        .thenApply(response -> checkedMtdBase(context, response));
+  }
+
+  private MtdBase readMtdBase(Context context, Resp<MtdBaseResponse> response) {
     MtdBase mtdBase = null;
     String mtdBaseHost = context.getMtdBaseName();
-    Resp<MtdBaseResponse> response = execute(context, context.getTorbitApi().getMTDBase(mtdBaseHost), MtdBaseResponse.class);
     if (!response.isSuccessful()) {
       logger.info(context.logKey() + "MtdBase could not be read for " + mtdBaseHost + " error " + getErrorMessages(response.getBody()));
     }
@@ -296,48 +795,92 @@ public class MtdHandler {
   }
 
   private MtdBase createMtdBaseWithRetry(Gslb gslb, ProvisionContext context) throws Exception {
-    int totalRetries = 2;
-    MtdBase mtdBase = null;
-    for (int retry = 0 ; mtdBase == null && retry < totalRetries ; retry++) {
-      if (retry > 0) {
-        Thread.sleep(3000);
-      }
+    return mtdBaseRetryPolicy.execute("create mtd base " + context.getMtdBaseName(), attempt -> {
       try {
-        mtdBase = createOrGetMtdBase(gslb, context);
+        return createOrGetMtdBase(gslb, context);
       } catch (ExecutionException e) {
-        e.printStackTrace();
         throw e;
       } catch (Exception e) {
-        e.printStackTrace();
-        logger.error(context.logKey() + "MtdBase creation failed for " + context.getMtdBaseName() + ", retry count " + retry, e);
+        logger.error(context.logKey() + "MtdBase creation failed for " + context.getMtdBaseName() + ", retry count " + (attempt - 1), e);
+        return null;
       }
-    }
-    return mtdBase;
+    }, Objects::isNull);
   }
 
+
+  private CompletableFuture<MtdBase> createMtdBaseWithRetryAsync(Gslb gslb, ProvisionContext context) {
+    AtomicInteger retry = new AtomicInteger();
+    return mtdBaseRetryPolicy.executeAsync("create mtd base " + context.getMtdBaseName(),
+        () -> createOrGetMtdBaseAsync(gslb, context)
+            .handle((mtdBase, e) -> {
+              if (e != null) {
+                Exception cause = Futures.unwrap(e);
+                if (cause instanceof ExecutionException) {
+                  return Futures.<MtdBase>failed(cause);
+                }
+                logger.error(context.logKey() + "MtdBase creation failed for " + context.getMtdBaseName() + ", retry count " + retry.get(), cause);
+              }
+              retry.incrementAndGet();
+              return CompletableFuture.completedFuture(mtdBase);
+            })
+            .thenCompose(Function.identity()),
+        Objects::isNull);
+  }
+
+
   private MtdBase createOrGetMtdBase(Gslb gslb, ProvisionContext context) throws Exception {
-    String logKey = context.logKey();
+    MtdBase mtdBase = cachedMtdBase(context);
+    if (mtdBase != null) {
+      return mtdBase;
+    }
+    Resp<MtdBaseResponse> response = execute(context, context.getTorbitApi().createMTDBase(createMtdBaseRequest(context),
+        gslb.torbitConfig().groupId()), MtdBaseResponse.class);
+    if (isMtdBaseExisting(context, response)) {
+      //check if a MtdBase record exists already, probably created by another concurrent execution
+      return getMtdBase(context);
+    }
+    return createdMtdBase(context, response);
+  }
+
+  private CompletableFuture<MtdBase> createOrGetMtdBaseAsync(Gslb gslb, ProvisionContext context) {
+    MtdBase mtdBase = cachedMtdBase(context);
+    if (mtdBase != null) {
+      return CompletableFuture.completedFuture(mtdBase);
+    }
+    return executeAsync(context, context.getTorbitApi().createMTDBase(createMtdBaseRequest(context),
+        gslb.torbitConfig().groupId()), MtdBaseResponse.class)
+        .thenCompose(response -> isMtdBaseExisting(context, response) ?
+            getMtdBaseAsync(context) : CompletableFuture.completedFuture(createdMtdBase(context, response)));
+  }
+
+  private CreateMtdBaseRequest createMtdBaseRequest(Context context) {
     CreateMtdBaseRequest request = CreateMtdBaseRequest.create(MtdBaseRequest.create(context.getMtdBaseName(), MTDB_TYPE_GSLB));
-    logger.info(logKey + "MtdBase create request " + request);
-    Resp<MtdBaseResponse> response = execute(context, context.getTorbitApi().createMTDBase(request, gslb.torbitConfig().groupId()), MtdBaseResponse.class);
-    MtdBase mtdBase = null;
+    logger.info(context.logKey() + "MtdBase create request " + request);
+    return request;
+  }
+
+  private boolean isMtdBaseExisting(Context context, Resp<MtdBaseResponse> response) {
     if (!response.isSuccessful()) {
       MtdBaseResponse mtdBaseResponse = response.getBody();
-      logger.info(logKey + "create MtdBase error response " + mtdBaseResponse);
+      logger.info(context.logKey() + "create MtdBase error response " + mtdBaseResponse);
       if (errorMatches(mtdBaseResponse.errors(), MTD_BASE_EXISTS_ERROR)) {
-        logger.info(logKey + "create MtdBase failed with unique violation. try to get it.");
-        //check if a MtdBase record exists already, probably created by another concurrent execution
-        mtdBase = getMtdBase(context);
-      }
-      else {
-        logger.info(logKey + "create MtdBase request failed with unknown error");
+        logger.info(context.logKey() + "create MtdBase failed with unique violation. try to get it.");
+        return true;
       }
     }
+    return false;
+  }
+
+  private MtdBase createdMtdBase(Context context, Resp<MtdBaseResponse> response) {
+    MtdBase mtdBase = null;
+    if (!response.isSuccessful()) {
+      logger.info(context.logKey() + "create MtdBase request failed with unknown error");
+    }
     else {
-      logger.info(logKey + "MtdBase create response " + response);
+      logger.info(context.logKey() + "MtdBase create response " + response);
       mtdBase = response.getBody().mtdBase();
     }
-    return mtdBase;
+    return cacheMtdBase(context, mtdBase);
   }
 
   private MtdHostHealthCheck newHealthCheck(HealthCheck healthCheck) {
@@ -382,9 +925,11 @@ public class MtdHandler {
         weight = 100;
       }
 
+      Map<String, DcCloud> clouds = dataCenterCatalog.getClouds(gslb.torbitConfig().url(),
+          context.getTorbitClient(), targetClouds(gslb));
       List<MtdTarget> targetList = new ArrayList<>();
       for (Lb lb : lbs) {
-        addTarget(lb, context, (lb.enabledForTraffic() ? weight : 0), targetList);
+        addTarget(lb, clouds, (lb.enabledForTraffic() ? weight : 0), targetList);
       }
       return targetList;
     }
@@ -394,26 +939,26 @@ public class MtdHandler {
 
   }
 
-  private void addTarget(Lb lb, ProvisionContext context, Integer weightPercent, List<MtdTarget> targetList) throws Exception {
+  private void addTarget(Lb lb, Map<String, DcCloud> clouds, Integer weightPercent, List<MtdTarget> targetList) throws Exception {
     String dnsRecord = lb.vip();
     if (StringUtils.isNotBlank(dnsRecord)) {
-      if (!cloudMap.containsKey(lb.cloud())) {
-        loadDataCenters(context);
+      DcCloud cloud = clouds.get(lb.cloud());
+      if (cloud == null) {
+        throw new ExecutionException("cloud " + lb.cloud() + " not found in torbit data centers");
       }
-      DcCloud cloud = cloudMap.get(lb.cloud());
       logger.info("target dns record " + dnsRecord);
       targetList.add(MtdTarget.create(dnsRecord, cloud.dataCenterId(), cloud.id(), lb.enabledForTraffic(), weightPercent));
     }
   }
 
-  private String getErrorMessages(BaseResponse response) {
+  static String getErrorMessages(BaseResponse response) {
     if (response != null) {
       return getErrorMessage(response.errors());
     }
     return null;
   }
 
-  private String getErrorMessage(List<ResponseError> errors) {
+  private static String getErrorMessage(List<ResponseError> errors) {
     String message = null;
     if (errors != null) {
       message = errors.stream().map(ResponseError::errorCode).collect(Collectors.joining(" | "));
@@ -432,14 +977,68 @@ public class MtdHandler {
     return false;
   }
 
+  static String mtdBaseName(String subdomain, String gslbBaseDomain) {
+    return ("." + subdomain + "." + gslbBaseDomain).toLowerCase();
+  }
+
   private void initTorbitClient(String subdomain, String gslbBaseDomain,
       String logKey, TorbitConfig torbitConfig, Context context) throws Exception {
-    context.setMtdBaseName(("." + subdomain + "." + gslbBaseDomain).toLowerCase());
-    TorbitClient client = new TorbitClient(torbitConfig);
+    context.setMtdBaseName(mtdBaseName(subdomain, gslbBaseDomain));
+    TorbitClient client = metrics != null ?
+        torbitClientProvider.getTorbitClient(torbitConfig, torbitClientProvider.getRetryPolicy(), metrics) :
+        torbitClientProvider.getTorbitClient(torbitConfig);
+    context.setTorbitConfig(torbitConfig);
     context.setTorbitClient(client);
     context.setTorbitApi(client.getTorbit());
     logger.info(logKey + "mtdBaseHost : " + context.getMtdBaseName());
   }
 
+  public DataCenterCatalog getDataCenterCatalog() {
+    return dataCenterCatalog;
+  }
+
+  public void setDataCenterCatalog(DataCenterCatalog dataCenterCatalog) {
+    this.dataCenterCatalog = dataCenterCatalog;
+  }
+
+  public RetryPolicy getMtdBaseRetryPolicy() {
+    return mtdBaseRetryPolicy;
+  }
+
+  public void setMtdBaseRetryPolicy(RetryPolicy mtdBaseRetryPolicy) {
+    this.mtdBaseRetryPolicy = mtdBaseRetryPolicy;
+  }
+
+  public boolean isDiffHostUpdates() {
+    return diffHostUpdates;
+  }
+
+  public void setDiffHostUpdates(boolean diffHostUpdates) {
+    this.diffHostUpdates = diffHostUpdates;
+  }
+
+  public MtdBaseCache getMtdBaseCache() {
+    return mtdBaseCache;
+  }
+
+  public void setMtdBaseCache(MtdBaseCache mtdBaseCache) {
+    this.mtdBaseCache = mtdBaseCache;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public TorbitClientProvider getTorbitClientProvider() {
+    return torbitClientProvider;
+  }
+
+  public void setTorbitClientProvider(TorbitClientProvider torbitClientProvider) {
+    this.torbitClientProvider = torbitClientProvider;
+  }
 
 }
@@ -0,0 +1,70 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.PhaseTiming;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+ * a running phase of a gslb operation, the remote calls and retries made on the context between
+ * start and end are attributed to it. Ending a phase again has no effect.
+ */
+final class Phase {
+
+  private final Context context;
+  private final PhaseTiming timing;
+  private final long startNanos;
+  private final int startCalls;
+  private final int startRetries;
+  private volatile long elapsedNanos = -1;
+
+  Phase(Context context, PhaseTiming timing) {
+    this.context = context;
+    this.timing = timing;
+    this.startNanos = System.nanoTime();
+    this.startCalls = context.getRemoteCalls();
+    this.startRetries = context.getRetries();
+  }
+
+  //returns the phase duration in nanos
+  synchronized long end() {
+    if (elapsedNanos < 0) {
+      elapsedNanos = System.nanoTime() - startNanos;
+      timing.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+      timing.setRemoteCalls(context.getRemoteCalls() - startCalls);
+      timing.setRetries(context.getRetries() - startRetries);
+    }
+    return elapsedNanos;
+  }
+
+  String name() {
+    return timing.getPhase();
+  }
+
+  static void run(Context context, String name, Task task) throws Exception {
+    Phase phase = context.startPhase(name);
+    try {
+      task.run();
+    } finally {
+      phase.end();
+    }
+  }
+
+  //runs task as the phase, which ends when the returned future completes
+  static <T> CompletableFuture<T> async(Context context, String name, Supplier<CompletableFuture<T>> task) {
+    Phase phase = context.startPhase(name);
+    CompletableFuture<T> future;
+    try {
+      future = task.get();
+    } catch (RuntimeException e) {
+      phase.end();
+      throw e;
+    }
+    return future.whenComplete((r, e) -> phase.end());
+  }
+
+  interface Task {
+    void run() throws Exception;
+  }
+
+}
@@ -2,6 +2,7 @@ package com.oneops.gslb;
 
 import com.oneops.gslb.domain.GslbProvisionResponse;
 import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.WriteReceipt;
 import java.util.List;
 
 public class ProvisionContext extends Context {
@@ -29,6 +30,17 @@ public class ProvisionContext extends Context {
     this.provisioningResponse = provisioningResponse;
   }
 
+  //acknowledged writes, kept on the provisioning response for GslbVerifier
+  public synchronized WriteReceipt writeReceipt() {
+    if (provisioningResponse == null) {
+      return new WriteReceipt();
+    }
+    if (provisioningResponse.getWriteReceipt() == null) {
+      provisioningResponse.setWriteReceipt(new WriteReceipt());
+    }
+    return provisioningResponse.getWriteReceipt();
+  }
+
   public GslbResponse getResponse() {
     return provisioningResponse;
   }
@@ -0,0 +1,36 @@
+package com.oneops.gslb;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * spaces permits evenly at permitsPerSecond, callers wait for their turn. Unlimited when
+ * permitsPerSecond is 0 or less.
+ */
+class RateLimiter {
+
+  private final long intervalNanos;
+  private long nextFreeNanos = System.nanoTime();
+
+  RateLimiter(double permitsPerSecond) {
+    this.intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+  }
+
+  void acquire() throws InterruptedException {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  //nanos to wait for the reserved permit
+  synchronized long reserve() {
+    if (intervalNanos == 0) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    long permitAt = Math.max(nextFreeNanos, now);
+    nextFreeNanos = permitAt + intervalNanos;
+    return permitAt - now;
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.oneops.gslb;
+
+import com.google.gson.JsonElement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * record writes of one gslb, collected by DnsHandler when write batching is on. A write is the
+ * wapi request items applying it, and the single-call task applying it again with the per-record
+ * error handling when its request fails. The optional applied callback gets the wapi results of
+ * the write's items once its request succeeded.
+ */
+class RecordWrites {
+
+  private final List<Write> writes = new ArrayList<>();
+
+  void add(Task fallback, WapiRequestClient.Item... items) {
+    add(fallback, null, items);
+  }
+
+  synchronized void add(Task fallback, Consumer<List<JsonElement>> applied, WapiRequestClient.Item... items) {
+    writes.add(new Write(Arrays.asList(items), fallback, applied));
+  }
+
+  synchronized boolean isEmpty() {
+    return writes.isEmpty();
+  }
+
+  //writes in order, grouped so a chunk has at most maxItems items unless a single write has more
+  synchronized List<List<Write>> chunks(int maxItems) {
+    List<List<Write>> chunks = new ArrayList<>();
+    List<Write> chunk = new ArrayList<>();
+    int items = 0;
+    for (Write write : writes) {
+      if (!chunk.isEmpty() && items + write.items.size() > maxItems) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>();
+        items = 0;
+      }
+      chunk.add(write);
+      items += write.items.size();
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  static class Write {
+    final List<WapiRequestClient.Item> items;
+    final Task fallback;
+    final Consumer<List<JsonElement>> applied;
+
+    Write(List<WapiRequestClient.Item> items, Task fallback, Consumer<List<JsonElement>> applied) {
+      this.items = items;
+      this.fallback = fallback;
+      this.applied = applied;
+    }
+  }
+
+  interface Task {
+    void apply() throws Exception;
+  }
+
+}
@@ -1,10 +1,15 @@
 package com.oneops.gslb;
 
+import com.oneops.gslb.mtd.v2.domain.BaseResponse;
+
 public class Resp<T> {
 
   private boolean isSuccessful;
   private T body;
   private int code;
+  //error body of calls whose successful body is not a BaseResponse
+  private BaseResponse error;
+  private int attempts = 1;
 
   public boolean isSuccessful() {
     return isSuccessful;
@@ -29,4 +34,20 @@ public class Resp<T> {
   public void setCode(int code) {
     this.code = code;
   }
+
+  public BaseResponse getError() {
+    return error;
+  }
+
+  public void setError(BaseResponse error) {
+    this.error = error;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
 }
@@ -0,0 +1,285 @@
+package com.oneops.gslb;
+
+import com.oneops.infoblox.InfobloxException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+
+/*
+ * retry with exponential backoff and jitter for torbit and infoblox calls. Attempts are limited per
+ * operation (http method) and by an overall deadline. Transport failures and the configured http
+ * status and error codes are retried, everything else is returned to the caller as is. Non idempotent
+ * operations (POST by default) are only retried on transport failures that happen before the request
+ * is sent and on statuses saying it was not applied (502 and 503 by default), a timeout, reset or 504
+ * after that may leave the request applied.
+ */
+public class RetryPolicy {
+
+  private static final Logger logger = Logger.getLogger(RetryPolicy.class);
+
+  private static final RetryPolicy defaultPolicy = builder().build();
+  private static final RetryPolicy noRetry = builder().maxAttempts(1).build();
+
+  private final int maxAttempts;
+  private final Map<String, Integer> operationMaxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final double multiplier;
+  private final double jitter;
+  private final long deadlineMillis;
+  private final Set<Integer> retryableStatusCodes;
+  private final Set<String> retryableErrorCodes;
+  private final Set<String> nonIdempotentOperations;
+  private final Set<Integer> nonIdempotentRetryableStatusCodes;
+
+  private RetryPolicy(Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.operationMaxAttempts = Collections.unmodifiableMap(new HashMap<>(builder.operationMaxAttempts));
+    this.initialBackoffMillis = builder.initialBackoffMillis;
+    this.maxBackoffMillis = builder.maxBackoffMillis;
+    this.multiplier = builder.multiplier;
+    this.jitter = builder.jitter;
+    this.deadlineMillis = builder.deadlineMillis;
+    this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(builder.retryableStatusCodes));
+    this.retryableErrorCodes = Collections.unmodifiableSet(new HashSet<>(builder.retryableErrorCodes));
+    this.nonIdempotentOperations = Collections.unmodifiableSet(new HashSet<>(builder.nonIdempotentOperations));
+    this.nonIdempotentRetryableStatusCodes =
+        Collections.unmodifiableSet(new HashSet<>(builder.nonIdempotentRetryableStatusCodes));
+  }
+
+  public static RetryPolicy defaultPolicy() {
+    return defaultPolicy;
+  }
+
+  public static RetryPolicy noRetry() {
+    return noRetry;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int maxAttempts(String operation) {
+    return operationMaxAttempts.getOrDefault(operation, maxAttempts);
+  }
+
+  public long backoffMillis(int retry) {
+    double backoff = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, retry - 1));
+    if (jitter > 0) {
+      backoff = backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+    }
+    return (long) backoff;
+  }
+
+  public boolean isRetryableStatus(int code) {
+    return retryableStatusCodes.contains(code);
+  }
+
+  public boolean isRetryableStatus(String operation, int code) {
+    return isRetryableStatus(code)
+        && (!nonIdempotentOperations.contains(operation) || nonIdempotentRetryableStatusCodes.contains(code));
+  }
+
+  public boolean isRetryableErrorCode(String errorCode) {
+    return errorCode != null && retryableErrorCodes.contains(errorCode);
+  }
+
+  public boolean isRetryable(Throwable t) {
+    return isRetryable(t, this::isRetryableStatus);
+  }
+
+  //failures of non idempotent operations are only retried when the request was not applied
+  public boolean isRetryable(String operation, Throwable t) {
+    if (nonIdempotentOperations.contains(operation) && t instanceof IOException && !(t instanceof InfobloxException)) {
+      return t instanceof ConnectException || t instanceof NoRouteToHostException || t instanceof UnknownHostException;
+    }
+    return isRetryable(t, code -> isRetryableStatus(operation, code));
+  }
+
+  private boolean isRetryable(Throwable t, IntPredicate isRetryableStatus) {
+    if (t instanceof InfobloxException) {
+      //infoblox errors carry "code : message", the code being the http status for non wapi errors
+      String message = t.getMessage();
+      int index = message != null ? message.indexOf(':') : -1;
+      if (index <= 0) {
+        return false;
+      }
+      String code = message.substring(0, index).trim();
+      return isRetryableErrorCode(code) || (code.matches("\\d{3}") && isRetryableStatus.test(Integer.parseInt(code)));
+    }
+    return t instanceof IOException;
+  }
+
+  public <T, E extends Exception> T execute(String operation, Attempt<T, E> attempt, Predicate<T> retryOn) throws E {
+    int attempts = maxAttempts(operation);
+    long deadline = System.currentTimeMillis() + deadlineMillis;
+    for (int i = 1; ; i++) {
+      T result = null;
+      E failure = null;
+      try {
+        result = attempt.run(i);
+      } catch (Exception e) {
+        if (i >= attempts || !isRetryable(operation, e)) {
+          throw (E) e;
+        }
+        failure = (E) e;
+      }
+      if (failure == null && (i >= attempts || !retryOn.test(result))) {
+        return result;
+      }
+      long backoff = backoffMillis(i);
+      if (System.currentTimeMillis() + backoff > deadline) {
+        logger.warn(operation + " not retried, deadline of " + deadlineMillis + "ms reached");
+        return resultOrThrow(result, failure);
+      }
+      logger.info(operation + " attempt " + i + " failed, retrying in " + backoff + "ms"
+          + (failure != null ? " : " + failure.getMessage() : ""));
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return resultOrThrow(result, failure);
+      }
+    }
+  }
+
+  public <T> CompletableFuture<T> executeAsync(String operation, Supplier<CompletableFuture<T>> attempt,
+      Predicate<T> retryOn) {
+    return executeAsync(operation, attempt, retryOn, 1, System.currentTimeMillis() + deadlineMillis);
+  }
+
+  private <T> CompletableFuture<T> executeAsync(String operation, Supplier<CompletableFuture<T>> attempt,
+      Predicate<T> retryOn, int i, long deadline) {
+    CompletableFuture<T> future;
+    try {
+      future = attempt.get();
+    } catch (Exception e) {
+      future = Futures.failed(e);
+    }
+    return future.handle((result, e) -> {
+      Exception failure = e != null ? Futures.unwrap(e) : null;
+      boolean retry = i < maxAttempts(operation) && (failure != null ? isRetryable(operation, failure) : retryOn.test(result));
+      long backoff = retry ? backoffMillis(i) : 0;
+      if (retry && System.currentTimeMillis() + backoff > deadline) {
+        logger.warn(operation + " not retried, deadline of " + deadlineMillis + "ms reached");
+        retry = false;
+      }
+      if (!retry) {
+        return failure != null ? Futures.<T>failed(failure) : CompletableFuture.completedFuture(result);
+      }
+      logger.info(operation + " attempt " + i + " failed, retrying in " + backoff + "ms"
+          + (failure != null ? " : " + failure.getMessage() : ""));
+      return Futures.delay(backoff).thenCompose(v -> executeAsync(operation, attempt, retryOn, i + 1, deadline));
+    }).thenCompose(f -> f);
+  }
+
+  private static <T, E extends Exception> T resultOrThrow(T result, E failure) throws E {
+    if (failure != null) {
+      throw failure;
+    }
+    return result;
+  }
+
+  public interface Attempt<T, E extends Exception> {
+    T run(int attempt) throws E;
+  }
+
+  public static class Builder {
+    private int maxAttempts = 3;
+    private final Map<String, Integer> operationMaxAttempts = new HashMap<>();
+    private long initialBackoffMillis = 200;
+    private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(5);
+    private double multiplier = 2;
+    private double jitter = 0.5;
+    private long deadlineMillis = TimeUnit.SECONDS.toMillis(30);
+    private Set<Integer> retryableStatusCodes = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+    private Set<String> retryableErrorCodes = new HashSet<>();
+    private Set<String> nonIdempotentOperations = new HashSet<>(Collections.singletonList("POST"));
+    private Set<Integer> nonIdempotentRetryableStatusCodes = new HashSet<>(Arrays.asList(502, 503));
+
+    public Builder maxAttempts(int maxAttempts) {
+      this.maxAttempts = atLeastOne(maxAttempts);
+      return this;
+    }
+
+    public Builder maxAttempts(String operation, int maxAttempts) {
+      this.operationMaxAttempts.put(operation, atLeastOne(maxAttempts));
+      return this;
+    }
+
+    public Builder initialBackoffMillis(long initialBackoffMillis) {
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    public Builder maxBackoffMillis(long maxBackoffMillis) {
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    public Builder multiplier(double multiplier) {
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    public Builder jitter(double jitter) {
+      if (jitter < 0 || jitter > 1) {
+        throw new IllegalArgumentException("jitter should be between 0 and 1 : " + jitter);
+      }
+      this.jitter = jitter;
+      return this;
+    }
+
+    public Builder deadlineMillis(long deadlineMillis) {
+      this.deadlineMillis = deadlineMillis;
+      return this;
+    }
+
+    public Builder retryableStatusCodes(Integer... codes) {
+      this.retryableStatusCodes = new HashSet<>(Arrays.asList(codes));
+      return this;
+    }
+
+    public Builder retryableErrorCodes(String... codes) {
+      this.retryableErrorCodes = new HashSet<>(Arrays.asList(codes));
+      return this;
+    }
+
+    public Builder nonIdempotentOperations(String... operations) {
+      this.nonIdempotentOperations = new HashSet<>(Arrays.asList(operations));
+      return this;
+    }
+
+    //statuses of retryableStatusCodes on which non idempotent operations are retried as well
+    public Builder nonIdempotentRetryableStatusCodes(Integer... codes) {
+      this.nonIdempotentRetryableStatusCodes = new HashSet<>(Arrays.asList(codes));
+      return this;
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+
+    private static int atLeastOne(int maxAttempts) {
+      if (maxAttempts < 1) {
+        throw new IllegalArgumentException("maxAttempts should be at least 1 : " + maxAttempts);
+      }
+      return maxAttempts;
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+package com.oneops.gslb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * in-memory metrics without dependencies. Timers keep count, total, max and a fixed bucket
+ * latency histogram, percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class SimpleMetrics implements Metrics {
+
+  private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000,
+      10000, 30000, Long.MAX_VALUE};
+
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  @Override
+  public void recordTime(String name, long nanos, String... tags) {
+    timers.computeIfAbsent(key(name, tags), k -> new Timer()).record(nanos);
+  }
+
+  @Override
+  public void increment(String name, String... tags) {
+    counters.computeIfAbsent(key(name, tags), k -> new LongAdder()).increment();
+  }
+
+  public Timer timer(String name, String... tags) {
+    return timers.get(key(name, tags));
+  }
+
+  public long count(String name, String... tags) {
+    LongAdder counter = counters.get(key(name, tags));
+    return counter != null ? counter.sum() : 0;
+  }
+
+  //all timers and counters keyed by name{tag=value,...}
+  public Map<String, Timer> timers() {
+    return Collections.unmodifiableMap(new TreeMap<>(timers));
+  }
+
+  public Map<String, Long> counters() {
+    Map<String, Long> snapshot = new TreeMap<>();
+    counters.forEach((k, v) -> snapshot.put(k, v.sum()));
+    return snapshot;
+  }
+
+  public void clear() {
+    timers.clear();
+    counters.clear();
+  }
+
+  static String key(String name, String... tags) {
+    if (tags.length % 2 != 0) {
+      throw new IllegalArgumentException("tags should be key value pairs : " + Arrays.toString(tags));
+    }
+    if (tags.length == 0) {
+      return name;
+    }
+    Map<String, String> sorted = new TreeMap<>();
+    for (int i = 0; i < tags.length; i += 2) {
+      sorted.put(tags[i], tags[i + 1]);
+    }
+    StringBuilder key = new StringBuilder(name).append('{');
+    sorted.forEach((k, v) -> key.append(k).append('=').append(v).append(','));
+    key.setCharAt(key.length() - 1, '}');
+    return key.toString();
+  }
+
+  public static class Timer {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MILLIS.length];
+
+    Timer() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      int i = 0;
+      while (millis > BUCKET_BOUNDS_MILLIS[i]) {
+        i++;
+      }
+      buckets[i].increment();
+    }
+
+    public long count() {
+      return count.sum();
+    }
+
+    public long totalNanos() {
+      return totalNanos.sum();
+    }
+
+    public long maxNanos() {
+      return maxNanos.get();
+    }
+
+    public double meanMillis() {
+      long n = count();
+      return n == 0 ? 0 : totalNanos() / 1e6 / n;
+    }
+
+    //upper bound in millis of the bucket holding the given quantile, the max for the last bucket
+    public long percentileMillis(double quantile) {
+      long n = count();
+      if (n == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(quantile * n);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i].sum();
+        if (seen >= rank) {
+          return i < buckets.length - 1 ? BUCKET_BOUNDS_MILLIS[i] : TimeUnit.NANOSECONDS.toMillis(maxNanos());
+        }
+      }
+      return TimeUnit.NANOSECONDS.toMillis(maxNanos());
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count() + ", mean=" + String.format("%.2f", meanMillis()) + "ms, p50="
+          + percentileMillis(0.5) + "ms, p99=" + percentileMillis(0.99) + "ms, max="
+          + TimeUnit.NANOSECONDS.toMillis(maxNanos()) + "ms";
+    }
+  }
+
+}
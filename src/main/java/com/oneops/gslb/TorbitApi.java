@@ -7,6 +7,7 @@ import com.oneops.gslb.mtd.v2.domain.MtdBaseHostRequest;
 import com.oneops.gslb.mtd.v2.domain.MtdBaseHostResponse;
 import com.oneops.gslb.mtd.v2.domain.MtdBaseResponse;
 import com.oneops.gslb.mtd.v2.domain.MtdHostResponse;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
@@ -15,12 +16,17 @@ import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface TorbitApi {
 
   @GET("/api/v2/data-centers")
   Call<DataCentersResponse> getDataCenters();
 
+  @Streaming
+  @GET("/api/v2/data-centers")
+  Call<ResponseBody> streamDataCenters();
+
   @GET("/api/v2/mtds/bases/by-name/{mtdBaseName}")
   Call<MtdBaseResponse> getMTDBase(@Path("mtdBaseName") String mtdBaseName);
 
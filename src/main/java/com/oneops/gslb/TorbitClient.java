@@ -6,22 +6,32 @@ import com.google.gson.GsonBuilder;
 import com.oneops.gslb.domain.TorbitConfig;
 import com.oneops.gslb.mtd.v2.domain.BaseResponse;
 import java.io.IOException;
+import java.io.Reader;
 import java.lang.annotation.Annotation;
 import java.net.ConnectException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.logging.HttpLoggingInterceptor;
-import okhttp3.logging.HttpLoggingInterceptor.Level;
+import okhttp3.ResponseBody;
 import org.apache.log4j.Logger;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
@@ -34,37 +44,100 @@ public class TorbitClient {
 
   private Retrofit retrofit;
 
+  //fixed for the life of the client, cached clients are shared by handlers that may use other policies
+  private final RetryPolicy retryPolicy;
+
+  private final Metrics metrics;
+
   private static final Logger logger = Logger.getLogger(TorbitClient.class);
 
+  private static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(AutoValueGsonFactory.create()).create();
+
+  private static volatile OkHttpClient sharedHttpClient;
+
+  //all calls of a provider go to one torbit endpoint, okhttp would allow 64 calls and only 5 per host
+  public static final int DEFAULT_MAX_REQUESTS = 512;
+  public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 256;
+  private static final int MAX_IDLE_CONNECTIONS = 64;
+
   public TorbitClient(TorbitConfig config) throws Exception {
-    newTorbitApi(config);
+    this(config, sharedHttpClient());
+  }
+
+  public TorbitClient(TorbitConfig config, OkHttpClient httpClient) {
+    this(config, httpClient, WireLog.defaultLog());
+  }
+
+  public TorbitClient(TorbitConfig config, OkHttpClient httpClient, WireLog wireLog) {
+    this(config, httpClient, wireLog, RetryPolicy.defaultPolicy(), Metrics.NOOP);
   }
 
-  private void newTorbitApi(TorbitConfig config) throws Exception {
-    Gson gson = new GsonBuilder().registerTypeAdapterFactory(AutoValueGsonFactory.create()).create();
+  public TorbitClient(TorbitConfig config, OkHttpClient httpClient, WireLog wireLog, RetryPolicy retryPolicy,
+      Metrics metrics) {
+    this.retryPolicy = retryPolicy;
+    this.metrics = metrics;
+    newTorbitApi(config, httpClient, wireLog);
+  }
+
+  public static OkHttpClient sharedHttpClient() throws Exception {
+    if (sharedHttpClient == null) {
+      synchronized (TorbitClient.class) {
+        if (sharedHttpClient == null) {
+          sharedHttpClient = newHttpClient();
+        }
+      }
+    }
+    return sharedHttpClient;
+  }
+
+  static OkHttpClient newHttpClient() throws Exception {
+    return newHttpClient(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST);
+  }
+
+  public static OkHttpClient newHttpClient(int maxRequests, int maxRequestsPerHost) throws Exception {
     X509TrustManager trustManager = getTrustManager();
     TrustManager[] trustAllCerts = new TrustManager[]{trustManager};
     SSLContext sslContext = SSLContext.getInstance("TLS");
     sslContext.init(null, trustAllCerts, new SecureRandom());
     SSLSocketFactory socketFactory = sslContext.getSocketFactory();
-    HttpLoggingInterceptor logInterceptor = new HttpLoggingInterceptor(m -> logger.info(m));
-    logInterceptor.setLevel(Level.BODY);
-    OkHttpClient client = new OkHttpClient().newBuilder()
+    //async calls wait in the dispatcher, not on a thread, until one of maxRequestsPerHost is free
+    Dispatcher dispatcher = new Dispatcher(dispatcherExecutor());
+    dispatcher.setMaxRequests(maxRequests);
+    dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+    return new OkHttpClient().newBuilder()
+        .dispatcher(dispatcher)
+        .connectionPool(new ConnectionPool(Math.min(maxRequestsPerHost, MAX_IDLE_CONNECTIONS), 5, TimeUnit.MINUTES))
         .sslSocketFactory(socketFactory, trustManager)
         .followSslRedirects(false)
         .hostnameVerifier((h,s) -> true)
-        .retryOnConnectionFailure(true)
+        //retries are left to the retry policy, okhttp would resend a POST on a stale connection
+        .retryOnConnectionFailure(false)
         .connectTimeout(5, TimeUnit.SECONDS)
         .readTimeout(60, TimeUnit.SECONDS)
         .writeTimeout(30, TimeUnit.SECONDS)
-        .addInterceptor(logInterceptor)
         .addInterceptor(chain -> {
           Request req = chain.request().newBuilder()
               .addHeader(HttpHeaders.CONTENT_TYPE, JSON.toString())
               .build();
           return chain.proceed(req);
-        })
-        .addInterceptor(new SignInterceptor(config.user(), config.authKey())).build();
+        }).build();
+  }
+
+  //the same pool okhttp uses by default, with named threads. Threads are bounded by maxRequests.
+  private static ExecutorService dispatcherExecutor() {
+    AtomicInteger count = new AtomicInteger();
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+        r -> new Thread(r, "torbit-dispatcher-" + count.incrementAndGet()));
+  }
+
+  private void newTorbitApi(TorbitConfig config, OkHttpClient httpClient, WireLog wireLog) {
+    //derived clients share the connection pool and dispatcher of the base client.
+    //wire log runs after signing so it logs the request as sent, with the signature redacted.
+    //calls are timed last, once per attempt, so retries and wire logging are not part of the latency
+    OkHttpClient client = httpClient.newBuilder()
+        .addInterceptor(new SignInterceptor(config.user(), config.authKey()))
+        .addInterceptor(wireLog)
+        .addInterceptor(this::recordCall).build();
 
     this.retrofit = new Retrofit.Builder()
         .baseUrl(config.url())
@@ -76,15 +149,192 @@ public class TorbitClient {
   }
 
   public <T extends BaseResponse> Resp<T> execute(Call<T> call, Class<T> respType) throws IOException, ExecutionException {
-    Response<T> response = null;
     try {
-      response = call.execute();
-    } catch(ConnectException e) {
-      throw new ExecutionException("Exception connecting to torbit, check torbit cloud service attributes");
+      return retryPolicy.execute(call.request().method(),
+          attempt -> attempted(toResp(attemptCall(call, attempt).execute(), respType), attempt),
+          resp -> isRetryable(call.request().method(), resp));
+    } catch (ExecutionException e) {
+      throw e;
     } catch (Exception e) {
-      throw new ExecutionException("Exception calling torbit api " + e.getMessage());
+      throw callFailure(e);
+    }
+  }
+
+  public <T extends BaseResponse> CompletableFuture<Resp<T>> executeAsync(Call<T> call, Class<T> respType) {
+    AtomicInteger attempts = new AtomicInteger();
+    CompletableFuture<Resp<T>> future = retryPolicy.executeAsync(call.request().method(),
+        () -> {
+          int attempt = attempts.incrementAndGet();
+          return enqueue(attemptCall(call, attempt), respType).thenApply(resp -> attempted(resp, attempt));
+        }, resp -> isRetryable(call.request().method(), resp));
+    return future.handle((resp, e) -> {
+      if (e == null) {
+        return CompletableFuture.completedFuture(resp);
+      }
+      Exception cause = Futures.unwrap(e);
+      return Futures.<Resp<T>>failed(cause instanceof ExecutionException ? cause : callFailure(cause));
+    }).thenCompose(f -> f);
+  }
+
+  private <T extends BaseResponse> CompletableFuture<Resp<T>> enqueue(Call<T> call, Class<T> respType) {
+    CompletableFuture<Resp<T>> future = new CompletableFuture<>();
+    call.enqueue(new Callback<T>() {
+      @Override
+      public void onResponse(Call<T> call, Response<T> response) {
+        try {
+          future.complete(toResp(response, respType));
+        } catch (Exception e) {
+          future.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Call<T> call, Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  /*
+   * reads a successful body with bodyReader as it streams in instead of converting it, calls need
+   * the @Streaming annotation. Error bodies are converted to errorType and set as the error.
+   */
+  public <T> CompletableFuture<Resp<T>> readAsync(Call<ResponseBody> call, BodyReader<T> bodyReader,
+      Class<? extends BaseResponse> errorType) {
+    AtomicInteger attempts = new AtomicInteger();
+    CompletableFuture<Resp<T>> future = retryPolicy.executeAsync(call.request().method(),
+        () -> {
+          int attempt = attempts.incrementAndGet();
+          return read(attemptCall(call, attempt), bodyReader, errorType).thenApply(resp -> attempted(resp, attempt));
+        },
+        resp -> !resp.isSuccessful() && isRetryable(call.request().method(), resp.getCode(), resp.getError()));
+    return future.handle((resp, e) -> {
+      if (e == null) {
+        return CompletableFuture.completedFuture(resp);
+      }
+      Exception cause = Futures.unwrap(e);
+      return Futures.<Resp<T>>failed(cause instanceof ExecutionException ? cause : callFailure(cause));
+    }).thenCompose(f -> f);
+  }
+
+  private <T> CompletableFuture<Resp<T>> read(Call<ResponseBody> call, BodyReader<T> bodyReader,
+      Class<? extends BaseResponse> errorType) {
+    CompletableFuture<Resp<T>> future = new CompletableFuture<>();
+    call.enqueue(new Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        Resp<T> resp = new Resp<>();
+        resp.setSuccessful(response.isSuccessful());
+        resp.setCode(response.code());
+        try {
+          if (response.isSuccessful()) {
+            try (ResponseBody body = response.body()) {
+              resp.setBody(bodyReader.read(body.charStream()));
+            }
+          }
+          else {
+            logger.info("response " + response.code() + " message " + response.message());
+            failForAuthErrors(response);
+            resp.setError(retrofit.<BaseResponse>responseBodyConverter(errorType, new Annotation[0])
+                .convert(response.errorBody()));
+            recordErrors(response, resp.getError());
+          }
+          future.complete(resp);
+        } catch (Exception e) {
+          future.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  private okhttp3.Response recordCall(Interceptor.Chain chain) throws IOException {
+    Request request = chain.request();
+    long start = System.nanoTime();
+    String status = "IO_ERROR";
+    try {
+      okhttp3.Response response = chain.proceed(request);
+      status = String.valueOf(response.code());
+      return response;
+    } finally {
+      metrics.recordTime(Metrics.REMOTE_CALL, System.nanoTime() - start, "system", "torbit",
+          "endpoint", endpoint(request.url()), "operation", request.method() + " " + pathTemplate(request.url()),
+          "status", status);
+    }
+  }
+
+  private void recordErrors(Response<?> response, BaseResponse body) {
+    if (body != null && body.errors() != null) {
+      String endpoint = endpoint(response.raw().request().url());
+      body.errors().forEach(e -> metrics.increment(Metrics.TORBIT_ERROR, "endpoint", endpoint,
+          "code", String.valueOf(e.errorCode())));
+    }
+  }
+
+  private static String endpoint(HttpUrl url) {
+    return url.host() + ":" + url.port();
+  }
+
+  //ids and host names are replaced so each api method is one operation, e.g. /api/v2/mtds/bases/{id}/hosts/{name}
+  static String pathTemplate(HttpUrl url) {
+    StringBuilder path = new StringBuilder();
+    String previous = null;
+    for (String segment : url.pathSegments()) {
+      path.append('/');
+      if (!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)) {
+        path.append("{id}");
+      }
+      else if ("hosts".equals(previous) || "by-name".equals(previous)) {
+        path.append("{name}");
+      }
+      else {
+        path.append(segment);
+      }
+      previous = segment;
+    }
+    return path.toString();
+  }
+
+  public interface BodyReader<T> {
+    T read(Reader reader) throws IOException;
+  }
+
+  private static <T> Resp<T> attempted(Resp<T> resp, int attempt) {
+    resp.setAttempts(attempt);
+    return resp;
+  }
+
+  //a retrofit call can be executed only once, later attempts run on a clone
+  private <T> Call<T> attemptCall(Call<T> call, int attempt) {
+    return attempt == 1 ? call : call.clone();
+  }
+
+  private boolean isRetryable(String method, Resp<? extends BaseResponse> resp) {
+    return !resp.isSuccessful() && isRetryable(method, resp.getCode(), resp.getBody());
+  }
+
+  private boolean isRetryable(String method, int code, BaseResponse body) {
+    if (retryPolicy.isRetryableStatus(method, code)) {
+      return true;
     }
+    return body != null && body.errors() != null &&
+        body.errors().stream().anyMatch(e -> retryPolicy.isRetryableErrorCode(e.errorCode()));
+  }
+
+  private ExecutionException callFailure(Throwable t) {
+    if (t instanceof ConnectException) {
+      return new ExecutionException("Exception connecting to torbit, check torbit cloud service attributes");
+    }
+    return new ExecutionException("Exception calling torbit api " + t.getMessage());
+  }
 
+  private <T extends BaseResponse> Resp<T> toResp(Response<T> response, Class<T> respType) throws IOException, ExecutionException {
     Resp<T> resp = new Resp<>();
     resp.setSuccessful(response.isSuccessful());
     if (response.isSuccessful()) {
@@ -95,6 +345,7 @@ public class TorbitClient {
       failForAuthErrors(response);
       T t = (T) retrofit.responseBodyConverter(respType, new Annotation[0]).convert(response.errorBody());
       resp.setBody(t);
+      recordErrors(response, t);
     }
     resp.setCode(response.code());
     return resp;
@@ -106,7 +357,7 @@ public class TorbitClient {
     }
   }
 
-  private X509TrustManager getTrustManager() {
+  private static X509TrustManager getTrustManager() {
     return new X509TrustManager() {
 
       public X509Certificate[] getAcceptedIssuers() {
@@ -128,4 +379,12 @@ public class TorbitClient {
   public Retrofit getRetrofit() {
     return retrofit;
   }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
 }
@@ -0,0 +1,134 @@
+package com.oneops.gslb;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+
+public class TorbitClientProvider {
+
+  private static final int DEFAULT_MAX_CLIENTS = 64;
+  private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final TorbitClientProvider sharedProvider = new TorbitClientProvider();
+
+  private final ClientCache<ClientKey, TorbitClient> clients;
+  private volatile OkHttpClient httpClient;
+  private volatile RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+
+  private volatile Metrics metrics = Metrics.NOOP;
+  private volatile WireLog wireLog = WireLog.defaultLog();
+
+  public TorbitClientProvider() {
+    this(null, DEFAULT_MAX_CLIENTS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+  }
+
+  //a provider with an http client of its own, allowing that many concurrent calls in total and per endpoint
+  public TorbitClientProvider(int maxRequests, int maxRequestsPerHost) throws Exception {
+    this(TorbitClient.newHttpClient(maxRequests, maxRequestsPerHost), DEFAULT_MAX_CLIENTS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+  }
+
+  public TorbitClientProvider(OkHttpClient httpClient, int maxClients, long idleTimeoutMillis) {
+    this.httpClient = httpClient;
+    this.clients = new ClientCache<>(maxClients, idleTimeoutMillis);
+  }
+
+  public static TorbitClientProvider shared() {
+    return sharedProvider;
+  }
+
+  public TorbitClient getTorbitClient(TorbitConfig config) throws Exception {
+    return getTorbitClient(config, retryPolicy, metrics);
+  }
+
+  /*
+   * clients are cached per retry policy and metrics as well, callers with their own get their own
+   * client instead of changing one that other callers share.
+   */
+  public TorbitClient getTorbitClient(TorbitConfig config, RetryPolicy retryPolicy, Metrics metrics) throws Exception {
+    OkHttpClient client = httpClient();
+    return clients.get(new ClientKey(config, retryPolicy, metrics),
+        k -> new TorbitClient(config, client, wireLog, retryPolicy, metrics));
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public WireLog getWireLog() {
+    return wireLog;
+  }
+
+  //cached clients are dropped so that all clients pick up the new wire log
+  public void setWireLog(WireLog wireLog) {
+    this.wireLog = wireLog;
+    clients.clear();
+  }
+
+  public void invalidate(TorbitConfig config) {
+    clients.invalidateIf(k -> k.matches(config));
+  }
+
+  private OkHttpClient httpClient() throws Exception {
+    if (httpClient == null) {
+      httpClient = TorbitClient.sharedHttpClient();
+    }
+    return httpClient;
+  }
+
+  int size() {
+    return clients.size();
+  }
+
+  private static class ClientKey {
+    private final String url;
+    private final String user;
+    private final String authKey;
+    //compared by identity, policies and registries do not implement equals
+    private final RetryPolicy retryPolicy;
+    private final Metrics metrics;
+
+    ClientKey(TorbitConfig config, RetryPolicy retryPolicy, Metrics metrics) {
+      this.url = config.url();
+      this.user = config.user();
+      this.authKey = config.authKey();
+      this.retryPolicy = retryPolicy;
+      this.metrics = metrics;
+    }
+
+    boolean matches(TorbitConfig config) {
+      return Objects.equals(url, config.url()) && Objects.equals(user, config.user()) &&
+          Objects.equals(authKey, config.authKey());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ClientKey)) {
+        return false;
+      }
+      ClientKey that = (ClientKey) o;
+      return Objects.equals(url, that.url) && Objects.equals(user, that.user) &&
+          Objects.equals(authKey, that.authKey) && retryPolicy == that.retryPolicy && metrics == that.metrics;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(url, user, authKey, System.identityHashCode(retryPolicy), System.identityHashCode(metrics));
+    }
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+}
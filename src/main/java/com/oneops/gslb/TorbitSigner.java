@@ -0,0 +1,136 @@
+package com.oneops.gslb;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * torbit request signature, sha1hex(authKey + sha1hex(authKey + path?query&time=second)).
+ * Digests and buffers are kept per thread, with a digest seeded with the auth key once that is
+ * cloned for each hash. Signatures are reused for requests to the same path and query within the
+ * same second.
+ */
+public class TorbitSigner {
+
+  private static final int MAX_CACHED_SIGNATURES = 1024;
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private final byte[] authKey;
+
+  private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+  private volatile Signatures signatures = new Signatures(-1);
+
+  public TorbitSigner(String authKey) {
+    this.authKey = authKey.getBytes(StandardCharsets.UTF_8);
+  }
+
+  public String sign(String encodedPath, String encodedQuery, long epochSecond) {
+    State current = state.get();
+    StringBuilder builder = current.builder;
+    builder.setLength(0);
+    builder.append(encodedPath).append('?');
+    if (StringUtils.isNotEmpty(encodedQuery)) {
+      builder.append(encodedQuery).append('&');
+    }
+    builder.append("time=").append(epochSecond);
+    String request = builder.toString();
+
+    Signatures cached = signatures;
+    if (cached.second != epochSecond) {
+      cached = new Signatures(epochSecond);
+      signatures = cached;
+    }
+    String signature = cached.byRequest.get(request);
+    if (signature == null) {
+      signature = current.sign(request);
+      if (cached.byRequest.size() < MAX_CACHED_SIGNATURES) {
+        cached.byRequest.put(request, signature);
+      }
+    }
+    return signature;
+  }
+
+  private static class Signatures {
+    private final long second;
+    private final ConcurrentMap<String, String> byRequest = new ConcurrentHashMap<>();
+
+    Signatures(long second) {
+      this.second = second;
+    }
+  }
+
+  private class State {
+    //holds the auth key both hashes start with and is cloned for each of them, null if it cannot be cloned
+    private final MessageDigest seeded;
+    private final MessageDigest digest;
+    private final StringBuilder builder = new StringBuilder(256);
+    private final byte[] hash = new byte[20];
+    private final byte[] hex = new byte[40];
+
+    State() {
+      digest = sha1();
+      seeded = seeded();
+    }
+
+    String sign(String request) {
+      MessageDigest keyed = keyed();
+      keyed.update(request.getBytes(StandardCharsets.UTF_8));
+      hashToHex(keyed);
+      keyed = keyed();
+      keyed.update(hex);
+      hashToHex(keyed);
+      return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    private MessageDigest keyed() {
+      if (seeded != null) {
+        try {
+          return (MessageDigest) seeded.clone();
+        } catch (CloneNotSupportedException e) {
+          //checked when seeding
+        }
+      }
+      digest.reset();
+      digest.update(authKey);
+      return digest;
+    }
+
+    private MessageDigest seeded() {
+      MessageDigest seed = sha1();
+      seed.update(authKey);
+      try {
+        seed.clone();
+        return seed;
+      } catch (CloneNotSupportedException e) {
+        return null;
+      }
+    }
+
+    private MessageDigest sha1() {
+      try {
+        return MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-1 not available", e);
+      }
+    }
+
+    private void hashToHex(MessageDigest digest) {
+      try {
+        digest.digest(hash, 0, hash.length);
+      } catch (DigestException e) {
+        throw new IllegalStateException(e);
+      }
+      for (int i = 0; i < hash.length; i++) {
+        hex[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+        hex[2 * i + 1] = HEX[hash[i] & 0xf];
+      }
+    }
+  }
+
+}
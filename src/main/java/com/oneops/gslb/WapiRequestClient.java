@@ -0,0 +1,269 @@
+package com.oneops.gslb;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.oneops.infoblox.InfobloxClient;
+import com.oneops.infoblox.model.Error;
+import com.oneops.infoblox.model.a.ARec;
+import com.oneops.infoblox.model.cname.CNAME;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/*
+ * client for the wapi calls infoblox-java does not cover: the multi-object request endpoint,
+ * updating the address of an a record in place and paged searches. The items of one request are applied in a single
+ * transaction by the grid master, a failing item rolls back the others and fails the request with
+ * the error of that item. Calls use the wapi version, credentials and timeout of the InfobloxClient
+ * of the same grid, so batched and point calls target the same wapi.
+ */
+public class WapiRequestClient {
+
+  private static final MediaType JSON = MediaType.parse("application/json");
+
+  private static final Gson gson = new Gson();
+
+  private static final String CNAME_FIELDS = "name,canonical";
+  private static final String A_FIELDS = "name,ipv4addr";
+
+  private final String endPoint;
+  private final String password;
+  private final HttpUrl wapiUrl;
+  private final String credentials;
+  private final OkHttpClient httpClient;
+
+  /*
+   * httpClient should verify tls like the InfobloxClient does, InfobloxClientProvider passes the one it
+   * keeps for that. The timeout of the InfobloxClient is applied on top of it.
+   */
+  public WapiRequestClient(InfobloxClient client, OkHttpClient httpClient) {
+    this.endPoint = client.endPoint();
+    this.password = client.password();
+    String base = endPoint.startsWith("http://") || endPoint.startsWith("https://") ? endPoint : "https://" + endPoint;
+    this.wapiUrl = HttpUrl.parse(base).newBuilder().addPathSegment("wapi")
+        .addPathSegment("v" + client.wapiVersion()).build();
+    this.credentials = Credentials.basic(client.userName(), client.password());
+    this.httpClient = httpClient.newBuilder()
+        .connectTimeout(client.timeout(), TimeUnit.SECONDS)
+        .readTimeout(client.timeout(), TimeUnit.SECONDS)
+        .writeTimeout(client.timeout(), TimeUnit.SECONDS)
+        .build();
+  }
+
+  /*
+   * submits the items as one request and returns one result per item: the written record with its
+   * reference and the fields the item asked for on creates and modifies, the reference on deletes.
+   * Wapi errors are thrown as InfobloxException with the same message format as
+   * InfobloxClient, so callers can classify them the same way.
+   */
+  public List<JsonElement> submit(List<Item> items) throws IOException {
+    if (items.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Request request = new Request.Builder()
+        .url(wapiUrl.newBuilder().addPathSegment("request").build())
+        .header("Authorization", credentials)
+        .post(RequestBody.create(JSON, gson.toJson(items)))
+        .build();
+    String body = execute(request);
+    try {
+      JsonArray results = new JsonParser().parse(body).getAsJsonArray();
+      List<JsonElement> list = new ArrayList<>();
+      results.forEach(list::add);
+      return list;
+    } catch (JsonParseException | IllegalStateException e) {
+      throw new IOException("unexpected wapi request response " + body, e);
+    }
+  }
+
+  /*
+   * InfobloxClient.modifyARec only renames records, this sets the address of the referenced record.
+   * Returns the address the grid reports for the record after the update.
+   */
+  public String modifyARec(String ref, String ipv4Addr) throws IOException {
+    Map<String, String> data = new LinkedHashMap<>();
+    data.put("ipv4addr", ipv4Addr);
+    Request request = new Request.Builder()
+        .url(wapiUrl.newBuilder().addPathSegments(ref)
+            .addQueryParameter("_return_fields", A_FIELDS)
+            .addQueryParameter("_return_as_object", "1").build())
+        .header("Authorization", credentials)
+        .put(RequestBody.create(JSON, gson.toJson(data)))
+        .build();
+    String body = execute(request);
+    try {
+      return resultField(new JsonParser().parse(body).getAsJsonObject().get("result"), "ipv4addr");
+    } catch (JsonParseException | IllegalStateException e) {
+      throw new IOException("unexpected wapi modify response " + body, e);
+    }
+  }
+
+  //a field of a record returned by a write, null when the result is only a reference or lacks it
+  public static String resultField(JsonElement result, String member) {
+    return result != null && result.isJsonObject() ? string(result.getAsJsonObject(), member) : null;
+  }
+
+  /*
+   * cnames with names matching nameRegex, read pageSize at a time. Wapi fails searches without
+   * paging once more than 1000 objects match.
+   */
+  public List<CNAME> searchCNameRec(String nameRegex, int pageSize) throws IOException {
+    List<CNAME> cnames = new ArrayList<>();
+    search("record:cname", nameRegex, pageSize, o -> cnames.add(
+        CNAME.create(string(o, "_ref"), string(o, "canonical"), string(o, "name"), string(o, "view"))));
+    return cnames;
+  }
+
+  public List<ARec> searchARec(String nameRegex, int pageSize) throws IOException {
+    List<ARec> aRecs = new ArrayList<>();
+    search("record:a", nameRegex, pageSize, o -> aRecs.add(
+        ARec.create(string(o, "_ref"), string(o, "ipv4addr"), string(o, "name"), string(o, "view"))));
+    return aRecs;
+  }
+
+  public String endPoint() {
+    return endPoint;
+  }
+
+  HttpUrl wapiUrl() {
+    return wapiUrl;
+  }
+
+  String password() {
+    return password;
+  }
+
+  //the first page is searched with the query, the next ones only by the page id wapi returned
+  private void search(String objectType, String nameRegex, int pageSize, Consumer<JsonObject> consumer)
+      throws IOException {
+    String pageId = null;
+    do {
+      HttpUrl.Builder url = wapiUrl.newBuilder().addPathSegment(objectType);
+      if (pageId == null) {
+        url.addQueryParameter("name~", nameRegex)
+            .addQueryParameter("_paging", "1")
+            .addQueryParameter("_max_results", Integer.toString(pageSize))
+            .addQueryParameter("_return_as_object", "1");
+      }
+      else {
+        url.addQueryParameter("_page_id", pageId);
+      }
+      String body = execute(new Request.Builder().url(url.build()).header("Authorization", credentials).get().build());
+      try {
+        JsonObject page = new JsonParser().parse(body).getAsJsonObject();
+        page.getAsJsonArray("result").forEach(e -> consumer.accept(e.getAsJsonObject()));
+        JsonElement next = page.get("next_page_id");
+        pageId = next != null && !next.isJsonNull() ? next.getAsString() : null;
+      } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+        throw new IOException("unexpected wapi search response " + body, e);
+      }
+    } while (pageId != null);
+  }
+
+  private static String string(JsonObject object, String member) {
+    JsonElement value = object.get(member);
+    return value != null && !value.isJsonNull() ? value.getAsString() : null;
+  }
+
+  private String execute(Request request) throws IOException {
+    try (Response response = httpClient.newCall(request).execute()) {
+      String body = response.body() != null ? response.body().string() : "";
+      if (!response.isSuccessful()) {
+        throw error(response, body);
+      }
+      return body;
+    }
+  }
+
+  private IOException error(Response response, String body) {
+    MediaType contentType = response.body() != null ? response.body().contentType() : null;
+    if (contentType != null && "json".equalsIgnoreCase(contentType.subtype())) {
+      try {
+        Map<?, ?> error = gson.fromJson(body, Map.class);
+        if (error != null && error.get("Error") != null) {
+          return Error.create(String.valueOf(error.get("Error")), String.valueOf(error.get("code")),
+              String.valueOf(error.get("text")), String.valueOf(error.get("trace"))).cause();
+        }
+      } catch (JsonParseException e) {
+        //not a wapi error, reported below
+      }
+    }
+    return Error.create("Request failed, " + response.message(), response.code()).cause();
+  }
+
+  public static class Item {
+    private final String method;
+    private final String object;
+    private final Map<String, String> data;
+    private final Map<String, String> args;
+
+    private Item(String method, String object, Map<String, String> data, String returnFields) {
+      this.method = method;
+      this.object = object;
+      this.data = data;
+      this.args = returnFields != null ? Collections.singletonMap("_return_fields", returnFields) : null;
+    }
+
+    public static Item createCname(String name, String canonical) {
+      Map<String, String> data = new LinkedHashMap<>();
+      data.put("name", name);
+      data.put("canonical", canonical);
+      return new Item("POST", "record:cname", data, CNAME_FIELDS);
+    }
+
+    public static Item createARec(String name, String ipv4Addr) {
+      Map<String, String> data = new LinkedHashMap<>();
+      data.put("name", name);
+      data.put("ipv4addr", ipv4Addr);
+      return new Item("POST", "record:a", data, A_FIELDS);
+    }
+
+    public static Item modifyARec(String ref, String ipv4Addr) {
+      Map<String, String> data = new LinkedHashMap<>();
+      data.put("ipv4addr", ipv4Addr);
+      return new Item("PUT", ref, data, A_FIELDS);
+    }
+
+    public static Item delete(String ref) {
+      return new Item("DELETE", ref, null, null);
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getObject() {
+      return object;
+    }
+
+    public Map<String, String> getData() {
+      return data;
+    }
+
+    public Map<String, String> getArgs() {
+      return args;
+    }
+
+    @Override
+    public String toString() {
+      return method + " " + object + (data != null ? " " + data : "");
+    }
+  }
+
+}
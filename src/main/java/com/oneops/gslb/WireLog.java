@@ -0,0 +1,228 @@
+package com.oneops.gslb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.apache.log4j.Logger;
+
+/*
+ * wire logging for torbit calls. Bodies are truncated to maxBodyBytes and only that much of a
+ * response is buffered. Calls are sampled per path prefix and can be limited to slow calls, failed
+ * calls are always logged. The sig query parameter and auth headers are redacted.
+ */
+public class WireLog implements Interceptor {
+
+  public enum Level { NONE, HEADERS, BODY }
+
+  private static final Logger logger = Logger.getLogger(WireLog.class);
+
+  private static final String REDACTED = "redacted";
+
+  private static final WireLog defaultLog = builder().build();
+
+  private final Level level;
+  private final long maxBodyBytes;
+  private final double sampleRate;
+  private final TreeMap<String, Double> pathSampleRates;
+  private final long slowCallMillis;
+  private final Set<String> redactedHeaders;
+  private final Set<String> redactedQueryParameters;
+  private final Consumer<String> sink;
+
+  private WireLog(Builder builder) {
+    this.level = builder.level;
+    this.maxBodyBytes = builder.maxBodyBytes;
+    this.sampleRate = builder.sampleRate;
+    this.pathSampleRates = new TreeMap<>(builder.pathSampleRates);
+    this.slowCallMillis = builder.slowCallMillis;
+    this.redactedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    this.redactedHeaders.addAll(builder.redactedHeaders);
+    this.redactedQueryParameters = new TreeSet<>(builder.redactedQueryParameters);
+    this.sink = builder.sink;
+  }
+
+  public static WireLog defaultLog() {
+    return defaultLog;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (level == Level.NONE || (sink == null && !logger.isInfoEnabled())) {
+      return chain.proceed(request);
+    }
+    boolean sampled = isSampled(request.url().encodedPath());
+    long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException e) {
+      log(requestLog(request).append("<-- failed after ").append(tookMillis(start)).append("ms : ")
+          .append(e.getMessage()).toString());
+      throw e;
+    }
+    long took = tookMillis(start);
+    if (response.isSuccessful() && (!sampled || took < slowCallMillis)) {
+      return response;
+    }
+    StringBuilder log = requestLog(request);
+    log.append("<-- ").append(response.code()).append(' ').append(response.message()).append(' ')
+        .append(redact(response.request().url())).append(" (").append(took).append("ms)\n");
+    appendHeaders(log, response.headers());
+    if (level == Level.BODY) {
+      appendBody(log, response.peekBody(maxBodyBytes), response.body());
+    }
+    log(log.toString());
+    return response;
+  }
+
+  private StringBuilder requestLog(Request request) throws IOException {
+    StringBuilder log = new StringBuilder();
+    log.append("--> ").append(request.method()).append(' ').append(redact(request.url())).append('\n');
+    appendHeaders(log, request.headers());
+    RequestBody body = request.body();
+    if (level == Level.BODY && body != null) {
+      Buffer buffer = new Buffer();
+      body.writeTo(buffer);
+      long size = buffer.size();
+      log.append(buffer.readString(Math.min(size, maxBodyBytes), StandardCharsets.UTF_8));
+      appendTruncation(log, size);
+      log.append('\n');
+    }
+    return log;
+  }
+
+  private void appendHeaders(StringBuilder log, Headers headers) {
+    for (int i = 0; i < headers.size(); i++) {
+      String name = headers.name(i);
+      log.append(name).append(": ")
+          .append(redactedHeaders.contains(name) ? REDACTED : headers.value(i)).append('\n');
+    }
+  }
+
+  private void appendBody(StringBuilder log, ResponseBody peeked, ResponseBody body) throws IOException {
+    log.append(peeked.string());
+    appendTruncation(log, body != null ? body.contentLength() : -1);
+  }
+
+  private void appendTruncation(StringBuilder log, long size) {
+    if (size > maxBodyBytes) {
+      log.append("... (").append(size - maxBodyBytes).append(" more bytes)");
+    }
+  }
+
+  private String redact(HttpUrl url) {
+    HttpUrl.Builder builder = null;
+    for (String name : redactedQueryParameters) {
+      if (url.queryParameter(name) != null) {
+        builder = builder != null ? builder : url.newBuilder();
+        builder.setQueryParameter(name, REDACTED);
+      }
+    }
+    return builder != null ? builder.build().toString() : url.toString();
+  }
+
+  boolean isSampled(String path) {
+    double rate = sampleRate;
+    //longest matching prefix wins
+    for (Map.Entry<String, Double> entry : pathSampleRates.descendingMap().entrySet()) {
+      if (path.startsWith(entry.getKey())) {
+        rate = entry.getValue();
+        break;
+      }
+    }
+    return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  private void log(String message) {
+    if (sink != null) {
+      sink.accept(message);
+    }
+    else {
+      logger.info(message);
+    }
+  }
+
+  private static long tookMillis(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  public static class Builder {
+    private Level level = Level.BODY;
+    private long maxBodyBytes = 4096;
+    private double sampleRate = 1;
+    private final Map<String, Double> pathSampleRates = new TreeMap<>();
+    private long slowCallMillis;
+    private Set<String> redactedHeaders = new TreeSet<>(Arrays.asList(SignInterceptor.AUTH_HEADER_NAME, "Authorization"));
+    private Set<String> redactedQueryParameters = new TreeSet<>(Arrays.asList("sig"));
+    private Consumer<String> sink;
+
+    public Builder level(Level level) {
+      this.level = level;
+      return this;
+    }
+
+    public Builder maxBodyBytes(long maxBodyBytes) {
+      this.maxBodyBytes = maxBodyBytes;
+      return this;
+    }
+
+    public Builder sampleRate(double sampleRate) {
+      this.sampleRate = sampleRate;
+      return this;
+    }
+
+    public Builder sampleRate(String pathPrefix, double sampleRate) {
+      this.pathSampleRates.put(pathPrefix, sampleRate);
+      return this;
+    }
+
+    public Builder slowCallMillis(long slowCallMillis) {
+      this.slowCallMillis = slowCallMillis;
+      return this;
+    }
+
+    public Builder redactedHeaders(String... headers) {
+      this.redactedHeaders = new TreeSet<>(Arrays.asList(headers));
+      return this;
+    }
+
+    public Builder redactedQueryParameters(String... parameters) {
+      this.redactedQueryParameters = new TreeSet<>(Arrays.asList(parameters));
+      return this;
+    }
+
+    public Builder sink(Consumer<String> sink) {
+      this.sink = sink;
+      return this;
+    }
+
+    public WireLog build() {
+      return new WireLog(this);
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+package com.oneops.gslb;
+
+import com.oneops.infoblox.model.a.ARec;
+import com.oneops.infoblox.model.cname.CNAME;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/*
+ * cname and a records of one infoblox zone, loaded with one paged regex search per record type.
+ * Lookups of names outside the zone, or removed with forget after a write, return null and
+ * callers fall back to point queries.
+ */
+public class ZoneSnapshot {
+
+  private static final Pattern REGEX_CHARS = Pattern.compile("([\\\\.\\[\\]{}()*+?^$|-])");
+
+  private final String zone;
+  private final long loadedAt;
+  private final Map<String, List<CNAME>> cnames = new HashMap<>();
+  private final Map<String, List<ARec>> aRecs = new HashMap<>();
+  private final Set<String> forgotten = ConcurrentHashMap.newKeySet();
+
+  ZoneSnapshot(String zone, List<CNAME> cnames, List<ARec> aRecs, long loadedAt) {
+    this.zone = zone.toLowerCase(Locale.ROOT);
+    this.loadedAt = loadedAt;
+    if (cnames != null) {
+      cnames.forEach(c -> this.cnames.computeIfAbsent(key(c.name()), k -> new ArrayList<>()).add(c));
+    }
+    if (aRecs != null) {
+      aRecs.forEach(a -> this.aRecs.computeIfAbsent(key(a.name()), k -> new ArrayList<>()).add(a));
+    }
+  }
+
+  public static ZoneSnapshot load(WapiRequestClient client, String zone, int pageSize) throws IOException {
+    return new ZoneSnapshot(zone, client.searchCNameRec(nameRegex(zone), pageSize),
+        client.searchARec(nameRegex(zone), pageSize), System.currentTimeMillis());
+  }
+
+  //matches the names below the zone, e.g. \.prod\.xyz\.com$
+  static String nameRegex(String zone) {
+    return "\\." + REGEX_CHARS.matcher(zone.toLowerCase(Locale.ROOT)).replaceAll("\\\\$1") + "$";
+  }
+
+  public boolean covers(String name) {
+    return name != null && key(name).endsWith("." + zone);
+  }
+
+  //records of the name, an empty list when the zone has none and null when the name is not covered
+  public List<CNAME> cnames(String name) {
+    return lookup(cnames, name);
+  }
+
+  public List<ARec> aRecs(String name) {
+    return lookup(aRecs, name);
+  }
+
+  //the name is looked up with point queries until the next load
+  public void forget(String name) {
+    if (covers(name)) {
+      forgotten.add(key(name));
+    }
+  }
+
+  public String getZone() {
+    return zone;
+  }
+
+  public long getLoadedAt() {
+    return loadedAt;
+  }
+
+  //number of names with records
+  public int size() {
+    return cnames.size() + aRecs.size();
+  }
+
+  private <T> List<T> lookup(Map<String, List<T>> records, String name) {
+    if (!covers(name) || forgotten.contains(key(name))) {
+      return null;
+    }
+    List<T> list = records.get(key(name));
+    return list != null ? Collections.unmodifiableList(list) : Collections.emptyList();
+  }
+
+  private static String key(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+}
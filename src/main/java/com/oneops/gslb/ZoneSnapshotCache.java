@@ -0,0 +1,143 @@
+package com.oneops.gslb;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.log4j.Logger;
+
+/*
+ * zone snapshots per infoblox endpoint and zone, reloaded once older than maxAgeMillis. Concurrent
+ * loads of the same zone share one load. A failed load is not retried for maxAgeMillis, get
+ * returns null meanwhile and callers use point queries. Zones are read pageSize records at a time.
+ */
+public class ZoneSnapshotCache {
+
+  private static final Logger logger = Logger.getLogger(ZoneSnapshotCache.class);
+
+  private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  //the most wapi returns in one page
+  private static final int DEFAULT_PAGE_SIZE = 1000;
+
+  private static final ZoneSnapshotCache sharedCache = new ZoneSnapshotCache();
+
+  private final ConcurrentMap<String, Zone> zones = new ConcurrentHashMap<>();
+  private final long maxAgeMillis;
+  private final LongSupplier clock;
+  private volatile int pageSize = DEFAULT_PAGE_SIZE;
+
+  public ZoneSnapshotCache() {
+    this(DEFAULT_MAX_AGE_MILLIS);
+  }
+
+  public ZoneSnapshotCache(long maxAgeMillis) {
+    this(maxAgeMillis, System::currentTimeMillis);
+  }
+
+  ZoneSnapshotCache(long maxAgeMillis, LongSupplier clock) {
+    this.maxAgeMillis = maxAgeMillis;
+    this.clock = clock;
+  }
+
+  public static ZoneSnapshotCache shared() {
+    return sharedCache;
+  }
+
+  public ZoneSnapshot get(String endpoint, String zone, Loader loader) {
+    if (zone == null || zone.isEmpty()) {
+      return null;
+    }
+    return zones.computeIfAbsent(key(endpoint, zone), k -> new Zone()).get(endpoint, zone, loader);
+  }
+
+  //drops the name from the snapshots of the endpoint after a write
+  public void forget(String endpoint, String name) {
+    String prefix = endpoint + "|";
+    zones.forEach((key, zone) -> {
+      ZoneSnapshot snapshot = zone.snapshot;
+      if (key.startsWith(prefix) && snapshot != null) {
+        snapshot.forget(name);
+      }
+    });
+  }
+
+  public void invalidate(String endpoint, String zone) {
+    zones.remove(key(endpoint, zone));
+  }
+
+  public long getMaxAgeMillis() {
+    return maxAgeMillis;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize(int pageSize) {
+    if (pageSize < 1 || pageSize > DEFAULT_PAGE_SIZE) {
+      throw new IllegalArgumentException("pageSize should be between 1 and " + DEFAULT_PAGE_SIZE + " : " + pageSize);
+    }
+    this.pageSize = pageSize;
+  }
+
+  private String key(String endpoint, String zone) {
+    return endpoint + "|" + zone.toLowerCase();
+  }
+
+  public interface Loader {
+    ZoneSnapshot load() throws Exception;
+  }
+
+  private class Zone {
+    private volatile ZoneSnapshot snapshot;
+    private volatile long loadedAt;
+    private volatile long retryAt;
+    private CompletableFuture<ZoneSnapshot> inFlight;
+
+    ZoneSnapshot get(String endpoint, String zone, Loader loader) {
+      ZoneSnapshot current = snapshot;
+      long now = clock.getAsLong();
+      if (current != null && now - loadedAt <= maxAgeMillis) {
+        return current;
+      }
+      if (now < retryAt) {
+        return null;
+      }
+      CompletableFuture<ZoneSnapshot> future;
+      boolean loading = false;
+      synchronized (this) {
+        if (inFlight == null) {
+          inFlight = new CompletableFuture<>();
+          loading = true;
+        }
+        future = inFlight;
+      }
+      if (loading) {
+        try {
+          ZoneSnapshot loaded = loader.load();
+          loadedAt = clock.getAsLong();
+          snapshot = loaded;
+          logger.info("loaded " + loaded.size() + " names of zone " + zone + " from " + endpoint);
+          future.complete(loaded);
+        } catch (Exception e) {
+          logger.warn("loading zone " + zone + " from " + endpoint + " failed, using point queries", e);
+          retryAt = clock.getAsLong() + maxAgeMillis;
+          snapshot = null;
+          future.completeExceptionally(e);
+        } finally {
+          synchronized (this) {
+            inFlight = null;
+          }
+        }
+      }
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        return null;
+      }
+    }
+  }
+
+}
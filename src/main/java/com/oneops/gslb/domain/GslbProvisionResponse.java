@@ -1,5 +1,6 @@
 package com.oneops.gslb.domain;
 
+import com.oneops.gslb.CheckOutcome;
 import com.oneops.gslb.Status;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,6 +12,11 @@ public class GslbProvisionResponse extends GslbResponse {
   private String mtdVersion;
   private String glb;
   private String mtdDeploymentId;
+  //no new version or deployment was created as the mtd host already matched
+  private boolean mtdHostUnchanged;
+  private WriteReceipt writeReceipt;
+  //set by checkStatus only
+  private CheckOutcome checkOutcome;
 
   public static GslbProvisionResponse failedResponse(String message) {
     GslbProvisionResponse response = new GslbProvisionResponse();
@@ -59,4 +65,28 @@ public class GslbProvisionResponse extends GslbResponse {
     this.mtdDeploymentId = mtdDeploymentId;
   }
 
+  public boolean isMtdHostUnchanged() {
+    return mtdHostUnchanged;
+  }
+
+  public void setMtdHostUnchanged(boolean mtdHostUnchanged) {
+    this.mtdHostUnchanged = mtdHostUnchanged;
+  }
+
+  public CheckOutcome getCheckOutcome() {
+    return checkOutcome;
+  }
+
+  public void setCheckOutcome(CheckOutcome checkOutcome) {
+    this.checkOutcome = checkOutcome;
+  }
+
+  public WriteReceipt getWriteReceipt() {
+    return writeReceipt;
+  }
+
+  public void setWriteReceipt(WriteReceipt writeReceipt) {
+    this.writeReceipt = writeReceipt;
+  }
+
 }
@@ -1,11 +1,14 @@
 package com.oneops.gslb.domain;
 
 import com.oneops.gslb.Status;
+import java.util.List;
 
 public class GslbResponse {
 
   protected Status status;
   protected String failureMessage;
+  //phases in the order they started, nested phases follow the phase containing them
+  protected List<PhaseTiming> phaseTimings;
 
   public static GslbResponse failedResponse(String message) {
     GslbResponse response = new GslbResponse();
@@ -30,4 +33,12 @@ public class GslbResponse {
     this.failureMessage = failureMessage;
   }
 
+  public List<PhaseTiming> getPhaseTimings() {
+    return phaseTimings;
+  }
+
+  public void setPhaseTimings(List<PhaseTiming> phaseTimings) {
+    this.phaseTimings = phaseTimings;
+  }
+
 }
@@ -0,0 +1,65 @@
+package com.oneops.gslb.domain;
+
+public class PhaseTiming {
+
+  private String phase;
+  //epoch millis when the phase started
+  private long start;
+  private long durationMillis;
+  private int remoteCalls;
+  private int retries;
+
+  public PhaseTiming() {
+  }
+
+  public PhaseTiming(String phase, long start) {
+    this.phase = phase;
+    this.start = start;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  public void setPhase(String phase) {
+    this.phase = phase;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public void setStart(long start) {
+    this.start = start;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public void setDurationMillis(long durationMillis) {
+    this.durationMillis = durationMillis;
+  }
+
+  public int getRemoteCalls() {
+    return remoteCalls;
+  }
+
+  public void setRemoteCalls(int remoteCalls) {
+    this.remoteCalls = remoteCalls;
+  }
+
+  public int getRetries() {
+    return retries;
+  }
+
+  public void setRetries(int retries) {
+    this.retries = retries;
+  }
+
+  @Override
+  public String toString() {
+    return phase + " " + durationMillis + "ms, calls " + remoteCalls + ", retries " + retries;
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.oneops.gslb.domain;
+
+import com.oneops.gslb.mtd.v2.domain.MtdHost;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * what torbit and infoblox returned while a gslb was created: the mtd host read back when it was
+ * unchanged, torbit answers host writes without the host, and the cnames and a records returned by
+ * record writes or found already matching. Nothing built from the request itself is kept, so parts
+ * missing here are read back by the verifier. Names are kept lower case. Records written
+ * concurrently are added concurrently.
+ */
+public class WriteReceipt {
+
+  private volatile MtdHost mtdHost;
+  private final Map<String, String> cnames = new ConcurrentHashMap<>();
+  private final Map<String, String> aRecords = new ConcurrentHashMap<>();
+
+  public MtdHost getMtdHost() {
+    return mtdHost;
+  }
+
+  public void setMtdHost(MtdHost mtdHost) {
+    this.mtdHost = mtdHost;
+  }
+
+  public void addCname(String alias, String canonical) {
+    cnames.put(alias.toLowerCase(Locale.ROOT), canonical);
+  }
+
+  public void addARecord(String name, String ipv4Addr) {
+    aRecords.put(name.toLowerCase(Locale.ROOT), ipv4Addr);
+  }
+
+  //canonical name of the alias, null when no write or lookup of it was acknowledged
+  public String getCname(String alias) {
+    return cnames.get(alias.toLowerCase(Locale.ROOT));
+  }
+
+  public String getARecord(String name) {
+    return aRecords.get(name.toLowerCase(Locale.ROOT));
+  }
+
+  public Map<String, String> getCnames() {
+    return Collections.unmodifiableMap(cnames);
+  }
+
+  public Map<String, String> getARecords() {
+    return Collections.unmodifiableMap(aRecords);
+  }
+
+}
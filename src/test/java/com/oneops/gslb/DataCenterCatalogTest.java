@@ -0,0 +1,107 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataCenterCatalogTest {
+
+  private static final String DATA_CENTERS = "{\"data_centers\":[{\"id\":5,\"name\":\"dc1\",\"clouds\":["
+      + "{\"id\":10,\"name\":\"cl1\",\"data_center_id\":5},{\"id\":12,\"name\":\"cl2\",\"data_center_id\":5}]}]}";
+
+  MockWebServer server = new MockWebServer();
+  AtomicLong time = new AtomicLong(0);
+  DataCenterCatalog catalog = new DataCenterCatalog(1000, 100, time::get);
+  TorbitClient client;
+  String endpoint;
+
+  @Before
+  public void setup() throws Exception {
+    server.start();
+    endpoint = server.url("/").toString();
+    client = new TorbitClient(TorbitConfig.create(endpoint, "test-oo", "test_auth", 101, "glb.xyz.com"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  @Test
+  public void shouldLoadOnceForConcurrentMisses() throws Exception {
+    server.enqueue(dataCenters().setBodyDelay(200, TimeUnit.MILLISECONDS));
+    List<CompletableFuture<Map<String, DcCloud>>> futures = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      futures.add(catalog.getCloudsAsync(endpoint, client, Arrays.asList("cl1", "cl2")));
+    }
+    for (CompletableFuture<Map<String, DcCloud>> future : futures) {
+      assertThat(future.get(5, TimeUnit.SECONDS).get("cl2").id(), is(12));
+    }
+    assertThat(server.getRequestCount(), is(1));
+  }
+
+  @Test
+  public void shouldNotReloadForUnknownCloudUntilNegativeTtlExpires() throws Exception {
+    server.enqueue(dataCenters());
+    server.enqueue(dataCenters());
+    List<String> clouds = Arrays.asList("cl1", "cl3");
+    assertThat(catalog.getClouds(endpoint, client, clouds).containsKey("cl3"), is(false));
+    assertThat(catalog.getClouds(endpoint, client, clouds).containsKey("cl3"), is(false));
+    assertThat(server.getRequestCount(), is(1));
+
+    time.set(200);
+    catalog.getClouds(endpoint, client, clouds);
+    assertThat(server.getRequestCount(), is(2));
+  }
+
+  @Test
+  public void shouldServeStaleCatalogWhileRefreshing() throws Exception {
+    catalog.put(endpoint, Collections.singletonList(DcCloud.create(10, "cl1", 5, null)));
+    server.enqueue(dataCenters());
+    time.set(2000);
+    Map<String, DcCloud> clouds = catalog.getClouds(endpoint, client, Collections.singletonList("cl1"));
+    assertThat(clouds.containsKey("cl2"), is(false));
+
+    server.takeRequest(5, TimeUnit.SECONDS);
+    for (int i = 0; i < 50 && !clouds.containsKey("cl2"); i++) {
+      Thread.sleep(20);
+      clouds = catalog.getClouds(endpoint, client, Collections.singletonList("cl1"));
+    }
+    assertThat(clouds.containsKey("cl2"), is(true));
+    assertThat(server.getRequestCount(), is(1));
+  }
+
+  @Test
+  public void shouldFailWithTorbitErrors() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(400)
+        .setBody("{\"errors\":[{\"error_code\":\"BAD_REQUEST\",\"short_message\":\"bad tenant\"}]}"));
+    try {
+      catalog.getClouds(endpoint, client, Collections.singletonList("cl1"));
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getMessage().startsWith("Failed while loading data centers"), is(true));
+      assertThat(e.getMessage().contains("BAD_REQUEST"), is(true));
+    }
+  }
+
+  private MockResponse dataCenters() {
+    return new MockResponse().setResponseCode(200).setBody(DATA_CENTERS);
+  }
+
+}
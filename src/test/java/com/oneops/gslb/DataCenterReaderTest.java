@@ -0,0 +1,43 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import java.io.StringReader;
+import java.util.Map;
+import org.junit.Test;
+
+public class DataCenterReaderTest {
+
+  @Test
+  public void shouldIndexCloudsByName() throws Exception {
+    String json = "{\"links\":{\"self\":\"/api/v2/data-centers\"},\"data_centers\":["
+        + "{\"id\":5,\"name\":\"dc1\",\"clouds\":["
+        + "{\"id\":10,\"name\":\"cl1\",\"data_center_id\":5,\"cidrs\":[\"10.0.0.0/8\",\"11.0.0.0/8\"]},"
+        + "{\"id\":12,\"name\":\"cl2\",\"data_center_id\":5,\"extra\":{\"a\":[1,2]}}]},"
+        + "{\"id\":6,\"name\":\"dc2\",\"clouds\":[{\"id\":20,\"name\":\"cl3\",\"data_center_id\":6,\"cidrs\":null}]}],"
+        + "\"metadata\":{\"count\":2}}";
+    Map<String, DcCloud> clouds = DataCenterReader.read(new StringReader(json));
+    assertThat(clouds.size(), is(3));
+    assertThat(clouds.get("cl1"), is(DcCloud.create(10, "cl1", 5, null)));
+    assertThat(clouds.get("cl2"), is(DcCloud.create(12, "cl2", 5, null)));
+    assertThat(clouds.get("cl3"), is(DcCloud.create(20, "cl3", 6, null)));
+  }
+
+  @Test
+  public void shouldUseDataCenterIdWhenMissingOnCloud() throws Exception {
+    String json = "{\"data_centers\":[{\"clouds\":[{\"id\":10,\"name\":\"cl1\"}],\"id\":5},"
+        + "{\"id\":6,\"clouds\":[{\"id\":20,\"name\":\"cl2\"}]}]}";
+    Map<String, DcCloud> clouds = DataCenterReader.read(new StringReader(json));
+    assertThat(clouds.get("cl1").dataCenterId(), is(5));
+    assertThat(clouds.get("cl2").dataCenterId(), is(6));
+  }
+
+  @Test
+  public void shouldReadEmptyCatalog() throws Exception {
+    assertThat(DataCenterReader.read(new StringReader("{\"data_centers\":null}")).isEmpty(), is(true));
+    assertThat(DataCenterReader.read(new StringReader("{}")).isEmpty(), is(true));
+  }
+
+}
@@ -15,10 +15,18 @@ import com.google.common.collect.Lists;
 import com.oneops.gslb.domain.CloudARecord;
 import com.oneops.gslb.domain.Gslb;
 import com.oneops.gslb.domain.ProvisionedGslb;
+import com.oneops.infoblox.model.cname.CNAME;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,12 +35,12 @@ public class DnsHandlerTest {
 
   DnsHandler dnsHandler = new DnsHandler();
   DnsMock dnsMock = new DnsMock();
+  InfobloxClientProvider clientProvider = mock(InfobloxClientProvider.class);
 
   @Before
   public void setup() {
-    InfobloxClientProvider mock = mock(InfobloxClientProvider.class);
-    dnsHandler.setInfobloxClientProvider(mock);
-    when(mock.getInfobloxClient(any(), any(), any())).thenReturn(dnsMock);
+    dnsHandler.setInfobloxClientProvider(clientProvider);
+    when(clientProvider.getInfobloxClient(any(), any(), any())).thenReturn(dnsMock);
   }
 
   @Test
@@ -118,4 +126,85 @@ public class DnsHandlerTest {
     assertTrue(arecs.size() == 1 && "plt4.env.a1.org.c2.prod.xyz.com".equals(arecs.get(0)));
   }
 
+  @Test
+  public void addCnamesWithBoundedConcurrency() {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    DnsMock slowMock = new DnsMock() {
+      @Override
+      public CNAME createCNameRec(String aliasName, String canonicalName) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        inFlight.decrementAndGet();
+        return super.createCNameRec(aliasName, canonicalName);
+      }
+    };
+    when(clientProvider.getInfobloxClient(any(), any(), any())).thenReturn(slowMock);
+    dnsHandler.setMaxConcurrencyPerGrid(3);
+    List<String> aliases = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      aliases.add("alias" + i + ".xyz.com");
+    }
+    Gslb gslb = getProvisingRequest("plt", "env.a1.org", "10.1.1.10", "cl1", "prod.xyz.com",
+        null, aliases, null, null, null);
+
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb, context);
+
+    assertThat(slowMock.getNewCnames().size(), is(12));
+    assertThat(maxInFlight.get() > 1, is(true));
+    assertThat(maxInFlight.get() <= 3, is(true));
+    Map<String, String> entries = context.getProvisioningResponse().getDnsEntries();
+    assertThat(entries.size(), is(13));
+    assertEquals("plt.env.a1.org.gslb.xyz.com", entries.get("alias11.xyz.com"));
+  }
+
+  @Test
+  public void addCnamesOnExecutorSaturatedByCallers() throws Exception {
+    //callers run on the executor the records are reconciled on and take all of its threads
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      dnsHandler.setExecutor(executor);
+      List<Future<ProvisionContext>> futures = new ArrayList<>();
+      for (int g = 0; g < 4; g++) {
+        List<String> aliases = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+          aliases.add("alias" + i + ".g" + g + ".xyz.com");
+        }
+        Gslb gslb = getProvisingRequest("plt", "env.a1.org", "10.1.1.10", "cl1", "prod.xyz.com",
+            null, aliases, null, null, null);
+        futures.add(executor.submit(() -> {
+          ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+          dnsHandler.setupDnsEntries(gslb, context);
+          return context;
+        }));
+      }
+      for (Future<ProvisionContext> future : futures) {
+        assertThat(future.get(10, TimeUnit.SECONDS).getResponse().getStatus() != Status.FAILED, is(true));
+      }
+      assertThat(dnsMock.getNewCnames().size(), is(48));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void addCnamesFailsOnConflictingAlias() {
+    dnsMock.existingCnames.put("test5.xyz.com", "other.gslb.xyz.com");
+    Gslb gslb = getProvisingRequest("plt", "env.a1.org", "10.1.1.10", "cl1", "prod.xyz.com",
+        null, Lists.newArrayList("test5.xyz.com", "test6.xyz.com"),
+        Collections.singletonList(CloudARecord.create("cl1", "plt.env.a1.org.c1.prod.xyz.com")), null, null);
+
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb, context);
+
+    assertThat(context.getResponse().getStatus(), is(Status.FAILED));
+    assertThat(context.getResponse().getFailureMessage(), is("alias test5.xyz.com exists already with a different cname"));
+    assertThat(dnsMock.getNewArecs().size(), is(0));
+  }
+
 }
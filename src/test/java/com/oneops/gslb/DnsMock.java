@@ -6,18 +6,18 @@ import com.oneops.infoblox.model.cname.CNAME;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DnsMock extends InfobloxClient {
 
-  Map<String, String> existingCnames = new HashMap<>();
-  Map<String, String> existingARecs = new HashMap<>();
-  Map<String, String> newCnames = new HashMap<>();
-  Map<String, String> newArecs = new HashMap<>();
-  List<String> deleteCnames = new ArrayList<>();
-  List<String> deleteArecs = new ArrayList<>();
+  Map<String, String> existingCnames = new ConcurrentHashMap<>();
+  Map<String, String> existingARecs = new ConcurrentHashMap<>();
+  Map<String, String> newCnames = new ConcurrentHashMap<>();
+  Map<String, String> newArecs = new ConcurrentHashMap<>();
+  List<String> deleteCnames = Collections.synchronizedList(new ArrayList<>());
+  List<String> deleteArecs = Collections.synchronizedList(new ArrayList<>());
 
 
   @Override
@@ -0,0 +1,219 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.DriftReconciler.Outcome;
+import com.oneops.gslb.DriftReconciler.Result;
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.HealthCheck;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.Protocol;
+import com.oneops.infoblox.InfobloxClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DriftReconcilerTest {
+
+  private static final String CNAME = "p1.e1.a1.org1.glb.xyz.com";
+
+  FakeTorbitServer torbit = new FakeTorbitServer();
+  FakeInfobloxServer infoblox = new FakeInfobloxServer();
+  GslbProvider provider = new GslbProvider();
+  SimpleMetrics metrics = new SimpleMetrics();
+  DriftReconciler reconciler;
+
+  @Before
+  public void setup() throws Exception {
+    torbit.addDataCenter("dc1", "cl1", "cl2").start();
+    infoblox.start();
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    provider.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+    provider.getDnsHandler().setInfobloxClientProvider(new InfobloxClientProvider());
+    provider.setMetrics(metrics);
+    reconciler = new DriftReconciler(provider);
+    assertThat(provider.create(gslb("10.1.1.1")).getFailureMessage(), nullValue());
+    reconciler.register("p1", gslb("10.1.1.1"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reconciler.shutdown();
+    torbit.shutdown();
+    infoblox.shutdown();
+  }
+
+  @Test
+  public void shouldReportGslbInSync() {
+    Result result = reconciler.reconcile("p1");
+    assertThat(result.getMtd(), is(Outcome.IN_SYNC));
+    assertThat(result.getDns(), is(Outcome.IN_SYNC));
+    assertThat(result.getFailureMessage(), nullValue());
+    assertThat(reconciler.lastResult("p1"), is(result));
+    assertThat(reconciler.reconcile("unknown"), nullValue());
+  }
+
+  @Test
+  public void shouldRepairOnlyDriftedDnsEntries() throws Exception {
+    client().deleteCNameRec("p1.xyz.com");
+    int torbitRequests = torbit.requestCount();
+    Result result = reconciler.reconcile("p1");
+    assertThat(result.getMtd(), is(Outcome.IN_SYNC));
+    assertThat(result.getDns(), is(Outcome.REPAIRED));
+    assertThat(infoblox.cnames("p1.xyz.com"), is(Collections.singletonList(CNAME)));
+    //only the mtd host read of the check
+    assertThat(torbit.requestCount() - torbitRequests, is(1));
+    assertThat(reconciler.reconcile("p1").getDns(), is(Outcome.IN_SYNC));
+  }
+
+  @Test
+  public void shouldRepairDriftedMtdHost() {
+    //the desired state changed, the mtd targets are not matching any more
+    reconciler.register("p1", gslb("10.1.1.9"));
+    int infobloxRequests = infoblox.requestCount();
+    Result result = reconciler.reconcile("p1");
+    assertThat(result.getMtd(), is(Outcome.REPAIRED));
+    assertThat(result.getDns(), is(Outcome.IN_SYNC));
+    assertThat(torbit.mtdHost(".e1.a1.org1.glb.xyz.com", "p1").mtdTargets().stream()
+        .anyMatch(t -> t.mtdTargetHost().equals("10.1.1.9")), is(true));
+    assertThat(infoblox.requestCount() - infobloxRequests, is(1));
+    assertThat(reconciler.reconcile("p1").getMtd(), is(Outcome.IN_SYNC));
+  }
+
+  @Test
+  public void shouldOnlyReportDriftWithoutRepair() throws Exception {
+    reconciler.setRepair(false);
+    client().deleteCNameRec("p1.xyz.com");
+    Result result = reconciler.reconcile("p1");
+    assertThat(result.getDns(), is(Outcome.DRIFTED));
+    assertThat(result.getFailureMessage().contains("cname not created properly p1.xyz.com"), is(true));
+    assertThat(infoblox.cnames("p1.xyz.com").isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldNotRepairWhenChecksFail() {
+    //a torbit error on the mtd host read is not drift, nothing is written
+    reconciler.register("p1", gslb("10.1.1.9"));
+    torbit.failureRate(1.0, 500);
+    int torbitRequests = torbit.requestCount();
+    Result result = reconciler.reconcile("p1");
+    assertThat(result.getMtd(), is(Outcome.CHECK_FAILED));
+    assertThat(result.getFailureMessage().contains("could not get mtd host for this platform"), is(true));
+    assertThat(torbit.requestCount() - torbitRequests, is(1));
+    torbit.failureRate(0, 500);
+    assertThat(torbit.mtdHost(".e1.a1.org1.glb.xyz.com", "p1").mtdTargets().stream()
+        .anyMatch(t -> t.mtdTargetHost().equals("10.1.1.9")), is(false));
+
+    infoblox.failureRate(1.0, 500);
+    int infobloxRequests = infoblox.requestCount();
+    result = reconciler.reconcile("p1");
+    assertThat(result.getDns(), is(Outcome.CHECK_FAILED));
+    assertThat(infoblox.requestCount() - infobloxRequests > 0, is(true));
+    infoblox.failureRate(0, 500);
+    assertThat(infoblox.cnames("p1.xyz.com"), is(Collections.singletonList(CNAME)));
+    assertThat(metrics.count(Metrics.DRIFT, "part", "mtd", "outcome", "check_failed"), is(1L));
+  }
+
+  @Test
+  public void shouldReportFailedRepair() {
+    //the cname is owned by another gslb, setup refuses to take it over
+    infoblox.addCname("p2.xyz.com", "other.e1.a1.org1.glb.xyz.com");
+    reconciler.register("p1", gslb("10.1.1.1", "p1.xyz.com", "p2.xyz.com"));
+    Result result = reconciler.reconcile("p1");
+    assertThat(result.getMtd(), is(Outcome.IN_SYNC));
+    assertThat(result.getDns(), is(Outcome.REPAIR_FAILED));
+    assertThat(result.getFailureMessage(), notNullValue());
+    assertThat(infoblox.cnames("p2.xyz.com"), is(Collections.singletonList("other.e1.a1.org1.glb.xyz.com")));
+  }
+
+  @Test
+  public void shouldCheckRegisteredGslbsPeriodically() throws Exception {
+    reconciler.setIntervalMillis(100);
+    client().deleteCNameRec("p1.xyz.com");
+    reconciler.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (infoblox.cnames("p1.xyz.com").isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(infoblox.cnames("p1.xyz.com"), is(Collections.singletonList(CNAME)));
+    while (reconciler.lastResult("p1") == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(reconciler.lastResult("p1"), notNullValue());
+
+    reconciler.unregister("p1");
+    assertThat(reconciler.isRegistered("p1"), is(false));
+    assertThat(metrics.count(Metrics.DRIFT, "part", "dns", "outcome", "repaired"), is(1L));
+  }
+
+  @Test
+  public void shouldScheduleGslbsRegisteredWhileStartingOnce() throws Exception {
+    reconciler.setIntervalMillis(TimeUnit.HOURS.toMillis(1));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      CountDownLatch ready = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        String prefix = "g" + t + "-";
+        futures.add(executor.submit(() -> {
+          ready.await();
+          for (int i = 0; i < 500; i++) {
+            reconciler.register(prefix + i, gslb("10.1.1.1"));
+          }
+          return null;
+        }));
+      }
+      ready.countDown();
+      reconciler.start();
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(reconciler.size(), is(2001));
+    assertThat(reconciler.pendingChecks(), is(2001));
+
+    //a restart starts one chain per gslb again, unregistered ones are dropped
+    reconciler.unregister("g0-0");
+    reconciler.shutdown();
+    reconciler.start();
+    reconciler.register("p1", gslb("10.1.1.1"));
+    assertThat(reconciler.pendingChecks(), is(2000));
+  }
+
+  private InfobloxClient client() {
+    return new InfobloxClientProvider().getInfobloxClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD);
+  }
+
+  private Gslb gslb(String primaryVip, String... cnames) {
+    List<String> aliases = cnames.length > 0 ? Arrays.asList(cnames) : Collections.singletonList("p1.xyz.com");
+    return Gslb.builder()
+        .app("p1")
+        .subdomain("e1.a1.org1")
+        .lbs(Arrays.asList(Lb.create("cl1", primaryVip, true), Lb.create("cl2", "10.1.1.2", false)))
+        .healthChecks(Collections.singletonList(HealthCheck.builder().protocol(Protocol.HTTP).port(80)
+            .path("/health").build()))
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbit.torbitConfig("glb.xyz.com"))
+        .infobloxConfig(infoblox.infobloxConfig("xyz.com"))
+        .cnames(aliases)
+        .logContextId("p1 ")
+        .build();
+  }
+
+}
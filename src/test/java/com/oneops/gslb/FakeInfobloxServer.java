@@ -0,0 +1,479 @@
+package com.oneops.gslb;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.oneops.gslb.domain.InfobloxConfig;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/*
+ * in-memory infoblox wapi for record:a and record:cname on a MockWebServer over https, so
+ * InfobloxClient is used as is with tlsVerify off. Supports name searches (exact, ~ regex and
+ * : case insensitive), create, modify and delete by reference, with the conflict and not found
+ * errors of the real grid. Searches without _paging fail past maxResults objects like wapi does, paged
+ * searches return next_page_id until the last page. Creates, modifies and deletes can also be sent to the request endpoint,
+ * whose items are applied in one transaction and answered with the _return_fields of their args,
+ * or only the reference when returnFields is off. Latency and failures can be injected for all
+ * requests.
+ */
+public class FakeInfobloxServer {
+
+  public static final String USER = "test-oo";
+  public static final String PASSWORD = "test_pwd";
+
+  private static final String KEY_STORE = "/fake-infoblox.jks";
+  private static final char[] KEY_STORE_PASSWORD = "changeit".toCharArray();
+  private static final String VIEW = "default";
+  private static final String CNAME = "record:cname";
+  private static final String A = "record:a";
+
+  private static final Gson gson = new Gson();
+
+  private final MockWebServer server = new MockWebServer();
+
+  private final ConcurrentMap<String, Record> records = new ConcurrentHashMap<>();
+  private final Map<String, String> users = new ConcurrentHashMap<>();
+  private final AtomicInteger ids = new AtomicInteger();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger multiRequests = new AtomicInteger();
+  //remaining results of paged searches by page id
+  private final ConcurrentMap<String, Page> pages = new ConcurrentHashMap<>();
+
+  private volatile long latencyMillis;
+  private volatile double failureRate;
+  private volatile int failureCode = 503;
+  private volatile int maxResults = 1000;
+  private volatile boolean returnFields = true;
+
+  public FakeInfobloxServer() {
+    users.put(USER, PASSWORD);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        requests.incrementAndGet();
+        MockResponse response = handle(request);
+        if (latencyMillis > 0) {
+          response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+        return response;
+      }
+    });
+  }
+
+  public FakeInfobloxServer start() throws IOException {
+    server.useHttps(sslContext().getSocketFactory(), false);
+    server.start();
+    return this;
+  }
+
+  public void shutdown() throws IOException {
+    server.shutdown();
+  }
+
+  //host and port, InfobloxClient adds the scheme and the wapi path
+  public String endPoint() {
+    return server.getHostName() + ":" + server.getPort();
+  }
+
+  public InfobloxConfig infobloxConfig(String zone) {
+    return InfobloxConfig.create(endPoint(), USER, PASSWORD, zone);
+  }
+
+  public FakeInfobloxServer latencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  //fraction of requests failing with failureCode before they are applied
+  public FakeInfobloxServer failureRate(double failureRate, int failureCode) {
+    this.failureRate = failureRate;
+    this.failureCode = failureCode;
+    return this;
+  }
+
+  //the most objects an unpaged search returns, and the largest page
+  public FakeInfobloxServer maxResults(int maxResults) {
+    this.maxResults = maxResults;
+    return this;
+  }
+
+  //whether request items get the fields they ask for back, wapi answers with references otherwise
+  public FakeInfobloxServer returnFields(boolean returnFields) {
+    this.returnFields = returnFields;
+    return this;
+  }
+
+  public FakeInfobloxServer addCname(String name, String canonical) {
+    add(CNAME, name, canonical);
+    return this;
+  }
+
+  public FakeInfobloxServer addARec(String name, String ipv4Addr) {
+    add(A, name, ipv4Addr);
+    return this;
+  }
+
+  //canonical names of the cname, an empty list when it does not exist
+  public List<String> cnames(String name) {
+    return values(CNAME, name);
+  }
+
+  public List<String> aRecs(String name) {
+    return values(A, name);
+  }
+
+  public int recordCount() {
+    return records.size();
+  }
+
+  public int requestCount() {
+    return requests.get();
+  }
+
+  //requests sent to the multi-object request endpoint
+  public int multiRequestCount() {
+    return multiRequests.get();
+  }
+
+  public MockWebServer getServer() {
+    return server;
+  }
+
+  private MockResponse handle(RecordedRequest request) {
+    if (!isAuthorized(request.getHeader("Authorization"))) {
+      return new MockResponse().setResponseCode(401).setHeader("Content-Type", "text/html")
+          .setBody("<html><body>Authorization Required</body></html>");
+    }
+    if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+      return new MockResponse().setResponseCode(failureCode).setHeader("Content-Type", "text/html")
+          .setBody("<html><body>Service Unavailable</body></html>");
+    }
+    HttpUrl url = request.getRequestUrl();
+    List<String> segments = url.pathSegments();
+    if (segments.size() < 3 || !segments.get(0).equals("wapi")) {
+      return error(400, "AdmConProtoError: Unknown path", "Client.Ibap.Proto", "Unknown path " + url.encodedPath());
+    }
+    //references contain slashes, e.g. record:a/ZG5z:host.xyz.com/default
+    String object = String.join("/", segments.subList(2, segments.size()));
+    String body = request.getBodySize() > 0 ? request.getBody().readUtf8() : null;
+    if (object.equals("request") && request.getMethod().equals("POST")) {
+      return multiRequest(body);
+    }
+    Map<String, String> data = body != null ? gson.fromJson(body, new TypeToken<Map<String, String>>() {}.getType()) : null;
+    try {
+      switch (request.getMethod()) {
+        case "GET":
+          return search(object, url);
+        case "POST":
+          return result(201, create(object, data).toJson());
+        case "PUT":
+          return result(200, modify(object, data).toJson());
+        case "DELETE":
+          return result(200, delete(object));
+        default:
+          return error(400, "AdmConProtoError: Unsupported method", "Client.Ibap.Proto", request.getMethod());
+      }
+    } catch (WapiError e) {
+      return e.response;
+    }
+  }
+
+  //items are applied in order, the first failing one rolls back the others and fails the request
+  private MockResponse multiRequest(String body) {
+    List<Map<String, Object>> items = gson.fromJson(body, new TypeToken<List<Map<String, Object>>>() {}.getType());
+    multiRequests.incrementAndGet();
+    synchronized (records) {
+      Map<String, Record> before = new HashMap<>(records);
+      List<Object> results = new ArrayList<>();
+      try {
+        for (Map<String, Object> item : items) {
+          String object = String.valueOf(item.get("object"));
+          @SuppressWarnings("unchecked")
+          Map<String, String> data = (Map<String, String>) item.get("data");
+          @SuppressWarnings("unchecked")
+          Map<String, String> args = (Map<String, String>) item.get("args");
+          switch (String.valueOf(item.get("method"))) {
+            case "POST":
+              results.add(written(create(object, data), args));
+              break;
+            case "PUT":
+              results.add(written(modify(object, data), args));
+              break;
+            case "DELETE":
+              results.add(delete(object));
+              break;
+            default:
+              throw new WapiError(error(400, "AdmConProtoError: Unsupported method in request", "Client.Ibap.Proto",
+                  String.valueOf(item.get("method"))));
+          }
+        }
+      } catch (WapiError e) {
+        records.clear();
+        records.putAll(before);
+        return e.response;
+      }
+      return new MockResponse().setResponseCode(200).setHeader("Content-Type", "application/json")
+          .setBody(gson.toJson(results));
+    }
+  }
+
+  //the reference, or the reference and the requested fields of the record
+  private Object written(Record record, Map<String, String> args) {
+    String fields = args != null ? args.get("_return_fields") : null;
+    if (!returnFields || fields == null) {
+      return record.ref;
+    }
+    Map<String, String> json = record.toJson();
+    Map<String, String> result = new LinkedHashMap<>();
+    result.put("_ref", record.ref);
+    for (String field : fields.split(",")) {
+      if (json.containsKey(field)) {
+        result.put(field, json.get(field));
+      }
+    }
+    return result;
+  }
+
+  private MockResponse search(String type, HttpUrl url) {
+    if (!type.equals(CNAME) && !type.equals(A)) {
+      return unknownObject(type);
+    }
+    if (url.queryParameter("_page_id") != null) {
+      Page remaining = pages.remove(url.queryParameter("_page_id"));
+      if (remaining == null) {
+        return error(400, "AdmConProtoError: Invalid page id", "Client.Ibap.Proto", "Invalid page id");
+      }
+      return page(remaining.results, remaining.pageSize);
+    }
+    Predicate<String> nameFilter = name -> true;
+    if (url.queryParameter("name") != null) {
+      String name = url.queryParameter("name");
+      nameFilter = name::equals;
+    }
+    else if (url.queryParameter("name~") != null) {
+      Pattern pattern = Pattern.compile(url.queryParameter("name~"));
+      nameFilter = name -> pattern.matcher(name).find();
+    }
+    else if (url.queryParameter("name:") != null) {
+      String name = url.queryParameter("name:");
+      nameFilter = name::equalsIgnoreCase;
+    }
+    Predicate<String> filter = nameFilter;
+    List<Map<String, String>> result = records.values().stream()
+        .filter(r -> r.type.equals(type) && filter.test(r.name))
+        .sorted((r1, r2) -> r1.ref.compareTo(r2.ref))
+        .map(Record::toJson)
+        .collect(Collectors.toList());
+    if ("1".equals(url.queryParameter("_paging"))) {
+      String max = url.queryParameter("_max_results");
+      int pageSize = max != null ? Math.abs(Integer.parseInt(max)) : maxResults;
+      if (pageSize > maxResults) {
+        return error(400, "AdmConProtoError: _max_results too large", "Client.Ibap.Proto", "_max_results > " + maxResults);
+      }
+      return page(result, pageSize);
+    }
+    if (result.size() > maxResults) {
+      return error(400, "AdmConProtoError: Result set too large (> " + maxResults + ")", "Client.Ibap.Proto",
+          "Result set too large (> " + maxResults + ")");
+    }
+    return result(200, result);
+  }
+
+  private MockResponse page(List<Map<String, String>> results, int pageSize) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("result", new ArrayList<>(results.subList(0, Math.min(pageSize, results.size()))));
+    if (results.size() > pageSize) {
+      String pageId = "789c" + ids.incrementAndGet();
+      pages.put(pageId, new Page(new ArrayList<>(results.subList(pageSize, results.size())), pageSize));
+      body.put("next_page_id", pageId);
+    }
+    return new MockResponse().setResponseCode(200).setHeader("Content-Type", "application/json")
+        .setBody(gson.toJson(body));
+  }
+
+  private Record create(String type, Map<String, String> body) throws WapiError {
+    if (!type.equals(CNAME) && !type.equals(A)) {
+      throw new WapiError(unknownObject(type));
+    }
+    String name = body != null ? body.get("name") : null;
+    String value = body != null ? body.get(type.equals(CNAME) ? "canonical" : "ipv4addr") : null;
+    if (name == null || value == null) {
+      throw new WapiError(error(400, "AdmConProtoError: Field is required", "Client.Ibap.Proto", "Missing name or value"));
+    }
+    synchronized (records) {
+      if (conflicts(type, name, value)) {
+        throw new WapiError(conflict(name));
+      }
+      return add(type, name, value);
+    }
+  }
+
+  private Record modify(String ref, Map<String, String> body) throws WapiError {
+    synchronized (records) {
+      Record record = records.get(ref);
+      if (record == null) {
+        throw new WapiError(notFound(ref));
+      }
+      String name = body != null && body.get("name") != null ? body.get("name") : record.name;
+      String value = body != null ? body.get(record.type.equals(CNAME) ? "canonical" : "ipv4addr") : null;
+      value = value != null ? value : record.value;
+      records.remove(ref);
+      if (conflicts(record.type, name, value)) {
+        records.put(ref, record);
+        throw new WapiError(conflict(name));
+      }
+      Record modified = new Record(ref, record.type, name, value);
+      records.put(ref, modified);
+      return modified;
+    }
+  }
+
+  private String delete(String ref) throws WapiError {
+    if (records.remove(ref) == null) {
+      throw new WapiError(notFound(ref));
+    }
+    return ref;
+  }
+
+  //a cname cannot share its name with any record, a records can only differ by address
+  private boolean conflicts(String type, String name, String value) {
+    return records.values().stream().anyMatch(r -> r.name.equalsIgnoreCase(name) &&
+        (type.equals(CNAME) || r.type.equals(CNAME) || r.value.equals(value)));
+  }
+
+  private Record add(String type, String name, String value) {
+    String id = Base64.getEncoder().encodeToString(("dns.bind_" + type.substring(7) + "$" + ids.incrementAndGet())
+        .getBytes(StandardCharsets.UTF_8));
+    Record record = new Record(type + "/" + id + ":" + name + "/" + VIEW, type, name, value);
+    records.put(record.ref, record);
+    return record;
+  }
+
+  private List<String> values(String type, String name) {
+    return records.values().stream().filter(r -> r.type.equals(type) && r.name.equals(name))
+        .map(r -> r.value).collect(Collectors.toList());
+  }
+
+  private boolean isAuthorized(String authorization) {
+    if (authorization == null || !authorization.startsWith("Basic ")) {
+      return false;
+    }
+    String credentials = new String(Base64.getDecoder().decode(authorization.substring(6)), StandardCharsets.UTF_8);
+    int separator = credentials.indexOf(':');
+    return separator > 0 &&
+        Objects.equals(users.get(credentials.substring(0, separator)), credentials.substring(separator + 1));
+  }
+
+  private MockResponse conflict(String name) {
+    return error(400, "AdmConDataError: None (IBDataConflictError: IB.Data.Conflict:The record '" + name
+        + "' already exists.)", "Client.Ibap.Data.Conflict", "The record '" + name + "' already exists.");
+  }
+
+  private MockResponse notFound(String ref) {
+    return error(404, "AdmConDataNotFoundError: Reference " + ref + " not found", "Client.Ibap.Data.NotFound",
+        "Reference " + ref + " not found");
+  }
+
+  private MockResponse unknownObject(String type) {
+    return error(400, "AdmConProtoError: Unknown object type (" + type + ")", "Client.Ibap.Proto",
+        "Unknown object type (" + type + ")");
+  }
+
+  private MockResponse error(int code, String error, String errorCode, String text) {
+    Map<String, String> body = new LinkedHashMap<>();
+    body.put("Error", error);
+    body.put("code", errorCode);
+    body.put("text", text);
+    return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json")
+        .setBody(gson.toJson(body));
+  }
+
+  private MockResponse result(int code, Object result) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("result", result);
+    return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json")
+        .setBody(gson.toJson(body));
+  }
+
+  private static SSLContext sslContext() throws IOException {
+    try (InputStream in = FakeInfobloxServer.class.getResourceAsStream(KEY_STORE)) {
+      KeyStore keyStore = KeyStore.getInstance("JKS");
+      keyStore.load(in, KEY_STORE_PASSWORD);
+      KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagers.init(keyStore, KEY_STORE_PASSWORD);
+      SSLContext context = SSLContext.getInstance("TLS");
+      context.init(keyManagers.getKeyManagers(), null, null);
+      return context;
+    } catch (GeneralSecurityException e) {
+      throw new IOException("could not load " + KEY_STORE, e);
+    }
+  }
+
+  private static class WapiError extends Exception {
+    private final MockResponse response;
+
+    WapiError(MockResponse response) {
+      this.response = response;
+    }
+  }
+
+  private static class Page {
+    final List<Map<String, String>> results;
+    final int pageSize;
+
+    Page(List<Map<String, String>> results, int pageSize) {
+      this.results = results;
+      this.pageSize = pageSize;
+    }
+  }
+
+  private static class Record {
+    private final String ref;
+    private final String type;
+    private final String name;
+    private final String value;
+
+    Record(String ref, String type, String name, String value) {
+      this.ref = ref;
+      this.type = type;
+      this.name = name.toLowerCase(Locale.ROOT);
+      this.value = value;
+    }
+
+    Map<String, String> toJson() {
+      Map<String, String> json = new LinkedHashMap<>();
+      json.put("_ref", ref);
+      json.put(type.equals(CNAME) ? "canonical" : "ipv4addr", value);
+      json.put("name", name);
+      json.put("view", VIEW);
+      return json;
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.oneops.gslb;
+
+import static com.oneops.gslb.Requests.getProvisingRequest;
+import static com.oneops.gslb.Requests.getProvisionContext;
+import static com.oneops.gslb.Requests.getProvisionedGslb;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Lists;
+import com.oneops.gslb.domain.CloudARecord;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.infoblox.InfobloxClient;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FakeInfobloxServerTest {
+
+  private static final String CNAME = "plt.env.a1.org.gslb.xyz.com";
+
+  FakeInfobloxServer infoblox = new FakeInfobloxServer();
+  DnsHandler dnsHandler = new DnsHandler();
+
+  @Before
+  public void setup() throws Exception {
+    infoblox.start();
+    dnsHandler.setInfobloxClientProvider(new InfobloxClientProvider());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    infoblox.shutdown();
+  }
+
+  @Test
+  public void shouldSetupCheckAndRemoveOverHttps() {
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.10"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.cnames("test1.xyz.com"), is(Collections.singletonList(CNAME)));
+    assertThat(infoblox.cnames("plt.env.a1.org.prod.xyz.com"), is(Collections.singletonList(CNAME)));
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.10")));
+
+    //a changed vip replaces the cloud entry, existing cnames are left as they are
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.20"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.20")));
+    assertThat(infoblox.recordCount(), is(3));
+
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.checkStatus(gslb("10.1.1.20"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.removeDnsEntries(getProvisionedGslb("plt", "env.a1.org", "prod.xyz.com",
+        infoblox.infobloxConfig("prod.xyz.com"),
+        Lists.newArrayList("test1.xyz.com", "plt.env.a1.org.prod.xyz.com", "missing.xyz.com"),
+        Collections.singletonList(CloudARecord.create("cl1", "plt.env.a1.org.c1.prod.xyz.com"))), context);
+    assertThat(context.getResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.recordCount(), is(0));
+  }
+
+  @Test
+  public void shouldUpdateCloudEntryInPlace() throws Exception {
+    InfobloxClient client = new InfobloxClientProvider().getInfobloxClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD);
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.10"), context);
+    String ref = client.getARec("plt.env.a1.org.c1.prod.xyz.com").get(0).ref();
+
+    //the record keeps its reference, cnames and cloud entry are looked up and the address is updated
+    int requests = infoblox.requestCount();
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.20"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.requestCount() - requests, is(4));
+    assertThat(client.getARec("plt.env.a1.org.c1.prod.xyz.com").get(0).ref(), is(ref));
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.20")));
+
+    //a rejected update, here for a stale reference, falls back to deleting and creating the record
+    dnsHandler.setInfobloxClientProvider(new InfobloxClientProvider() {
+      @Override
+      WapiRequestClient newWapiRequestClient(InfobloxClient client) throws Exception {
+        return new WapiRequestClient(client, wapiHttpClient(client)) {
+          @Override
+          public String modifyARec(String ref, String ipv4Addr) throws IOException {
+            return super.modifyARec(ref + "x", ipv4Addr);
+          }
+        };
+      }
+    });
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.30"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.30")));
+    assertThat(infoblox.recordCount(), is(3));
+  }
+
+  @Test
+  public void shouldFailOnCnameOwnedByAnotherGslb() {
+    infoblox.addCname("test1.xyz.com", "other.env.a1.org.gslb.xyz.com");
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.10"), context);
+    assertThat(context.getProvisioningResponse().getStatus(), is(Status.FAILED));
+    assertThat(infoblox.cnames("test1.xyz.com"), is(Collections.singletonList("other.env.a1.org.gslb.xyz.com")));
+  }
+
+  @Test
+  public void shouldReturnWapiErrors() throws Exception {
+    InfobloxClient client = new InfobloxClientProvider().getInfobloxClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD);
+    client.createCNameRec("test1.xyz.com", CNAME);
+    try {
+      client.createCNameRec("test1.xyz.com", CNAME);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage().contains("IBDataConflictError: IB.Data.Conflict:The record 'test1.xyz.com' already exists."),
+          is(true));
+      assertThat(DnsHandler.errorType(e), is("CONFLICT"));
+    }
+    try {
+      client.createARec("test1.xyz.com", "10.1.1.10");
+      fail();
+    } catch (IOException e) {
+      assertThat(DnsHandler.errorType(e), is("CONFLICT"));
+    }
+
+    infoblox.failureRate(1.0, 503);
+    try {
+      client.getCNameRec("test1.xyz.com");
+      fail();
+    } catch (IOException e) {
+      assertThat(DnsHandler.errorType(e), is("ERROR"));
+    }
+
+    infoblox.failureRate(0, 503);
+    InfobloxClient badClient = new InfobloxClientProvider().getInfobloxClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, "wrong");
+    try {
+      badClient.getCNameRec("test1.xyz.com");
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage().contains("401") || e.getMessage().contains("Unauthorized"), is(true));
+    }
+  }
+
+  private Gslb gslb(String vip) {
+    return getProvisingRequest("plt", "env.a1.org", vip, "cl1", "prod.xyz.com",
+        infoblox.infobloxConfig("prod.xyz.com"),
+        Lists.newArrayList("test1.xyz.com", "plt.env.a1.org.prod.xyz.com"),
+        Collections.singletonList(CloudARecord.create("cl1", "plt.env.a1.org.c1.prod.xyz.com")),
+        null, null);
+  }
+
+}
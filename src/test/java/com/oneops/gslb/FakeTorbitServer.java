@@ -0,0 +1,310 @@
+package com.oneops.gslb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.AuthStatusResponse;
+import com.oneops.gslb.mtd.v2.domain.CreateMtdBaseRequest;
+import com.oneops.gslb.mtd.v2.domain.DataCenter;
+import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
+import com.oneops.gslb.mtd.v2.domain.DcCloud;
+import com.oneops.gslb.mtd.v2.domain.MtdBase;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseHostRequest;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseHostResponse;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseResponse;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseVersion;
+import com.oneops.gslb.mtd.v2.domain.MtdDeployment;
+import com.oneops.gslb.mtd.v2.domain.MtdHost;
+import com.oneops.gslb.mtd.v2.domain.MtdHostResponse;
+import com.oneops.gslb.mtd.v2.domain.ResponseError;
+import com.oneops.gslb.mtd.v2.domain.SqlNullInt64;
+import com.oneops.gslb.mtd.v2.domain.User;
+import com.oneops.gslb.mtd.v2.domain.Version;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/*
+ * in-memory torbit api on a MockWebServer for integration and load tests. Requests have to be
+ * signed by a known user, mtd bases and hosts are kept per server and errors use the codes of
+ * the real api. Latency and failures can be injected for all requests.
+ */
+public class FakeTorbitServer {
+
+  public static final String USER = "test-oo";
+  public static final String AUTH_KEY = "test_auth";
+  public static final int GROUP_ID = 101;
+
+  private static final Pattern BASE_BY_NAME = Pattern.compile("/api/v2/mtds/bases/by-name/([^/]+)");
+  private static final Pattern BASE = Pattern.compile("/api/v2/mtds/bases/(\\d+)");
+  private static final Pattern HOSTS = Pattern.compile("/api/v2/mtds/bases/(\\d+)/hosts");
+  private static final Pattern HOST = Pattern.compile("/api/v2/mtds/bases/(\\d+)/hosts/([^/]+)");
+
+  private static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(AutoValueGsonFactory.create()).create();
+
+  private final MockWebServer server = new MockWebServer();
+
+  private final Map<String, TorbitSigner> signers = new ConcurrentHashMap<>();
+  private final List<DataCenter> dataCenters = Collections.synchronizedList(new ArrayList<>());
+  private final ConcurrentMap<String, MtdBase> basesByName = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Integer, ConcurrentMap<String, MtdHost>> hostsByBase = new ConcurrentHashMap<>();
+  private final AtomicInteger ids = new AtomicInteger(10);
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  private volatile long latencyMillis;
+  private volatile double failureRate;
+  private volatile int failureCode = 503;
+
+  public FakeTorbitServer() {
+    addUser(USER, AUTH_KEY);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        requests.incrementAndGet();
+        //requests are dispatched on the thread of their connection, concurrent ones overlap here
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+          }
+          return handle(request);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      }
+    });
+  }
+
+  public FakeTorbitServer start() throws IOException {
+    server.start();
+    return this;
+  }
+
+  public void shutdown() throws IOException {
+    server.shutdown();
+  }
+
+  public String url() {
+    return server.url("/").toString();
+  }
+
+  public TorbitConfig torbitConfig(String gslbBaseDomain) {
+    return TorbitConfig.create(url(), USER, AUTH_KEY, GROUP_ID, gslbBaseDomain);
+  }
+
+  public FakeTorbitServer addUser(String user, String authKey) {
+    signers.put(user, new TorbitSigner(authKey));
+    return this;
+  }
+
+  //adds a data center with the given cloud names, ids are assigned by the server
+  public FakeTorbitServer addDataCenter(String name, String... clouds) {
+    int dataCenterId = ids.incrementAndGet();
+    List<DcCloud> dcClouds = new ArrayList<>();
+    for (String cloud : clouds) {
+      dcClouds.add(DcCloud.create(ids.incrementAndGet(), cloud, dataCenterId, null));
+    }
+    dataCenters.add(DataCenter.create(dataCenterId, name, dcClouds));
+    return this;
+  }
+
+  public FakeTorbitServer latencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  //fraction of requests failing with failureCode before they are applied
+  public FakeTorbitServer failureRate(double failureRate, int failureCode) {
+    this.failureRate = failureRate;
+    this.failureCode = failureCode;
+    return this;
+  }
+
+  public MtdBase mtdBase(String mtdBaseName) {
+    return basesByName.get(mtdBaseName);
+  }
+
+  public MtdHost mtdHost(String mtdBaseName, String mtdHostName) {
+    MtdBase mtdBase = basesByName.get(mtdBaseName);
+    Map<String, MtdHost> hosts = mtdBase != null ? hostsByBase.get(mtdBase.mtdBaseId()) : null;
+    return hosts != null ? hosts.get(mtdHostName) : null;
+  }
+
+  public int requestCount() {
+    return requests.get();
+  }
+
+  //the most requests that were handled at the same time
+  public int maxConcurrentRequests() {
+    return maxInFlight.get();
+  }
+
+  public MockWebServer getServer() {
+    return server;
+  }
+
+  private MockResponse handle(RecordedRequest request) {
+    String path = request.getRequestUrl().encodedPath();
+    String method = request.getMethod();
+    if (!isSigned(request)) {
+      return error(401, "AUTHENTICATION_FAILED", "invalid signature");
+    }
+    if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+      return error(failureCode, "INJECTED_FAILURE", "injected failure");
+    }
+    Matcher matcher;
+    if (path.equals("/api/v2/data-centers") && method.equals("GET")) {
+      List<DataCenter> all;
+      synchronized (dataCenters) {
+        all = new ArrayList<>(dataCenters);
+      }
+      return json(200, DataCentersResponse.create(null, null, null, all));
+    }
+    if (path.equals("/api/v2/auth/status") && method.equals("GET")) {
+      User user = User.create(1, request.getHeader(SignInterceptor.AUTH_HEADER_NAME), true, false, false, false,
+          true, null);
+      return json(200, AuthStatusResponse.create(null, null, null, user, "127.0.0.1", true, "signature"));
+    }
+    if (path.equals("/api/v2/mtds/bases") && method.equals("POST")) {
+      return createMtdBase(request);
+    }
+    if ((matcher = BASE_BY_NAME.matcher(path)).matches() && method.equals("GET")) {
+      MtdBase mtdBase = basesByName.get(matcher.group(1));
+      return mtdBase != null ? json(200, MtdBaseResponse.create(null, null, null, mtdBase)) :
+          error(404, "COULD_NOT_FIND_MTD_BASE", "mtd base not found");
+    }
+    if ((matcher = BASE.matcher(path)).matches() && method.equals("DELETE")) {
+      return deleteMtdBase(Integer.parseInt(matcher.group(1)));
+    }
+    if ((matcher = HOSTS.matcher(path)).matches() && method.equals("POST")) {
+      return createMtdHost(request, Integer.parseInt(matcher.group(1)));
+    }
+    if ((matcher = HOST.matcher(path)).matches()) {
+      return handleMtdHost(request, Integer.parseInt(matcher.group(1)), matcher.group(2));
+    }
+    return error(404, "NOT_FOUND", "no route for " + method + " " + path);
+  }
+
+  private MockResponse createMtdBase(RecordedRequest request) {
+    CreateMtdBaseRequest body = gson.fromJson(request.getBody().readUtf8(), CreateMtdBaseRequest.class);
+    String name = body.mtdBase().mtdBaseName();
+    MtdBase created = MtdBase.create(ids.incrementAndGet(), name,
+        MtdBaseVersion.create(SqlNullInt64.create(1L, true), SqlNullInt64.create(1L, true), null));
+    MtdBase existing = basesByName.putIfAbsent(name, created);
+    if (existing != null) {
+      return error(409, "DB_UNIQUENESS_VIOLATION", "mtd base " + name + " already exists");
+    }
+    hostsByBase.put(created.mtdBaseId(), new ConcurrentHashMap<>());
+    return json(200, MtdBaseResponse.create(null, null, null, created));
+  }
+
+  private MockResponse deleteMtdBase(int mtdBaseId) {
+    MtdBase mtdBase = baseById(mtdBaseId);
+    if (mtdBase == null) {
+      return error(404, "COULD_NOT_FIND_MTD_BASE", "mtd base not found");
+    }
+    basesByName.remove(mtdBase.mtdBaseName());
+    hostsByBase.remove(mtdBaseId);
+    return json(200, MtdBaseResponse.create(null, null, null, mtdBase));
+  }
+
+  private MockResponse createMtdHost(RecordedRequest request, int mtdBaseId) {
+    ConcurrentMap<String, MtdHost> hosts = hostsByBase.get(mtdBaseId);
+    if (hosts == null) {
+      return error(404, "COULD_NOT_FIND_MTD_BASE", "mtd base not found");
+    }
+    MtdHost host = gson.fromJson(request.getBody().readUtf8(), MtdBaseHostRequest.class).mtdHost();
+    if (hosts.putIfAbsent(host.mtdHostName(), host) != null) {
+      return error(400, "MTD_HOST_EXISTS_ON_MTD_BASE", "mtd host " + host.mtdHostName() + " exists");
+    }
+    return deployed(mtdBaseId);
+  }
+
+  private MockResponse handleMtdHost(RecordedRequest request, int mtdBaseId, String hostName) {
+    ConcurrentMap<String, MtdHost> hosts = hostsByBase.get(mtdBaseId);
+    if (hosts == null) {
+      return error(404, "COULD_NOT_FIND_MTD_BASE", "mtd base not found");
+    }
+    switch (request.getMethod()) {
+      case "GET":
+        MtdHost host = hosts.get(hostName);
+        return host != null ? json(200, MtdHostResponse.create(null, null, null, host)) : hostNotFound(hostName);
+      case "PUT":
+        MtdHost update = gson.fromJson(request.getBody().readUtf8(), MtdBaseHostRequest.class).mtdHost();
+        return hosts.replace(hostName, update) != null ? deployed(mtdBaseId) : hostNotFound(hostName);
+      case "DELETE":
+        return hosts.remove(hostName) != null ? deployed(mtdBaseId) : hostNotFound(hostName);
+      default:
+        return error(405, "METHOD_NOT_ALLOWED", request.getMethod());
+    }
+  }
+
+  private MockResponse deployed(int mtdBaseId) {
+    int versionId = ids.incrementAndGet();
+    Version version = Version.create(versionId, null, versionId, null, null, null, null, null);
+    MtdDeployment deployment = MtdDeployment.create(ids.incrementAndGet(), null, null, null, null, null,
+        SqlNullInt64.create((long) mtdBaseId, true), null, null, null, null);
+    return json(200, MtdBaseHostResponse.create(null, null, null, version, deployment));
+  }
+
+  private MockResponse hostNotFound(String hostName) {
+    return error(404, "COULD_NOT_FIND_MTD_HOST", "mtd host " + hostName + " not found");
+  }
+
+  private MtdBase baseById(int mtdBaseId) {
+    return basesByName.values().stream().filter(b -> b.mtdBaseId() == mtdBaseId).findFirst().orElse(null);
+  }
+
+  //the signature covers the path and query as sent, up to and including the time parameter
+  private boolean isSigned(RecordedRequest request) {
+    String user = request.getHeader(SignInterceptor.AUTH_HEADER_NAME);
+    TorbitSigner signer = user != null ? signers.get(user) : null;
+    String query = request.getRequestUrl().encodedQuery();
+    if (signer == null || query == null) {
+      return false;
+    }
+    int sigStart = query.lastIndexOf("&sig=");
+    if (sigStart < 0) {
+      return false;
+    }
+    String signed = query.substring(0, sigStart);
+    int timeStart = signed.lastIndexOf("time=");
+    if (timeStart < 0 || (timeStart > 0 && signed.charAt(timeStart - 1) != '&')) {
+      return false;
+    }
+    try {
+      long time = Long.parseLong(signed.substring(timeStart + "time=".length()));
+      String original = timeStart > 0 ? signed.substring(0, timeStart - 1) : null;
+      String expected = signer.sign(request.getRequestUrl().encodedPath(), original, time);
+      return expected.equals(query.substring(sigStart + "&sig=".length()));
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private MockResponse error(int code, String errorCode, String message) {
+    ResponseError error = ResponseError.create(2, errorCode, message, null);
+    return json(code, MtdBaseResponse.create(null, null, Collections.singletonList(error), null));
+  }
+
+  private MockResponse json(int code, Object body) {
+    return new MockResponse().setResponseCode(code)
+        .setHeader("Content-Type", "application/json")
+        .setBody(gson.toJson(body));
+  }
+
+}
@@ -0,0 +1,140 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbProvisionResponse;
+import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.ProvisionedGslb;
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.AuthStatusResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FakeTorbitServerTest {
+
+  private static final String MTD_BASE_NAME = ".e1.a1.org1.glb.xyz.com";
+
+  FakeTorbitServer torbit = new FakeTorbitServer();
+  GslbProvider provider = new GslbProvider();
+
+  @Before
+  public void setup() throws Exception {
+    torbit.addDataCenter("dc1", "cl1", "cl2").start();
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    provider.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    torbit.shutdown();
+  }
+
+  @Test
+  public void shouldProvisionCheckAndDeleteOverHttp() {
+    GslbProvisionResponse response = provider.create(gslb());
+    assertThat(response.getFailureMessage(), nullValue());
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(torbit.mtdHost(MTD_BASE_NAME, "p1").mtdTargets().size(), is(2));
+
+    //an existing host is updated in place
+    assertThat(provider.create(gslb()).getStatus(), is(Status.SUCCESS));
+    assertThat(provider.checkStatus(gslb()).getStatus(), is(Status.SUCCESS));
+
+    GslbResponse deleted = provider.delete(ProvisionedGslb.builder()
+        .app("p1")
+        .subdomain("e1.a1.org1")
+        .torbitConfig(torbit.torbitConfig("glb.xyz.com"))
+        .build());
+    assertThat(deleted.getStatus(), is(Status.SUCCESS));
+    assertThat(torbit.mtdHost(MTD_BASE_NAME, "p1"), nullValue());
+    assertThat(torbit.mtdBase(MTD_BASE_NAME), notNullValue());
+  }
+
+  @Test
+  public void shouldRejectBadSignatures() throws Exception {
+    TorbitClient client = new TorbitClient(TorbitConfig.create(torbit.url(), FakeTorbitServer.USER, "wrong",
+        FakeTorbitServer.GROUP_ID, "glb.xyz.com"));
+    try {
+      client.execute(client.getTorbit().authStatus(), AuthStatusResponse.class);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getMessage().startsWith("Authentication failed"), is(true));
+    }
+    client = new TorbitClient(torbit.torbitConfig("glb.xyz.com"));
+    assertThat(client.execute(client.getTorbit().authStatus(), AuthStatusResponse.class).getBody().authenticated(),
+        is(true));
+  }
+
+  @Test
+  public void shouldRetryInjectedFailures() {
+    torbit.failureRate(0.3, 503);
+    TorbitClientProvider clientProvider = new TorbitClientProvider();
+    clientProvider.setRetryPolicy(RetryPolicy.builder().maxAttempts(10).initialBackoffMillis(1).build());
+    provider.getMtdHandler().setTorbitClientProvider(clientProvider);
+    for (int i = 0; i < 5; i++) {
+      assertThat(provider.create(gslb()).getStatus(), is(Status.SUCCESS));
+    }
+  }
+
+  @Test
+  public void shouldOverlapConcurrentAsyncCreates() throws Exception {
+    assertThat(provider.create(gslb()).getStatus(), is(Status.SUCCESS));
+    torbit.latencyMillis(100);
+    List<CompletableFuture<GslbProvisionResponse>> futures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      futures.add(provider.createAsync(gslb("app" + i)));
+    }
+    for (CompletableFuture<GslbProvisionResponse> future : futures) {
+      assertThat(future.get(30, TimeUnit.SECONDS).getStatus(), is(Status.SUCCESS));
+    }
+    //more than the 5 calls per host okhttp allows by default
+    assertThat(torbit.maxConcurrentRequests() > 5, is(true));
+  }
+
+  @Test
+  public void shouldRecordTorbitMetricsOfOwnProviderOnly() {
+    SimpleMetrics metrics = new SimpleMetrics();
+    provider.setMetrics(metrics);
+    GslbProvider other = new GslbProvider();
+    other.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    other.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+    assertThat(other.create(gslb("other")).getStatus(), is(Status.SUCCESS));
+    assertThat(hasTorbitCalls(metrics), is(false));
+    assertThat(TorbitClientProvider.shared().getMetrics(), is(Metrics.NOOP));
+
+    assertThat(provider.create(gslb()).getStatus(), is(Status.SUCCESS));
+    assertThat(hasTorbitCalls(metrics), is(true));
+  }
+
+  private boolean hasTorbitCalls(SimpleMetrics metrics) {
+    return metrics.timers().keySet().stream().anyMatch(k -> k.startsWith(Metrics.REMOTE_CALL + "{"));
+  }
+
+  private Gslb gslb() {
+    return gslb("p1");
+  }
+
+  private Gslb gslb(String app) {
+    return Gslb.builder()
+        .app(app)
+        .subdomain("e1.a1.org1")
+        .lbs(Arrays.asList(Lb.create("cl1", "10.1.1.1", true), Lb.create("cl2", "10.1.1.2", true)))
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbit.torbitConfig("glb.xyz.com"))
+        .build();
+  }
+
+}
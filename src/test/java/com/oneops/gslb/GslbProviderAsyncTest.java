@@ -0,0 +1,318 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbProvisionResponse;
+import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.InfobloxConfig;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.PhaseTiming;
+import com.oneops.gslb.domain.ProvisionedGslb;
+import com.oneops.gslb.domain.TorbitConfig;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GslbProviderAsyncTest {
+
+  private static final String MTD_BASE = "{\"mtd_base\":{\"mtd_base_id\":11,\"mtd_base_name\":\".e1.a1.org1.glb.xyz.com\","
+      + "\"version\":{\"version_id\":{\"Int64\":41,\"Valid\":true}}}}";
+  private static final String DATA_CENTERS = "{\"data_centers\":[{\"id\":5,\"name\":\"dc1\",\"clouds\":["
+      + "{\"id\":10,\"name\":\"cl1\",\"data_center_id\":5},{\"id\":12,\"name\":\"cl2\",\"data_center_id\":5}]}]}";
+  private static final String HOST_CREATED = "{\"version\":{\"version_id\":21},\"deployment\":{\"deployment_id\":31}}";
+  private static final String HOST_EXISTS = "{\"errors\":[{\"error_code\":\"MTD_HOST_EXISTS_ON_MTD_BASE\"}]}";
+  private static final String HOST = "{\"mtd_host\":{\"mtd_host_name\":\"p1\",\"mtd_targets\":["
+      + "{\"mtd_target_host\":\"10.1.1.1\",\"data_center_id\":5,\"cloud_id\":10,\"enabled\":true},"
+      + "{\"mtd_target_host\":\"10.1.1.2\",\"data_center_id\":5,\"cloud_id\":12,\"enabled\":true}]}}";
+
+  MockWebServer server = new MockWebServer();
+  ExecutorService executor = Executors.newFixedThreadPool(2);
+  GslbProvider provider = new GslbProvider(executor);
+  boolean hostExists;
+  boolean mtdBaseMissing;
+  AtomicInteger mtdBaseCalls = new AtomicInteger();
+
+  @Before
+  public void setup() throws Exception {
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+        String method = request.getMethod();
+        if (path.startsWith("/api/v2/mtds/bases?")) {
+          mtdBaseCalls.incrementAndGet();
+          return json(200, MTD_BASE);
+        }
+        if (path.startsWith("/api/v2/data-centers")) {
+          return json(200, DATA_CENTERS);
+        }
+        if (path.startsWith("/api/v2/mtds/bases/by-name/")) {
+          mtdBaseCalls.incrementAndGet();
+          return json(200, MTD_BASE);
+        }
+        if (mtdBaseMissing) {
+          return json(404, "{\"errors\":[{\"error_code\":\"COULD_NOT_FIND_MTD_BASE\"}]}");
+        }
+        if (path.startsWith("/api/v2/mtds/bases/11/hosts?") && method.equals("POST")) {
+          return hostExists ? json(400, HOST_EXISTS) : json(200, HOST_CREATED);
+        }
+        if (path.startsWith("/api/v2/mtds/bases/11/hosts/p1") && method.equals("GET")) {
+          return json(200, HOST);
+        }
+        if (path.startsWith("/api/v2/mtds/bases/11/hosts/p1")) {
+          return json(200, HOST_CREATED);
+        }
+        return json(404, "{}");
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void createAsync() throws Exception {
+    GslbProvisionResponse response = provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(response.getMtdBaseId(), is("11"));
+    assertThat(response.getMtdVersion(), is("21"));
+    assertThat(response.getMtdDeploymentId(), is("31"));
+    assertThat(response.getGlb(), is("p1.e1.a1.org1.glb.xyz.com"));
+  }
+
+  @Test
+  public void createAsyncReturnsPhaseTimings() throws Exception {
+    SimpleMetrics metrics = new SimpleMetrics();
+    provider.setMetrics(metrics);
+    try {
+      GslbProvisionResponse response = provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+      List<PhaseTiming> timings = response.getPhaseTimings();
+      assertThat(timings.stream().map(PhaseTiming::getPhase).collect(Collectors.toList()),
+          is(Arrays.asList("total", "mtd", "mtd-base", "data-centers", "mtd-host")));
+      //mtd base and mtd host creation, data centers are read by the shared catalog
+      assertThat(timings.get(0).getRemoteCalls(), is(2));
+      assertThat(timings.get(2).getRemoteCalls(), is(1));
+      assertThat(timings.get(4).getRemoteCalls(), is(1));
+      assertThat(timings.get(0).getRetries(), is(0));
+      assertThat(metrics.timer(Metrics.PHASE, "operation", "create", "phase", "total", "outcome", "success").count(),
+          is(1L));
+    } finally {
+      provider.setMetrics(Metrics.NOOP);
+    }
+  }
+
+  @Test
+  public void createAsyncUpdatesExistingHost() throws Exception {
+    hostExists = true;
+    GslbProvisionResponse response = provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(response.getMtdDeploymentId(), is("31"));
+    RecordedRequest update = null;
+    for (int i = server.getRequestCount(); i > 0; i--) {
+      RecordedRequest request = server.takeRequest();
+      if (request.getMethod().equals("PUT")) {
+        update = request;
+      }
+    }
+    assertThat(update.getPath().startsWith("/api/v2/mtds/bases/11/hosts/p1"), is(true));
+  }
+
+  @Test
+  public void shouldReuseCachedMtdBase() throws Exception {
+    provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+    GslbProvisionResponse response = provider.checkStatusAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    provider.create(gslb());
+    assertThat(mtdBaseCalls.get(), is(1));
+  }
+
+  @Test
+  public void shouldNotShareCachedMtdBaseAcrossTenants() throws Exception {
+    provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+    String url = server.url("/").toString();
+    Gslb otherGroup = gslb(TorbitConfig.create(url, "test-oo", "test_auth", 102, "glb.xyz.com"));
+    assertThat(provider.checkStatusAsync(otherGroup).get(10, TimeUnit.SECONDS).getStatus(), is(Status.SUCCESS));
+    assertThat(mtdBaseCalls.get(), is(2));
+    Gslb otherUser = gslb(TorbitConfig.create(url, "test-oo2", "test_auth", 101, "glb.xyz.com"));
+    assertThat(provider.checkStatusAsync(otherUser).get(10, TimeUnit.SECONDS).getStatus(), is(Status.SUCCESS));
+    assertThat(mtdBaseCalls.get(), is(3));
+    provider.create(gslb());
+    assertThat(mtdBaseCalls.get(), is(3));
+  }
+
+  @Test
+  public void shouldInvalidateCachedMtdBaseWhenNotFound() throws Exception {
+    provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+    mtdBaseMissing = true;
+    GslbProvisionResponse response = provider.checkStatusAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.FAILED));
+    mtdBaseMissing = false;
+    response = provider.checkStatusAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(mtdBaseCalls.get(), is(2));
+  }
+
+  @Test
+  public void shouldSkipUpdateOfUnchangedHost() throws Exception {
+    provider.getMtdHandler().setDiffHostUpdates(true);
+    GslbProvisionResponse response = provider.createAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(response.getMtdBaseId(), is("11"));
+    assertThat(response.getMtdVersion(), is("41"));
+    response = provider.create(gslb());
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(response.getMtdVersion(), is("41"));
+    assertThat(response.isMtdHostUnchanged(), is(true));
+    assertThat(hostWrites(), is(0));
+  }
+
+  @Test
+  public void shouldUpdateChangedHost() throws Exception {
+    provider.getMtdHandler().setDiffHostUpdates(true);
+    List<Lb> lbs = new ArrayList<>();
+    lbs.add(Lb.create("cl1", "10.1.1.1", true));
+    lbs.add(Lb.create("cl2", "10.1.1.3", true));
+    GslbProvisionResponse response = provider.createAsync(gslb(lbs)).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(response.getMtdVersion(), is("21"));
+    assertThat(response.getMtdDeploymentId(), is("31"));
+    response = provider.create(gslb(lbs));
+    assertThat(response.getMtdDeploymentId(), is("31"));
+    assertThat(hostWrites(), is(2));
+  }
+
+  @Test
+  public void checkStatusAsync() throws Exception {
+    GslbProvisionResponse response = provider.checkStatusAsync(gslb()).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+    assertThat(response.getCheckOutcome(), is(CheckOutcome.IN_SYNC));
+  }
+
+  @Test
+  public void checkStatusAsyncFailsForDifferentTargets() throws Exception {
+    List<Lb> lbs = new ArrayList<>();
+    lbs.add(Lb.create("cl1", "10.1.1.1", true));
+    GslbProvisionResponse response = provider.checkStatusAsync(gslb(lbs)).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.FAILED));
+    assertThat(response.getCheckOutcome(), is(CheckOutcome.DRIFT));
+  }
+
+  @Test
+  public void checkStatusAsyncChecksCnamesConcurrently() throws Exception {
+    DnsMock dnsMock = new DnsMock();
+    dnsMock.existingCnames.put("p1.xyz.com", "p1.e1.a1.org1.glb.xyz.com");
+    useDnsMock(dnsMock);
+    GslbProvisionResponse response = provider.checkStatusAsync(gslbWithCnames(gslb().lbs()))
+        .get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+  }
+
+  @Test
+  public void checkStatusAsyncMergesFailures() throws Exception {
+    useDnsMock(new DnsMock());
+    List<Lb> lbs = new ArrayList<>();
+    lbs.add(Lb.create("cl1", "10.1.1.1", true));
+    GslbProvisionResponse response = provider.checkStatusAsync(gslbWithCnames(lbs)).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.FAILED));
+    assertThat(response.getFailureMessage(), is("mtd targets not matching | cname not created properly p1.xyz.com"));
+    assertThat(response.getCheckOutcome(), is(CheckOutcome.DRIFT));
+  }
+
+  @Test
+  public void deleteAsync() throws Exception {
+    ProvisionedGslb gslb = ProvisionedGslb.builder()
+        .app("p1")
+        .subdomain("e1.a1.org1")
+        .torbitConfig(torbitConfig())
+        .build();
+    GslbResponse response = provider.deleteAsync(gslb).get(10, TimeUnit.SECONDS);
+    assertThat(response.getStatus(), is(Status.SUCCESS));
+  }
+
+  private int hostWrites() throws InterruptedException {
+    int writes = 0;
+    for (int i = server.getRequestCount(); i > 0; i--) {
+      RecordedRequest request = server.takeRequest();
+      if (request.getPath().startsWith("/api/v2/mtds/bases/11/hosts") && !request.getMethod().equals("GET")) {
+        writes++;
+      }
+    }
+    return writes;
+  }
+
+  private Gslb gslb() {
+    List<Lb> lbs = new ArrayList<>();
+    lbs.add(Lb.create("cl1", "10.1.1.1", true));
+    lbs.add(Lb.create("cl2", "10.1.1.2", true));
+    return gslb(lbs);
+  }
+
+  private Gslb gslb(List<Lb> lbs) {
+    return gslb(lbs, torbitConfig());
+  }
+
+  private Gslb gslb(TorbitConfig torbitConfig) {
+    return gslb(gslb().lbs(), torbitConfig);
+  }
+
+  private Gslb gslb(List<Lb> lbs, TorbitConfig torbitConfig) {
+    return Gslb.builder()
+        .app("p1")
+        .subdomain("e1.a1.org1")
+        .lbs(lbs)
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbitConfig)
+        .build();
+  }
+
+  private Gslb gslbWithCnames(List<Lb> lbs) {
+    return Gslb.builder()
+        .app("p1")
+        .subdomain("e1.a1.org1")
+        .lbs(lbs)
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbitConfig())
+        .infobloxConfig(InfobloxConfig.create("https://localhost:8121", "test-oo", "test_pwd", "xyz.com"))
+        .cnames(Collections.singletonList("p1.xyz.com"))
+        .build();
+  }
+
+  private void useDnsMock(DnsMock dnsMock) {
+    InfobloxClientProvider clientProvider = mock(InfobloxClientProvider.class);
+    when(clientProvider.getInfobloxClient(any(), any(), any())).thenReturn(dnsMock);
+    provider.getDnsHandler().setInfobloxClientProvider(clientProvider);
+  }
+
+  private TorbitConfig torbitConfig() {
+    return TorbitConfig.create(server.url("/").toString(), "test-oo", "test_auth", 101, "glb.xyz.com");
+  }
+
+  private MockResponse json(int code, String body) {
+    return new MockResponse().setResponseCode(code).setBody(body);
+  }
+
+}
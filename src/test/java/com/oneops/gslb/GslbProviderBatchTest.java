@@ -0,0 +1,143 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbProvisionResponse;
+import com.oneops.gslb.domain.GslbResponse;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.ProvisionedGslb;
+import com.oneops.gslb.domain.TorbitConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GslbProviderBatchTest {
+
+  private static final String MTD_BASE = "{\"mtd_base\":{\"mtd_base_id\":11,\"mtd_base_name\":\".e1.a1.org1.glb.xyz.com\"}}";
+  private static final String DATA_CENTERS = "{\"data_centers\":[{\"id\":5,\"name\":\"dc1\",\"clouds\":["
+      + "{\"id\":10,\"name\":\"cl1\",\"data_center_id\":5},{\"id\":12,\"name\":\"cl2\",\"data_center_id\":5}]}]}";
+  private static final String HOST_CREATED = "{\"version\":{\"version_id\":21},\"deployment\":{\"deployment_id\":31}}";
+
+  MockWebServer server = new MockWebServer();
+  ExecutorService executor = Executors.newFixedThreadPool(4);
+  GslbProvider provider = new GslbProvider(executor);
+  AtomicInteger mtdBaseCalls = new AtomicInteger();
+  AtomicInteger dataCenterCalls = new AtomicInteger();
+  AtomicInteger hostCalls = new AtomicInteger();
+
+  @Before
+  public void setup() throws Exception {
+    provider.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+        if (path.startsWith("/api/v2/mtds/bases?") || path.startsWith("/api/v2/mtds/bases/by-name/")) {
+          mtdBaseCalls.incrementAndGet();
+          boolean isFailing = path.contains("e2.a1.org1") || request.getBody().readUtf8().contains("e2.a1.org1");
+          return isFailing ? json(500, "{\"errors\":[{\"error_code\":\"SERVER_ERROR\"}]}")
+              : json(200, MTD_BASE);
+        }
+        if (path.startsWith("/api/v2/data-centers")) {
+          dataCenterCalls.incrementAndGet();
+          return json(200, DATA_CENTERS);
+        }
+        if (path.startsWith("/api/v2/mtds/bases/11/hosts")) {
+          hostCalls.incrementAndGet();
+          return json(200, HOST_CREATED);
+        }
+        return json(404, "{}");
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void createAllResolvesMtdBaseOncePerGroup() {
+    List<Gslb> gslbs = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      gslbs.add(gslb("p" + i, "e1.a1.org1"));
+    }
+    List<GslbProvisionResponse> responses = provider.createAll(gslbs, 3);
+    assertThat(responses.size(), is(10));
+    for (int i = 0; i < 10; i++) {
+      assertThat(responses.get(i).getStatus(), is(Status.SUCCESS));
+      assertThat(responses.get(i).getGlb(), is("p" + i + ".e1.a1.org1.glb.xyz.com"));
+    }
+    assertThat(mtdBaseCalls.get(), is(1));
+    assertThat(dataCenterCalls.get(), is(1));
+    assertThat(hostCalls.get(), is(10));
+  }
+
+  @Test
+  public void createAllFailsOnlyItemsOfFailedGroup() {
+    List<Gslb> gslbs = new ArrayList<>();
+    gslbs.add(gslb("p1", "e1.a1.org1"));
+    gslbs.add(gslb("p2", "e2.a1.org1"));
+    gslbs.add(gslb("p3", "e1.a1.org1"));
+    List<GslbProvisionResponse> responses = provider.createAll(gslbs, 2);
+    assertThat(responses.get(0).getStatus(), is(Status.SUCCESS));
+    assertThat(responses.get(1).getStatus(), is(Status.FAILED));
+    assertThat(responses.get(2).getStatus(), is(Status.SUCCESS));
+    assertThat(hostCalls.get(), is(2));
+  }
+
+  @Test
+  public void deleteAllResolvesMtdBaseOncePerGroup() {
+    List<ProvisionedGslb> gslbs = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      gslbs.add(ProvisionedGslb.builder()
+          .app("p" + i)
+          .subdomain("e1.a1.org1")
+          .torbitConfig(torbitConfig())
+          .build());
+    }
+    List<GslbResponse> responses = provider.deleteAll(gslbs, 2);
+    for (GslbResponse response : responses) {
+      assertThat(response.getStatus(), is(Status.SUCCESS));
+    }
+    assertThat(mtdBaseCalls.get(), is(1));
+    assertThat(hostCalls.get(), is(5));
+  }
+
+  private Gslb gslb(String app, String subdomain) {
+    List<Lb> lbs = new ArrayList<>();
+    lbs.add(Lb.create("cl1", "10.1.1.1", true));
+    lbs.add(Lb.create("cl2", "10.1.1.2", true));
+    return Gslb.builder()
+        .app(app)
+        .subdomain(subdomain)
+        .lbs(lbs)
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbitConfig())
+        .build();
+  }
+
+  private TorbitConfig torbitConfig() {
+    return TorbitConfig.create(server.url("/").toString(), "test-oo", "test_auth", 101, "glb.xyz.com");
+  }
+
+  private MockResponse json(int code, String body) {
+    return new MockResponse().setResponseCode(code).setBody(body);
+  }
+
+}
@@ -0,0 +1,161 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.domain.Distribution;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.gslb.domain.GslbProvisionResponse;
+import com.oneops.gslb.domain.HealthCheck;
+import com.oneops.gslb.domain.Lb;
+import com.oneops.gslb.domain.Protocol;
+import com.oneops.gslb.domain.WriteReceipt;
+import com.oneops.infoblox.InfobloxClient;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GslbVerifierTest {
+
+  FakeTorbitServer torbit = new FakeTorbitServer();
+  FakeInfobloxServer infoblox = new FakeInfobloxServer();
+  GslbProvider provider = new GslbProvider();
+  GslbVerifier verifier = new GslbVerifier();
+
+  @Before
+  public void setup() throws Exception {
+    torbit.addDataCenter("dc1", "cl1", "cl2").start();
+    infoblox.start();
+    provider.getMtdHandler().setMtdBaseCache(new MtdBaseCache());
+    provider.getMtdHandler().setDataCenterCatalog(new DataCenterCatalog());
+    provider.getDnsHandler().setInfobloxClientProvider(new InfobloxClientProvider());
+    verifier.setInfobloxClientProvider(new InfobloxClientProvider());
+    verifier.setReceiptVerification(true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    torbit.shutdown();
+    infoblox.shutdown();
+  }
+
+  @Test
+  public void shouldVerifyCreateFromWriteReceipt() {
+    GslbProvisionResponse response = provider.create(gslb());
+    assertThat(response.getFailureMessage(), nullValue());
+    assertThat(response.getWriteReceipt().getCname("p1.xyz.com"), is("p1.e1.a1.org1.glb.xyz.com"));
+    //torbit answered the host write without the host, so it is read back
+    assertThat(response.getWriteReceipt().getMtdHost(), nullValue());
+
+    int torbitRequests = torbit.requestCount();
+    int infobloxRequests = infoblox.requestCount();
+    assertThat(verifier.verifyCreate(gslb(), response).getFailureMessage(), nullValue());
+    assertThat(torbit.requestCount() - torbitRequests, is(2));
+    assertThat(infoblox.requestCount(), is(infobloxRequests));
+
+    //a receipt not matching the gslb fails without reading anything back
+    response.getWriteReceipt().addCname("p1.xyz.com", "other.glb.xyz.com");
+    assertThat(verifier.verifyCreate(gslb(), response).getStatus(), is(Status.FAILED));
+    assertThat(infoblox.requestCount(), is(infobloxRequests));
+  }
+
+  @Test
+  public void shouldReadBackSampledAndMissingParts() {
+    GslbProvisionResponse response = provider.create(gslb());
+    assertThat(response.getFailureMessage(), nullValue());
+
+    //every second create is read back, the receipt pointing elsewhere is not used then
+    verifier.setDeepVerifyInterval(2);
+    response.getWriteReceipt().addCname("p1.xyz.com", "other.glb.xyz.com");
+    int torbitRequests = torbit.requestCount();
+    assertThat(verifier.verifyCreate(gslb(), response).getStatus(), is(Status.FAILED));
+    assertThat(verifier.verifyCreate(gslb(), response).getFailureMessage(), nullValue());
+    assertThat(torbit.requestCount() - torbitRequests, is(2));
+
+    //records missing from the receipt are read back, the host read by an unchanged create is not
+    verifier.setDeepVerifyInterval(0);
+    provider.getMtdHandler().setDiffHostUpdates(true);
+    response = provider.create(gslb());
+    assertThat(response.getWriteReceipt().getMtdHost().mtdHostName(), is("p1"));
+    WriteReceipt receipt = new WriteReceipt();
+    receipt.setMtdHost(response.getWriteReceipt().getMtdHost());
+    response.setWriteReceipt(receipt);
+    torbitRequests = torbit.requestCount();
+    int infobloxRequests = infoblox.requestCount();
+    assertThat(verifier.verifyCreate(gslb(), response).getFailureMessage(), nullValue());
+    assertThat(torbit.requestCount(), is(torbitRequests));
+    assertThat(infoblox.requestCount() - infobloxRequests, is(1));
+  }
+
+  @Test
+  public void shouldPollChecksUntilTheyConverge() throws Exception {
+    GslbProvisionResponse response = provider.create(gslb());
+    assertThat(response.getFailureMessage(), nullValue());
+    verifier.setReceiptVerification(false);
+    verifier.setPollDeadlineMillis(5000);
+    verifier.setPollBackoff(RetryPolicy.builder().initialBackoffMillis(50).maxBackoffMillis(200).build());
+
+    //the cname shows up after a while, only it is checked again
+    InfobloxClient client = new InfobloxClientProvider().getInfobloxClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD);
+    client.deleteCNameRec("p1.xyz.com");
+    CompletableFuture<Void> converging = CompletableFuture.runAsync(() -> {
+      try {
+        Thread.sleep(300);
+        client.createCNameRec("p1.xyz.com", "p1.e1.a1.org1.glb.xyz.com");
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    int torbitRequests = torbit.requestCount();
+    int infobloxRequests = infoblox.requestCount();
+    assertThat(verifier.verifyCreate(gslb(), response).getFailureMessage(), nullValue());
+    converging.join();
+    assertThat(torbit.requestCount() - torbitRequests, is(2));
+    assertThat(infoblox.requestCount() - infobloxRequests > 2, is(true));
+
+    //a check not converging fails at the deadline
+    verifier.setPollDeadlineMillis(300);
+    client.deleteCNameRec("p1.xyz.com");
+    String failure = verifier.verifyCreate(gslb(), response).getFailureMessage();
+    assertThat(failure.contains("cname verify failed p1.xyz.com, not converged after"), is(true));
+  }
+
+  @Test
+  public void shouldVerifyUnchangedHost() {
+    provider.getMtdHandler().setDiffHostUpdates(true);
+    assertThat(provider.create(gslb()).getFailureMessage(), nullValue());
+    GslbProvisionResponse response = provider.create(gslb());
+    assertThat(response.getFailureMessage(), nullValue());
+    assertThat(response.isMtdHostUnchanged(), is(true));
+    assertThat(response.getMtdDeploymentId(), nullValue());
+
+    assertThat(verifier.verifyCreate(gslb(), response).getFailureMessage(), nullValue());
+    verifier.setReceiptVerification(false);
+    assertThat(verifier.verifyCreate(gslb(), response).getFailureMessage(), nullValue());
+
+    //a host that was written still has to report its deployment
+    response.setMtdHostUnchanged(false);
+    assertThat(verifier.verifyCreate(gslb(), response).getStatus(), is(Status.FAILED));
+  }
+
+  private Gslb gslb() {
+    return Gslb.builder()
+        .app("p1")
+        .subdomain("e1.a1.org1")
+        .lbs(Arrays.asList(Lb.create("cl1", "10.1.1.1", true), Lb.create("cl2", "10.1.1.2", false)))
+        .healthChecks(Collections.singletonList(HealthCheck.builder().protocol(Protocol.HTTP).port(80)
+            .path("/health").build()))
+        .distribution(Distribution.PROXIMITY)
+        .torbitConfig(torbit.torbitConfig("glb.xyz.com"))
+        .infobloxConfig(infoblox.infobloxConfig("xyz.com"))
+        .cnames(Collections.singletonList("p1.xyz.com"))
+        .logContextId("p1 ")
+        .build();
+  }
+
+}
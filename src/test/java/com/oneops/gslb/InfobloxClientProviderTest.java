@@ -0,0 +1,41 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.infoblox.InfobloxClient;
+import org.junit.Test;
+
+public class InfobloxClientProviderTest {
+
+  InfobloxClientProvider provider = new InfobloxClientProvider(2, 60000);
+
+  @Test
+  public void shouldReuseClientForSameHostAndUser() {
+    InfobloxClient client1 = provider.getInfobloxClient("https://localhost:8121", "test-oo", "test_pwd");
+    InfobloxClient client2 = provider.getInfobloxClient("https://localhost:8121", "test-oo", "test_pwd");
+    assertThat(client1, sameInstance(client2));
+  }
+
+  @Test
+  public void shouldReplaceClientWhenPasswordChanges() {
+    InfobloxClient client1 = provider.getInfobloxClient("https://localhost:8121", "test-oo", "test_pwd");
+    InfobloxClient client2 = provider.getInfobloxClient("https://localhost:8121", "test-oo", "test_pwd1");
+    assertThat(client1, not(sameInstance(client2)));
+    assertThat(client2.password(), is("test_pwd1"));
+    assertThat(provider.size(), is(1));
+  }
+
+  @Test
+  public void shouldBoundNumberOfCachedClients() {
+    InfobloxClient client1 = provider.getInfobloxClient("https://localhost:8121", "test-oo", "test_pwd");
+    provider.getInfobloxClient("https://localhost:8122", "test-oo", "test_pwd");
+    provider.getInfobloxClient("https://localhost:8123", "test-oo", "test_pwd");
+    assertThat(provider.size(), is(2));
+    assertThat(provider.getInfobloxClient("https://localhost:8121", "test-oo", "test_pwd"),
+        not(sameInstance(client1)));
+  }
+
+}
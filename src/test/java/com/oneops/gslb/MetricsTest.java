@@ -0,0 +1,89 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseResponse;
+import com.oneops.infoblox.model.Error;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Test;
+
+public class MetricsTest {
+
+  @Test
+  public void shouldAggregateTimersAndCounters() {
+    SimpleMetrics metrics = new SimpleMetrics();
+    metrics.recordTime("call", TimeUnit.MILLISECONDS.toNanos(3), "status", "200", "endpoint", "a");
+    metrics.recordTime("call", TimeUnit.MILLISECONDS.toNanos(40), "endpoint", "a", "status", "200");
+    metrics.recordTime("call", TimeUnit.MILLISECONDS.toNanos(900), "endpoint", "a", "status", "200");
+    metrics.increment("errors", "code", "DB_LOCKED");
+    metrics.increment("errors", "code", "DB_LOCKED");
+
+    SimpleMetrics.Timer timer = metrics.timer("call", "endpoint", "a", "status", "200");
+    assertThat(timer.count(), is(3L));
+    assertThat(timer.maxNanos(), is(TimeUnit.MILLISECONDS.toNanos(900)));
+    assertThat(timer.percentileMillis(0.5), is(50L));
+    assertThat(timer.percentileMillis(1.0), is(1000L));
+    assertThat(metrics.count("errors", "code", "DB_LOCKED"), is(2L));
+    assertThat(metrics.count("errors", "code", "OTHER"), is(0L));
+    assertThat(metrics.timer("call", "endpoint", "b"), nullValue());
+    assertThat(metrics.timers().keySet().iterator().next(), is("call{endpoint=a,status=200}"));
+  }
+
+  @Test
+  public void shouldTemplateTorbitPaths() {
+    assertThat(TorbitClient.pathTemplate(HttpUrl.parse("https://torbit:8443/api/v2/mtds/bases/12/hosts/app1")),
+        is("/api/v2/mtds/bases/{id}/hosts/{name}"));
+    assertThat(TorbitClient.pathTemplate(HttpUrl.parse("https://torbit:8443/api/v2/mtds/bases/by-name/glb.com")),
+        is("/api/v2/mtds/bases/by-name/{name}"));
+    assertThat(TorbitClient.pathTemplate(HttpUrl.parse("https://torbit:8443/api/v2/mtds/bases/12/hosts")),
+        is("/api/v2/mtds/bases/{id}/hosts"));
+  }
+
+  @Test
+  public void shouldClassifyInfobloxErrors() {
+    assertThat(DnsHandler.errorType(Error.create("AdmConDataError", "Client.Ibap.Data.Conflict", "", "").cause()),
+        is("CONFLICT"));
+    assertThat(DnsHandler.errorType(Error.create("AdmConDataNotFoundError", "Client.Ibap.Data.NotFound", "", "")
+        .cause()), is("NOT_FOUND"));
+    assertThat(DnsHandler.errorType(Error.create("Request failed, Service Unavailable", 503).cause()), is("ERROR"));
+    assertThat(DnsHandler.errorType(new IOException("timeout")), is("IO_ERROR"));
+  }
+
+  @Test
+  public void shouldRecordTorbitCalls() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.start();
+    try {
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"data_centers\":[]}"));
+      server.enqueue(new MockResponse().setResponseCode(400).setBody(
+          "{\"errors\":[{\"severity\":2,\"error_code\":\"DB_NOT_FOUND\",\"short_message\":\"not found\"}]}"));
+      SimpleMetrics metrics = new SimpleMetrics();
+      TorbitClient client = new TorbitClient(TorbitConfig.create(server.url("/").toString(),
+          "test-oo", "test_auth", 101, "glb.xyz.com"), TorbitClient.sharedHttpClient(), WireLog.defaultLog(),
+          RetryPolicy.noRetry(), metrics);
+
+      client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+      Resp<MtdBaseResponse> resp = client.executeAsync(client.getTorbit().getMTDBase("glb.xyz.com"),
+          MtdBaseResponse.class).get(5, TimeUnit.SECONDS);
+      assertThat(resp.getCode(), is(400));
+
+      String endpoint = server.getHostName() + ":" + server.getPort();
+      assertThat(metrics.timer(Metrics.REMOTE_CALL, "system", "torbit", "endpoint", endpoint,
+          "operation", "GET /api/v2/data-centers", "status", "200").count(), is(1L));
+      assertThat(metrics.timer(Metrics.REMOTE_CALL, "system", "torbit", "endpoint", endpoint,
+          "operation", "GET /api/v2/mtds/bases/by-name/{name}", "status", "400").count(), is(1L));
+      assertThat(metrics.count(Metrics.TORBIT_ERROR, "endpoint", endpoint, "code", "DB_NOT_FOUND"), is(1L));
+    } finally {
+      server.shutdown();
+    }
+  }
+
+}
@@ -24,6 +24,7 @@ import com.oneops.gslb.mtd.v2.domain.MtdBaseHostRequest;
 import com.oneops.gslb.mtd.v2.domain.MtdHostHealthCheck;
 import com.oneops.gslb.mtd.v2.domain.MtdTarget;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Before;
@@ -39,8 +40,10 @@ public class MtdBaseTest {
   }
 
   private void loadCloudMap() {
-    handler.cloudMap.put("cl1", DcCloud.create(10, "cl1", 5, null));
-    handler.cloudMap.put("cl2", DcCloud.create(12, "cl2", 5, null));
+    DataCenterCatalog catalog = new DataCenterCatalog();
+    catalog.put("https://localhost:8443", Arrays.asList(DcCloud.create(10, "cl1", 5, null),
+        DcCloud.create(12, "cl2", 5, null)));
+    handler.setDataCenterCatalog(catalog);
   }
 
   @Test
@@ -0,0 +1,206 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
+import com.oneops.infoblox.model.Error;
+import com.oneops.gslb.mtd.v2.domain.CreateMtdBaseRequest;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseRequest;
+import com.oneops.gslb.mtd.v2.domain.MtdBaseResponse;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+  private static final String DATA_CENTERS = "{\"data_centers\":[{\"id\":5,\"name\":\"dc1\",\"clouds\":[]}]}";
+
+  RetryPolicy policy = RetryPolicy.builder()
+      .maxAttempts(3)
+      .maxAttempts("POST", 1)
+      .initialBackoffMillis(10)
+      .retryableErrorCodes("DB_LOCKED")
+      .build();
+
+  @Test
+  public void shouldRetryTransportFailures() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    String result = policy.execute("GET", attempt -> {
+      if (calls.incrementAndGet() < 3) {
+        throw new IOException("connection reset");
+      }
+      return "ok";
+    }, r -> false);
+    assertThat(result, is("ok"));
+    assertThat(calls.get(), is(3));
+  }
+
+  @Test
+  public void shouldLimitAttemptsPerOperation() {
+    AtomicInteger calls = new AtomicInteger();
+    try {
+      policy.execute("POST", attempt -> {
+        calls.incrementAndGet();
+        throw new IOException("connection reset");
+      }, r -> false);
+      fail();
+    } catch (IOException e) {
+      assertThat(calls.get(), is(1));
+    }
+  }
+
+  @Test
+  public void shouldRetryPostOnlyBeforeItIsSent() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().initialBackoffMillis(10).build();
+    AtomicInteger calls = new AtomicInteger();
+    try {
+      policy.execute("POST", attempt -> {
+        calls.incrementAndGet();
+        throw new SocketTimeoutException("read timed out");
+      }, r -> false);
+      fail();
+    } catch (SocketTimeoutException e) {
+      assertThat(calls.get(), is(1));
+    }
+
+    calls.set(0);
+    String result = policy.execute("POST", attempt -> {
+      if (calls.incrementAndGet() < 2) {
+        throw new ConnectException("connection refused");
+      }
+      return "ok";
+    }, r -> false);
+    assertThat(result, is("ok"));
+    assertThat(calls.get(), is(2));
+    assertThat(policy.isRetryable("GET", new SocketTimeoutException("read timed out")), is(true));
+
+    //a gateway timeout may come after the write was applied
+    assertThat(policy.isRetryableStatus("POST", 504), is(false));
+    assertThat(policy.isRetryableStatus("POST", 503), is(true));
+    assertThat(policy.isRetryableStatus("GET", 504), is(true));
+    assertThat(policy.isRetryable("POST", Error.create("Request failed, Gateway Timeout", 504).cause()), is(false));
+    assertThat(policy.isRetryable("POST", Error.create("Request failed, Service Unavailable", 503).cause()), is(true));
+  }
+
+  @Test
+  public void shouldRetryTorbitPostOnlyWhenNotApplied() throws Exception {
+    assertThat(TorbitClient.newHttpClient().retryOnConnectionFailure(), is(false));
+    MockWebServer server = new MockWebServer();
+    server.start();
+    try {
+      server.enqueue(new MockResponse().setResponseCode(504).setBody("{}"));
+      server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+      TorbitClient client = new TorbitClient(TorbitConfig.create(server.url("/").toString(),
+          "test-oo", "test_auth", 101, "glb.xyz.com"), TorbitClient.sharedHttpClient(), WireLog.defaultLog(),
+          RetryPolicy.builder().initialBackoffMillis(10).build(), Metrics.NOOP);
+      CreateMtdBaseRequest request = CreateMtdBaseRequest.create(MtdBaseRequest.create(".e1.glb.xyz.com", "GLB"));
+      Resp<MtdBaseResponse> resp = client.execute(client.getTorbit().createMTDBase(request, 101), MtdBaseResponse.class);
+      assertThat(resp.getCode(), is(504));
+      assertThat(server.getRequestCount(), is(1));
+
+      resp = client.execute(client.getTorbit().createMTDBase(request, 101), MtdBaseResponse.class);
+      assertThat(resp.getCode(), is(200));
+      assertThat(server.getRequestCount(), is(3));
+    } finally {
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldNotRetryTorbitPostOnReadTimeout() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.start();
+    try {
+      server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+      TorbitClient client = new TorbitClient(TorbitConfig.create(server.url("/").toString(),
+          "test-oo", "test_auth", 101, "glb.xyz.com"),
+          TorbitClient.newHttpClient().newBuilder().readTimeout(200, TimeUnit.MILLISECONDS).build(),
+          WireLog.defaultLog(), RetryPolicy.builder().initialBackoffMillis(10).build(), Metrics.NOOP);
+      try {
+        client.execute(client.getTorbit().createMTDBase(
+            CreateMtdBaseRequest.create(MtdBaseRequest.create(".e1.glb.xyz.com", "GLB")), 101), MtdBaseResponse.class);
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(server.getRequestCount(), is(1));
+      }
+    } finally {
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldNotRetryNonRetryableFailures() {
+    AtomicInteger calls = new AtomicInteger();
+    try {
+      policy.execute("GET", attempt -> {
+        calls.incrementAndGet();
+        throw new ExecutionException("bad request");
+      }, r -> false);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(calls.get(), is(1));
+    }
+  }
+
+  @Test
+  public void shouldStopAtDeadline() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder()
+        .maxAttempts(10)
+        .initialBackoffMillis(100)
+        .deadlineMillis(50)
+        .build();
+    AtomicInteger calls = new AtomicInteger();
+    String result = policy.execute("GET", attempt -> {
+      calls.incrementAndGet();
+      return "retry";
+    }, r -> true);
+    assertThat(result, is("retry"));
+    assertThat(calls.get(), is(1));
+  }
+
+  @Test
+  public void shouldClassifyInfobloxErrors() {
+    assertThat(policy.isRetryable(Error.create("Request failed, Service Unavailable", 503).cause()), is(true));
+    assertThat(policy.isRetryable(Error.create("Request failed, Bad Request", 400).cause()), is(false));
+    assertThat(policy.isRetryable(Error.create("AdmConDataError", "DB_LOCKED", "", "").cause()), is(true));
+    assertThat(policy.isRetryable(Error.create("AdmConDataError", "Client.Ibap.Data.Conflict", "", "").cause()),
+        is(false));
+    assertThat(policy.isRetryable(new IOException("timeout")), is(true));
+  }
+
+  @Test
+  public void shouldRetryTorbitCallOnUnavailable() throws Exception {
+    MockWebServer server = new MockWebServer();
+    server.start();
+    try {
+      server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody(DATA_CENTERS));
+      server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody(DATA_CENTERS));
+      TorbitClient client = new TorbitClient(TorbitConfig.create(server.url("/").toString(),
+          "test-oo", "test_auth", 101, "glb.xyz.com"), TorbitClient.sharedHttpClient(), WireLog.defaultLog(),
+          policy, Metrics.NOOP);
+
+      Resp<DataCentersResponse> resp = client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+      assertThat(resp.isSuccessful(), is(true));
+      resp = client.executeAsync(client.getTorbit().getDataCenters(), DataCentersResponse.class)
+          .get(5, TimeUnit.SECONDS);
+      assertThat(resp.isSuccessful(), is(true));
+      assertThat(server.getRequestCount(), is(4));
+    } finally {
+      server.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.OkHttpClient;
+import org.junit.Test;
+
+public class TorbitClientProviderTest {
+
+  TorbitClientProvider provider = new TorbitClientProvider();
+
+  @Test
+  public void shouldReuseClientForSameConfig() throws Exception {
+    TorbitClient client1 = provider.getTorbitClient(config("test_auth", "glb.xyz.com"));
+    TorbitClient client2 = provider.getTorbitClient(config("test_auth", "glb1.xyz.com"));
+    assertThat(client1, sameInstance(client2));
+    assertThat(provider.size(), is(1));
+  }
+
+  @Test
+  public void shouldCreateNewClientForDifferentAuthKey() throws Exception {
+    TorbitClient client1 = provider.getTorbitClient(config("test_auth", "glb.xyz.com"));
+    TorbitClient client2 = provider.getTorbitClient(config("test_auth1", "glb.xyz.com"));
+    assertThat(client1, not(sameInstance(client2)));
+    assertThat(provider.size(), is(2));
+  }
+
+  @Test
+  public void shouldShareConnectionPoolAndDispatcher() throws Exception {
+    OkHttpClient client1 = (OkHttpClient) provider.getTorbitClient(config("test_auth", "glb.xyz.com"))
+        .getRetrofit().callFactory();
+    OkHttpClient client2 = (OkHttpClient) provider.getTorbitClient(config("test_auth1", "glb.xyz.com"))
+        .getRetrofit().callFactory();
+    assertThat(client1.connectionPool(), sameInstance(client2.connectionPool()));
+    assertThat(client1.dispatcher(), sameInstance(client2.dispatcher()));
+  }
+
+  @Test
+  public void shouldNotChangeCachedClientsForOtherPoliciesAndMetrics() throws Exception {
+    TorbitClient client = provider.getTorbitClient(config("test_auth", "glb.xyz.com"));
+    RetryPolicy policy = RetryPolicy.noRetry();
+    SimpleMetrics metrics = new SimpleMetrics();
+    TorbitClient other = provider.getTorbitClient(config("test_auth", "glb.xyz.com"), policy, metrics);
+    assertThat(other, not(sameInstance(client)));
+    assertThat(other.getRetryPolicy(), sameInstance(policy));
+    assertThat(other.getMetrics(), sameInstance(metrics));
+    assertThat(client.getRetryPolicy(), sameInstance(provider.getRetryPolicy()));
+    assertThat(client.getMetrics(), sameInstance(Metrics.NOOP));
+    assertThat(provider.getTorbitClient(config("test_auth", "glb.xyz.com")), sameInstance(client));
+
+    provider.invalidate(config("test_auth", "glb.xyz.com"));
+    assertThat(provider.size(), is(0));
+  }
+
+  @Test
+  public void shouldEvictIdleAndLeastRecentlyUsedClients() throws Exception {
+    AtomicLong time = new AtomicLong(0);
+    ClientCache<String, Object> cache = new ClientCache<>(2, 100, time::get);
+    Object c1 = cache.get("c1", k -> new Object());
+    cache.get("c2", k -> new Object());
+    cache.get("c1", k -> new Object());
+    cache.get("c3", k -> new Object());
+    assertThat(cache.size(), is(2));
+    assertThat(cache.get("c1", k -> new Object()), sameInstance(c1));
+
+    time.set(200);
+    assertThat(cache.size(), is(0));
+    assertThat(cache.get("c1", k -> new Object()), not(sameInstance(c1)));
+  }
+
+  private TorbitConfig config(String authKey, String baseDomain) {
+    return TorbitConfig.create("https://localhost:8443", "test-oo", authKey, 101, baseDomain);
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.junit.Test;
+
+public class TorbitSignerTest {
+
+  TorbitSigner signer = new TorbitSigner("test_auth");
+
+  @Test
+  public void shouldMatchSignatureOfQueryRequest() throws Exception {
+    assertThat(signer.sign("/api/v2/mtds/bases", "name=.e1.a1.org1.glb.xyz.com", 1500000000L),
+        is(expected("/api/v2/mtds/bases?name=.e1.a1.org1.glb.xyz.com&time=1500000000")));
+  }
+
+  @Test
+  public void shouldMatchSignatureWithoutQuery() throws Exception {
+    assertThat(signer.sign("/api/v2/data-centers", null, 1500000001L),
+        is(expected("/api/v2/data-centers?time=1500000001")));
+    assertThat(signer.sign("/api/v2/data-centers", "", 1500000001L),
+        is(expected("/api/v2/data-centers?time=1500000001")));
+  }
+
+  @Test
+  public void shouldSignEachSecondSeparately() throws Exception {
+    String first = signer.sign("/api/v2/data-centers", null, 1500000001L);
+    String second = signer.sign("/api/v2/data-centers", null, 1500000002L);
+    assertThat(first.equals(second), is(false));
+    assertThat(second, is(expected("/api/v2/data-centers?time=1500000002")));
+  }
+
+  private String expected(String request) throws Exception {
+    return sha1hex("test_auth" + sha1hex("test_auth" + request));
+  }
+
+  private String sha1hex(String str) throws Exception {
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    StringBuilder hex = new StringBuilder();
+    for (byte b : md.digest(str.getBytes(StandardCharsets.UTF_8))) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+}
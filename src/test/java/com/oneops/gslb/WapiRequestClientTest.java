@@ -0,0 +1,167 @@
+package com.oneops.gslb;
+
+import static com.oneops.gslb.Requests.getProvisingRequest;
+import static com.oneops.gslb.Requests.getProvisionContext;
+import static com.oneops.gslb.Requests.getProvisionedGslb;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.oneops.gslb.domain.CloudARecord;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.infoblox.InfobloxClient;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WapiRequestClientTest {
+
+  private static final String CNAME = "plt.env.a1.org.gslb.xyz.com";
+
+  FakeInfobloxServer infoblox = new FakeInfobloxServer();
+  DnsHandler dnsHandler = new DnsHandler();
+
+  @Before
+  public void setup() throws Exception {
+    infoblox.start();
+    dnsHandler.setInfobloxClientProvider(new InfobloxClientProvider());
+    dnsHandler.setWriteBatchSize(10);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    infoblox.shutdown();
+  }
+
+  @Test
+  public void shouldApplyItemsInOneTransaction() throws Exception {
+    WapiRequestClient client = new InfobloxClientProvider().getWapiRequestClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD);
+    List<JsonElement> results = client.submit(Arrays.asList(
+        WapiRequestClient.Item.createCname("test1.xyz.com", CNAME),
+        WapiRequestClient.Item.createARec("plt.c1.xyz.com", "10.1.1.10")));
+    assertThat(results.size(), is(2));
+    assertThat(WapiRequestClient.resultField(results.get(0), "_ref").startsWith("record:cname/"), is(true));
+    assertThat(WapiRequestClient.resultField(results.get(0), "canonical"), is(CNAME));
+    assertThat(WapiRequestClient.resultField(results.get(1), "ipv4addr"), is("10.1.1.10"));
+    assertThat(infoblox.recordCount(), is(2));
+
+    //the conflicting second item rolls back the first one
+    try {
+      client.submit(Arrays.asList(
+          WapiRequestClient.Item.createCname("test2.xyz.com", CNAME),
+          WapiRequestClient.Item.createCname("test1.xyz.com", CNAME)));
+      fail();
+    } catch (IOException e) {
+      assertThat(DnsHandler.errorType(e), is("CONFLICT"));
+    }
+    assertThat(infoblox.cnames("test2.xyz.com").isEmpty(), is(true));
+
+    try {
+      client.submit(Collections.singletonList(WapiRequestClient.Item.delete(
+          WapiRequestClient.resultField(results.get(0), "_ref") + "x")));
+      fail();
+    } catch (IOException e) {
+      assertThat(DnsHandler.errorType(e), is("NOT_FOUND"));
+    }
+
+    client.submit(Collections.singletonList(WapiRequestClient.Item.delete(
+        WapiRequestClient.resultField(results.get(1), "_ref"))));
+    assertThat(infoblox.recordCount(), is(1));
+  }
+
+  @Test
+  public void shouldFollowInfobloxClientConfig() throws Exception {
+    InfobloxClientProvider provider = new InfobloxClientProvider();
+    InfobloxClient client = InfobloxClient.builder().endPoint(infoblox.endPoint()).userName(FakeInfobloxServer.USER)
+        .password(FakeInfobloxServer.PASSWORD).wapiVersion("2.7").tlsVerify(false).build();
+    WapiRequestClient requestClient = provider.newWapiRequestClient(client);
+    assertThat(requestClient.wapiUrl().encodedPath(), is("/wapi/v2.7"));
+    assertThat(provider.getWapiRequestClient(infoblox.endPoint(), FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD)
+        .wapiUrl().encodedPath(), is("/wapi/v" + provider.getInfobloxClient(infoblox.endPoint(),
+        FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD).wapiVersion()));
+
+    //infoblox calls do not share torbit's http client, tls is verified like the InfobloxClient does
+    InfobloxClient verifying = InfobloxClient.builder().endPoint(infoblox.endPoint()).userName(FakeInfobloxServer.USER)
+        .password(FakeInfobloxServer.PASSWORD).build();
+    assertThat(provider.wapiHttpClient(client), not(sameInstance(TorbitClient.sharedHttpClient())));
+    assertThat(provider.wapiHttpClient(verifying), not(sameInstance(provider.wapiHttpClient(client))));
+    assertThat(provider.wapiHttpClient(client), sameInstance(provider.wapiHttpClient(client)));
+  }
+
+  @Test
+  public void shouldBatchSetupAndRemove() {
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.10"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.cnames("test1.xyz.com"), is(Collections.singletonList(CNAME)));
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.10")));
+    assertThat(infoblox.multiRequestCount(), is(1));
+
+    //the changed cloud entry is updated in place in the same request
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.20"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.20")));
+    assertThat(infoblox.recordCount(), is(3));
+    assertThat(infoblox.multiRequestCount(), is(2));
+
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.removeDnsEntries(getProvisionedGslb("plt", "env.a1.org", "prod.xyz.com",
+        infoblox.infobloxConfig("prod.xyz.com"),
+        Lists.newArrayList("test1.xyz.com", "plt.env.a1.org.prod.xyz.com", "missing.xyz.com"),
+        Collections.singletonList(CloudARecord.create("cl1", "plt.env.a1.org.c1.prod.xyz.com"))), context);
+    assertThat(context.getResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.recordCount(), is(0));
+    assertThat(infoblox.multiRequestCount(), is(3));
+  }
+
+  @Test
+  public void shouldKeepRecordsReturnedByRequestInReceipt() {
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.10"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(context.writeReceipt().getCname("test1.xyz.com"), is(CNAME));
+    assertThat(context.writeReceipt().getARecord("plt.env.a1.org.c1.prod.xyz.com"), is("10.1.1.10"));
+
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.20"), context);
+    assertThat(context.writeReceipt().getARecord("plt.env.a1.org.c1.prod.xyz.com"), is("10.1.1.20"));
+
+    //writes answered with references only are not in the receipt, so they are read back on verify
+    infoblox.returnFields(false);
+    context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.30"), context);
+    assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+    assertThat(infoblox.aRecs("plt.env.a1.org.c1.prod.xyz.com"), is(Collections.singletonList("10.1.1.30")));
+    assertThat(context.writeReceipt().getARecord("plt.env.a1.org.c1.prod.xyz.com"), nullValue());
+    assertThat(context.writeReceipt().getCname("test1.xyz.com"), is(CNAME));
+  }
+
+  @Test
+  public void shouldFailBatchedSetupOnCnameOwnedByAnotherGslb() {
+    infoblox.addCname("test1.xyz.com", "other.env.a1.org.gslb.xyz.com");
+    ProvisionContext context = getProvisionContext("plt", ".env.a1.org.gslb.xyz.com");
+    dnsHandler.setupDnsEntries(gslb("10.1.1.10"), context);
+    assertThat(context.getProvisioningResponse().getStatus(), is(Status.FAILED));
+    assertThat(infoblox.cnames("test1.xyz.com"), is(Collections.singletonList("other.env.a1.org.gslb.xyz.com")));
+  }
+
+  private Gslb gslb(String vip) {
+    return getProvisingRequest("plt", "env.a1.org", vip, "cl1", "prod.xyz.com",
+        infoblox.infobloxConfig("prod.xyz.com"),
+        Lists.newArrayList("test1.xyz.com", "plt.env.a1.org.prod.xyz.com"),
+        Collections.singletonList(CloudARecord.create("cl1", "plt.env.a1.org.c1.prod.xyz.com")),
+        null, null);
+  }
+
+}
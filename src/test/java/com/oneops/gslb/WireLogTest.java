@@ -0,0 +1,88 @@
+package com.oneops.gslb;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.gslb.domain.TorbitConfig;
+import com.oneops.gslb.mtd.v2.domain.DataCentersResponse;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WireLogTest {
+
+  private static final String DATA_CENTERS = "{\"data_centers\":[{\"id\":5,\"name\":\"dc1\",\"clouds\":["
+      + "{\"id\":10,\"name\":\"cl1\",\"data_center_id\":5},{\"id\":12,\"name\":\"cl2\",\"data_center_id\":5}]}]}";
+
+  MockWebServer server = new MockWebServer();
+  List<String> logs = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setup() throws Exception {
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  @Test
+  public void shouldRedactAndTruncate() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(DATA_CENTERS));
+    TorbitClient client = client(WireLog.builder().maxBodyBytes(20).sink(logs::add).build());
+    client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+
+    assertThat(logs.size(), is(1));
+    String log = logs.get(0);
+    assertThat(log, containsString("sig=redacted"));
+    assertThat(log, containsString(SignInterceptor.AUTH_HEADER_NAME + ": redacted"));
+    assertThat(log, not(containsString("test-oo")));
+    assertThat(log, containsString(DATA_CENTERS.substring(0, 20) + "... (" + (DATA_CENTERS.length() - 20) + " more bytes)"));
+  }
+
+  @Test
+  public void shouldLogOnlySlowOrFailedCalls() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(DATA_CENTERS));
+    server.enqueue(new MockResponse().setResponseCode(400).setBody("{}"));
+    TorbitClient client = client(WireLog.builder().slowCallMillis(60000).sink(logs::add).build());
+    client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+    assertThat(logs.size(), is(0));
+
+    client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+    assertThat(logs.size(), is(1));
+    assertThat(logs.get(0), containsString("<-- 400"));
+  }
+
+  @Test
+  public void shouldSampleByPathPrefix() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(DATA_CENTERS));
+    TorbitClient client = client(WireLog.builder()
+        .sampleRate("/api/v2", 1)
+        .sampleRate("/api/v2/data-centers", 0)
+        .sink(logs::add).build());
+    client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+    assertThat(logs.size(), is(0));
+  }
+
+  @Test
+  public void shouldNotLogWhenOff() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(500).setBody("{}"));
+    TorbitClient client = client(WireLog.builder().level(WireLog.Level.NONE).sink(logs::add).build());
+    client.execute(client.getTorbit().getDataCenters(), DataCentersResponse.class);
+    assertThat(logs.size(), is(0));
+  }
+
+  private TorbitClient client(WireLog wireLog) throws Exception {
+    return new TorbitClient(TorbitConfig.create(server.url("/").toString(), "test-oo",
+        "test_auth", 101, "glb.xyz.com"), TorbitClient.sharedHttpClient(), wireLog, RetryPolicy.noRetry(),
+        Metrics.NOOP);
+  }
+
+}
@@ -0,0 +1,167 @@
+package com.oneops.gslb;
+
+import static com.oneops.gslb.Requests.getProvisingRequest;
+import static com.oneops.gslb.Requests.getProvisionContext;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Lists;
+import com.oneops.gslb.domain.CloudARecord;
+import com.oneops.gslb.domain.Gslb;
+import com.oneops.infoblox.InfobloxClient;
+import com.oneops.infoblox.model.SearchModifier;
+import com.oneops.infoblox.model.a.ARec;
+import com.oneops.infoblox.model.cname.CNAME;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ZoneSnapshotCacheTest {
+
+  @Test
+  public void shouldIndexZoneRecords() {
+    ZoneSnapshot snapshot = new ZoneSnapshot("Prod.xyz.com",
+        Collections.singletonList(CNAME.create("ref1", "plt.glb.xyz.com", "Test1.prod.xyz.com", "default")),
+        Collections.singletonList(ARec.create("ref2", "10.1.1.1", "plt.c1.prod.xyz.com", "default")), 0);
+    assertThat(snapshot.cnames("test1.prod.xyz.com").get(0).canonical(), is("plt.glb.xyz.com"));
+    assertThat(snapshot.aRecs("plt.c1.prod.xyz.com").get(0).ipv4Addr(), is("10.1.1.1"));
+    assertThat(snapshot.cnames("test2.prod.xyz.com").isEmpty(), is(true));
+    assertThat(snapshot.cnames("test1.xyz.com"), nullValue());
+    assertThat(snapshot.cnames("test1.otherprod.xyz.com"), nullValue());
+
+    snapshot.forget("test1.prod.xyz.com");
+    assertThat(snapshot.cnames("test1.prod.xyz.com"), nullValue());
+    assertThat(ZoneSnapshot.nameRegex("prod.xyz-1.com"), is("\\.prod\\.xyz\\-1\\.com$"));
+  }
+
+  @Test
+  public void shouldReloadStaleSnapshotsAndBackOffAfterFailures() {
+    AtomicLong clock = new AtomicLong();
+    AtomicInteger loads = new AtomicInteger();
+    ZoneSnapshotCache cache = new ZoneSnapshotCache(1000, clock::get);
+    ZoneSnapshotCache.Loader loader = () -> {
+      loads.incrementAndGet();
+      return new ZoneSnapshot("prod.xyz.com", null, null, clock.get());
+    };
+
+    ZoneSnapshot first = cache.get("grid1", "prod.xyz.com", loader);
+    clock.set(1000);
+    assertThat(cache.get("grid1", "prod.xyz.com", loader), sameInstance(first));
+    assertThat(loads.get(), is(1));
+    clock.set(1001);
+    assertThat(cache.get("grid1", "prod.xyz.com", loader) == first, is(false));
+    assertThat(loads.get(), is(2));
+
+    ZoneSnapshotCache.Loader failing = () -> {
+      loads.incrementAndGet();
+      throw new IOException("too many results");
+    };
+    assertThat(cache.get("grid1", "dev.xyz.com", failing), nullValue());
+    clock.set(1500);
+    assertThat(cache.get("grid1", "dev.xyz.com", failing), nullValue());
+    assertThat(loads.get(), is(3));
+    clock.set(2002);
+    assertThat(cache.get("grid1", "dev.xyz.com", loader) != null, is(true));
+    assertThat(cache.get("grid1", null, loader), nullValue());
+  }
+
+  @Test
+  public void shouldAnswerStatusChecksFromZoneSnapshot() throws Exception {
+    FakeInfobloxServer infoblox = new FakeInfobloxServer().start();
+    try {
+      DnsHandler dnsHandler = new DnsHandler();
+      dnsHandler.setInfobloxClientProvider(new InfobloxClientProvider());
+      dnsHandler.setZoneSnapshotCache(new ZoneSnapshotCache());
+      for (int i = 0; i < 10; i++) {
+        ProvisionContext context = getProvisionContext("plt" + i, ".env.a1.org.gslb.xyz.com");
+        dnsHandler.setupDnsEntries(gslb(infoblox, "plt" + i), context);
+        assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+      }
+
+      //written names are forgotten, so a new cache is needed to load a complete snapshot
+      dnsHandler.setZoneSnapshotCache(new ZoneSnapshotCache());
+      int requests = infoblox.requestCount();
+      for (int i = 0; i < 10; i++) {
+        ProvisionContext context = getProvisionContext("plt" + i, ".env.a1.org.gslb.xyz.com");
+        dnsHandler.checkStatus(gslb(infoblox, "plt" + i), context);
+        assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+      }
+      //one cname and one a record search for the zone
+      assertThat(infoblox.requestCount() - requests, is(2));
+
+      //a record changed behind the snapshot is confirmed with a point query
+      infoblox.addCname("moved.prod.xyz.com", "other.gslb.xyz.com");
+      ProvisionContext context = getProvisionContext("plt0", ".env.a1.org.gslb.xyz.com");
+      dnsHandler.checkStatus(getProvisingRequest("plt0", "env.a1.org", "10.1.1.10", "cl1", "prod.xyz.com",
+          infoblox.infobloxConfig("prod.xyz.com"), Lists.newArrayList("moved.prod.xyz.com"), null, null, null), context);
+      assertThat(context.getProvisioningResponse().getStatus(), is(Status.FAILED));
+      assertThat(infoblox.requestCount() - requests, is(3));
+    } finally {
+      infoblox.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldLoadZonesLargerThanOnePage() throws Exception {
+    FakeInfobloxServer infoblox = new FakeInfobloxServer().maxResults(5).start();
+    try {
+      for (int i = 0; i < 12; i++) {
+        infoblox.addCname("plt" + i + ".prod.xyz.com", "plt" + i + ".env.a1.org.gslb.xyz.com");
+      }
+      for (int i = 0; i < 7; i++) {
+        infoblox.addARec("plt" + i + ".env.a1.org.c1.prod.xyz.com", "10.1.1." + i);
+      }
+      InfobloxClientProvider provider = new InfobloxClientProvider();
+      InfobloxClient client = provider.getInfobloxClient(infoblox.endPoint(), FakeInfobloxServer.USER,
+          FakeInfobloxServer.PASSWORD);
+      //an unpaged search fails on a zone larger than the result limit
+      try {
+        client.getCNameRec(ZoneSnapshot.nameRegex("prod.xyz.com"), SearchModifier.REGEX);
+        fail();
+      } catch (IOException e) {
+        assertThat(e.getMessage().contains("Result set too large"), is(true));
+      }
+
+      int requests = infoblox.requestCount();
+      ZoneSnapshot snapshot = ZoneSnapshot.load(provider.getWapiRequestClient(infoblox.endPoint(),
+          FakeInfobloxServer.USER, FakeInfobloxServer.PASSWORD), "prod.xyz.com", 5);
+      assertThat(snapshot.size(), is(19));
+      assertThat(snapshot.cnames("plt11.prod.xyz.com").get(0).canonical(), is("plt11.env.a1.org.gslb.xyz.com"));
+      assertThat(snapshot.aRecs("plt6.env.a1.org.c1.prod.xyz.com").get(0).ipv4Addr(), is("10.1.1.6"));
+      //three pages of cnames and two of a records
+      assertThat(infoblox.requestCount() - requests, is(5));
+
+      //status checks of the zone are answered from the paged snapshot
+      DnsHandler dnsHandler = new DnsHandler();
+      dnsHandler.setInfobloxClientProvider(provider);
+      ZoneSnapshotCache cache = new ZoneSnapshotCache();
+      cache.setPageSize(5);
+      dnsHandler.setZoneSnapshotCache(cache);
+      requests = infoblox.requestCount();
+      for (int i = 0; i < 12; i++) {
+        ProvisionContext context = getProvisionContext("plt" + i, ".env.a1.org.gslb.xyz.com");
+        dnsHandler.checkStatus(getProvisingRequest("plt" + i, "env.a1.org", "10.1.1." + i, "cl1", "prod.xyz.com",
+            infoblox.infobloxConfig("prod.xyz.com"), Lists.newArrayList("plt" + i + ".prod.xyz.com"), null, null, null),
+            context);
+        assertThat(context.getProvisioningResponse().getFailureMessage(), nullValue());
+      }
+      assertThat(infoblox.requestCount() - requests, is(5));
+    } finally {
+      infoblox.shutdown();
+    }
+  }
+
+  private Gslb gslb(FakeInfobloxServer infoblox, String app) {
+    return getProvisingRequest(app, "env.a1.org", "10.1.1.10", "cl1", "prod.xyz.com",
+        infoblox.infobloxConfig("prod.xyz.com"),
+        Lists.newArrayList(app + "-1.prod.xyz.com", app + "-2.prod.xyz.com"),
+        Collections.singletonList(CloudARecord.create("cl1", app + ".env.a1.org.c1.prod.xyz.com")),
+        null, null);
+  }
+
+}